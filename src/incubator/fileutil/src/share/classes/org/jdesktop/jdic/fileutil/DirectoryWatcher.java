@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Watches directories for the FileUtil.watch listeners. A single daemon thread, shared 
+ * by all the watched directories, lists each of them every 
+ * <code>org.jdesktop.jdic.fileutil.watchInterval</code> milliseconds (1000 by default) 
+ * and compares the entries and their attributes with the previous listing. The 
+ * listeners of a directory share its listing, and get all the changes found by a 
+ * check in one event.
+ * 
+ * @see FileUtil#watch(FileChangeListener)
+ */
+class DirectoryWatcher {
+	
+	/** System property giving the interval between two checks of a directory, in milliseconds. */
+	static final String INTERVAL_PROPERTY = "org.jdesktop.jdic.fileutil.watchInterval";
+	
+	private static final long DEFAULT_INTERVAL = 1000;
+	
+	private static final File[] NO_FILES = new File[0];
+	
+	private static DirectoryWatcher instance;
+	
+	// canonical path to WatchedDirectory
+	private Map directories = new HashMap();
+	
+	private Timer timer;
+	
+	private static class WatchedDirectory {
+		
+		File directory;
+		
+		// entry name to its type, length and modification time
+		Map entries;
+		
+		List listeners = new ArrayList();
+	}
+	
+	static synchronized DirectoryWatcher getInstance() {
+		if(instance == null) {
+			instance = new DirectoryWatcher();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Starts notifying the listener of the changes of the directory.
+	 */
+	void watch(File directory, FileChangeListener listener) throws IOException {
+		String path = directory.getCanonicalPath();
+		synchronized(this) {
+			WatchedDirectory watched = (WatchedDirectory) this.directories.get(path);
+			if(watched == null) {
+				watched = new WatchedDirectory();
+				watched.directory = new File(path);
+				this.directories.put(path, watched);
+			}
+			watched.listeners.add(listener);
+			
+			if(this.timer == null) {
+				long interval = Math.max(Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL).longValue(), 1);
+				this.timer = new Timer(true);
+				this.timer.schedule(new TimerTask() {
+					public void run() {
+						check();
+					}
+				}, interval, interval);
+			}
+		}
+		// the first listing is taken here, so that the changes are reported from now on
+		this.check(path);
+	}
+	
+	/**
+	 * Stops notifying the listener of the changes of the directory.
+	 */
+	synchronized void unwatch(File directory, FileChangeListener listener) throws IOException {
+		String path = directory.getCanonicalPath();
+		WatchedDirectory watched = (WatchedDirectory) this.directories.get(path);
+		if(watched == null) {
+			return;
+		}
+		watched.listeners.remove(listener);
+		if(watched.listeners.isEmpty()) {
+			this.directories.remove(path);
+		}
+		if(this.directories.isEmpty() && this.timer != null) {
+			this.timer.cancel();
+			this.timer = null;
+		}
+	}
+	
+	private void check() {
+		String[] paths;
+		synchronized(this) {
+			paths = (String[]) this.directories.keySet().toArray(new String[this.directories.size()]);
+		}
+		for(int i = 0; i < paths.length; i++) {
+			this.check(paths[i]);
+		}
+	}
+	
+	/*
+	 * Lists the directory, and notifies its listeners of the changes since the previous listing.
+	 */
+	private void check(String path) {
+		WatchedDirectory watched;
+		synchronized(this) {
+			watched = (WatchedDirectory) this.directories.get(path);
+		}
+		if(watched == null) {
+			return;
+		}
+		
+		List created = new ArrayList();
+		List deleted = new ArrayList();
+		List modified = new ArrayList();
+		// a directory is checked by one thread at a time, so that no change is reported twice
+		synchronized(watched) {
+			Map entries = list(watched.directory);
+			if(entries == null) {
+				return; // try again next time
+			}
+			Map previous = watched.entries;
+			watched.entries = entries;
+			if(previous == null) {
+				return;
+			}
+			
+			for(Iterator iter = entries.entrySet().iterator(); iter.hasNext(); ) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				long[] attributes = (long[]) previous.get(entry.getKey());
+				if(attributes == null) {
+					created.add(new File(watched.directory, (String) entry.getKey()));
+				}
+				else if(!Arrays.equals(attributes, (long[]) entry.getValue())) {
+					modified.add(new File(watched.directory, (String) entry.getKey()));
+				}
+			}
+			for(Iterator iter = previous.keySet().iterator(); iter.hasNext(); ) {
+				String name = (String) iter.next();
+				if(!entries.containsKey(name)) {
+					deleted.add(new File(watched.directory, name));
+				}
+			}
+		}
+		if(created.isEmpty() && deleted.isEmpty() && modified.isEmpty()) {
+			return;
+		}
+		FileChangeListener[] listeners;
+		synchronized(this) {
+			listeners = (FileChangeListener[]) watched.listeners.toArray(new FileChangeListener[watched.listeners.size()]);
+		}
+		
+		FileChangeEvent event = new FileChangeEvent(watched.directory, toArray(created), 
+				toArray(deleted), toArray(modified));
+		for(int i = 0; i < listeners.length; i++) {
+			try {
+				listeners[i].filesChanged(event);
+			}
+			catch(RuntimeException e) {
+				// don't let a listener stop the watching of the others
+			}
+		}
+	}
+	
+	/*
+	 * Returns the entry names of the directory mapped to their type, length and 
+	 * modification time, or null if the directory can't be read. A directory which 
+	 * doesn't exist has no entries.
+	 */
+	private static Map list(File directory) {
+		Map entries = new HashMap();
+		try {
+			FileEntryIterator iterator = new FileUtil(directory).listEntries();
+			try {
+				while(iterator.hasNext()) {
+					FileEntry entry = iterator.next();
+					entries.put(entry.getName(), new long[] { entry.isDirectory() ? 2 : entry.isFile() ? 1 : 0, 
+							entry.length(), entry.lastModified() });
+				}
+			}
+			finally {
+				iterator.close();
+			}
+		}
+		catch(IOException e) {
+			return null;
+		}
+		return entries;
+	}
+	
+	private static File[] toArray(List files) {
+		return files.isEmpty() ? NO_FILES : (File[]) files.toArray(new File[files.size()]);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.io.File;
+import java.util.EventObject;
+
+/**
+ * The event sent to a FileChangeListener with the changes of a watched directory. 
+ * The source of the event is the watched directory.
+ * 
+ * @see FileChangeListener
+ */
+public class FileChangeEvent extends EventObject {
+	
+	private File[] created;
+	
+	private File[] deleted;
+	
+	private File[] modified;
+	
+	FileChangeEvent(File directory, File[] created, File[] deleted, File[] modified) {
+		super(directory);
+		this.created = created;
+		this.deleted = deleted;
+		this.modified = modified;
+	}
+	
+	/**
+     * Returns the watched directory.
+     * 
+     * @return the directory whose files changed.
+     */
+	public File getDirectory() {
+		return (File) this.getSource();
+	}
+	
+	/**
+     * Returns the files created in the directory.
+     * 
+     * @return the created files, an empty array if none.
+     */
+	public File[] getCreatedFiles() {
+		return this.created;
+	}
+	
+	/**
+     * Returns the files deleted from the directory.
+     * 
+     * @return the deleted files, an empty array if none.
+     */
+	public File[] getDeletedFiles() {
+		return this.deleted;
+	}
+	
+	/**
+     * Returns the files of the directory whose length, modification time or type changed.
+     * 
+     * @return the modified files, an empty array if none.
+     */
+	public File[] getModifiedFiles() {
+		return this.modified;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.util.EventListener;
+
+/**
+ * The listener notified of the changes of a watched directory.
+ * 
+ * @see FileUtil#watch(FileChangeListener)
+ */
+public interface FileChangeListener extends EventListener {
+	
+	/**
+     * Invoked when files of the watched directory are created, deleted or modified. 
+     * The changes found by a check of the directory are delivered in a single event, 
+     * on the thread checking the watched directories.
+     * 
+     * @param event the event describing the changes.
+     */
+	public void filesChanged(FileChangeEvent event);
+	
+}
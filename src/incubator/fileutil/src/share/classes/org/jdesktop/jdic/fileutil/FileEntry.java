@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.io.File;
+
+/**
+ * An entry of a directory listed by a FileEntryIterator, with the basic attributes 
+ * read together with its name.
+ * 
+ * @see FileEntryIterator
+ * @see FileUtil#listEntries()
+ */
+public class FileEntry {
+	
+	static final int TYPE_OTHER = 0;
+	
+	static final int TYPE_FILE = 1;
+	
+	static final int TYPE_DIRECTORY = 2;
+	
+	private File file;
+	
+	private int type;
+	
+	private long length;
+	
+	private long lastModified;
+	
+	FileEntry(File file, int type, long length, long lastModified) {
+		this.file = file;
+		this.type = type;
+		this.length = length;
+		this.lastModified = lastModified;
+	}
+	
+	/**
+     * Returns the File object of the entry.
+     * 
+     * @return the File of the entry.
+     */
+	public File getFile() {
+		return this.file;
+	}
+	
+	/**
+     * Returns the name of the entry in its directory.
+     * 
+     * @return the name of the entry.
+     */
+	public String getName() {
+		return this.file.getName();
+	}
+	
+	/**
+     * Tests whether the entry is a directory.
+     * 
+     * @return <tt>true</tt> if the entry is a directory.
+     */
+	public boolean isDirectory() {
+		return this.type == TYPE_DIRECTORY;
+	}
+	
+	/**
+     * Tests whether the entry is a normal file.
+     * 
+     * @return <tt>true</tt> if the entry is a normal file.
+     */
+	public boolean isFile() {
+		return this.type == TYPE_FILE;
+	}
+	
+	/**
+     * Returns the length of the entry, in bytes.
+     * 
+     * @return the length of the entry, or 0 if it is not a file.
+     */
+	public long length() {
+		return this.length;
+	}
+	
+	/**
+     * Returns the time the entry was last modified, in milliseconds since the epoch.
+     * 
+     * @return the time the entry was last modified.
+     */
+	public long lastModified() {
+		return this.lastModified;
+	}
+	
+	public String toString() {
+		return this.file.toString();
+	}
+}
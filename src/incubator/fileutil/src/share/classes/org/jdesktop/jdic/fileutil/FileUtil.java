@@ -25,6 +25,8 @@ import java.io.FileFilter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -38,6 +40,8 @@ import java.util.NoSuchElementException;
  */
 public class FileUtil {
 	
+	private static final int DEFAULT_BATCH_SIZE = 256;
+	
 	private NativeFileUtil fileUtil;
 	
 	private File internalFile;
@@ -60,6 +64,8 @@ public class FileUtil {
 		
 		private File directory;
 		
+		private String directoryPath;
+		
 		private boolean firstRead;
 		
 		private NativeFileUtil internalFileUtil;
@@ -75,7 +81,8 @@ public class FileUtil {
 			if(this.directory.isDirectory()) {
 				String name;
 				if(this.firstRead) {
-					name = this.internalFileUtil.readFirst(this.directory.getCanonicalPath());
+					this.directoryPath = this.directory.getCanonicalPath();
+					name = this.internalFileUtil.readFirst(this.directoryPath);
 					this.firstRead = false;
 					this.closed = false;
 				}
@@ -84,7 +91,7 @@ public class FileUtil {
 				}
 				
 				if(name != null) {
-					this.nextFile = new File(this.directory.getCanonicalPath() + name);
+					this.nextFile = new File(this.directoryPath + name);
 					return true;
 				}
 				else {
@@ -129,17 +136,12 @@ public class FileUtil {
 		}
 
 		public boolean hasNext() throws IOException {
-			if(super.hasNext()) {
+			while(super.hasNext()) {
 				if(this.filter.accept(this.next())) {
 					return true;
 				}
-				else {
-					return this.hasNext();
-				}
-			}
-			else {
-				return false;
 			}
+			return false;
 		}		
 	}
 	
@@ -156,20 +158,110 @@ public class FileUtil {
 		}
 
 		public boolean hasNext() throws IOException {
-			if(super.hasNext()) {
+			while(super.hasNext()) {
 				if(this.filter.accept(this.directory, this.next().getName())) {
 					return true;
 				}
-				else {
-					return this.hasNext();
+			}
+			return false;
+		}		
+	}
+    
+	private class InnerFileEntryIterator implements FileEntryIterator {
+		
+		private boolean closed;
+		
+		private boolean firstRead;
+		
+		private File directory;
+		
+		private String directoryPath;
+		
+		private String[] names;
+		
+		private long[] attributes;
+		
+		private int count;
+		
+		private int position;
+		
+		private FileEntry nextEntry;
+		
+		private NativeFileUtil internalFileUtil;
+		
+		public InnerFileEntryIterator(int batchSize) {
+			this.internalFileUtil = NativeFileUtil.getNativeFileUtil();
+			this.directory = FileUtil.this.internalFile;
+			this.names = new String[batchSize];
+			this.attributes = new long[3 * batchSize];
+			this.firstRead = true;
+			this.closed = true;
+		}
+		
+		public boolean hasNext() throws IOException {
+			if(this.position == this.count) {
+				if(!this.readBatch()) {
+					this.nextEntry = null;
+					this.close(); // to save resources
+					return false;
 				}
 			}
-			else {
+			
+			int i = this.position++;
+			File file = new File(this.directoryPath, this.names[i]);
+			this.nextEntry = new FileEntry(file, (int) this.attributes[3 * i], 
+					this.attributes[3 * i + 1], this.attributes[3 * i + 2]);
+			this.names[i] = null;
+			return true;
+		}
+		
+		/*
+		 * Reads the next batch of entries, and returns false at the end of the directory.
+		 */
+		private boolean readBatch() throws IOException {
+			if(this.firstRead) {
+				this.firstRead = false;
+				if(!this.directory.isDirectory()) {
+					return false;
+				}
+				this.directoryPath = this.directory.getCanonicalPath();
+				this.closed = false;
+				this.count = this.internalFileUtil.readEntries(this.directoryPath, true, 
+						this.names, this.attributes);
+			}
+			else if(this.closed || this.count < this.names.length) {
+				// the previous batch reached the end of the directory
 				return false;
 			}
-		}		
+			else {
+				this.count = this.internalFileUtil.readEntries(this.directoryPath, false, 
+						this.names, this.attributes);
+			}
+			this.position = 0;
+			return this.count > 0;
+		}
+		
+		public FileEntry next() throws NoSuchElementException {
+			if(this.nextEntry == null) {
+				throw new NoSuchElementException();
+			}
+			else {
+				return this.nextEntry;
+			}
+		}
+		
+		public void close() {
+			if(!closed) {
+				this.internalFileUtil.close();
+				this.closed = true;
+			}
+		}
+		
+		protected void finalize() throws Throwable {
+			this.close();
+		}
 	}
-    
+	
     /**
      * Sends the file or directory denoted by this abstract pathname to the
      * Recycle Bin/Trash Can.
@@ -185,6 +277,51 @@ public class FileUtil {
             SecurityException, UnsupportedOperationException {
     	return this.fileUtil.recycle(internalFile);
     }
+    
+    /**
+     * Starts notifying the listener of the files created, deleted or modified in the 
+     * directory denoted by the File argument. The watched directories are checked by a 
+     * single shared thread every <code>org.jdesktop.jdic.fileutil.watchInterval</code> 
+     * milliseconds (1000 by default), and the changes found by a check are delivered in 
+     * one event.
+     * 
+     * @param listener the listener to notify.
+     * @throws IOException If an I/O error occurs.
+     * @see #unwatch(FileChangeListener)
+     */
+    public void watch(FileChangeListener listener) throws IOException {
+    	DirectoryWatcher.getInstance().watch(internalFile, listener);
+    }
+    
+    /**
+     * Stops notifying the listener of the changes of the directory denoted by the 
+     * File argument.
+     * 
+     * @param listener the listener to remove.
+     * @throws IOException If an I/O error occurs.
+     * @see #watch(FileChangeListener)
+     */
+    public void unwatch(FileChangeListener listener) throws IOException {
+    	DirectoryWatcher.getInstance().unwatch(internalFile, listener);
+    }
+    
+    /**
+     * Sends the given files or directories to the Recycle Bin/Trash Can. On Linux, 
+     * the trash directories are looked up once for the whole collection, and the 
+     * files are only renamed into them.
+     * 
+     * @param files the files or directories to be recycled.
+     * @return the files which could not be recycled, an empty List if all of them 
+     *         are successfully recycled.
+     * @throws IOException If an I/O error occurs. 
+     * @throws SecurityException If a required system property value cannot be 
+     *         accessed.
+     * @throws UnsupportedOperationException if the method isn't supported in the specific platform.
+     */
+    public static List recycle(Collection files) throws IOException,
+            SecurityException, UnsupportedOperationException {
+    	return NativeFileUtil.getNativeFileUtil().recycle(files);
+    }
 
     /**
      * Return the amount of free bytes available in the directory or file
@@ -194,6 +331,7 @@ public class FileUtil {
      *         BigInteger due to platform-specific issues.
      * @throws IOException
      * @throws UnsupportedOperationException if the method isn't supported in the specific platform.
+     * @see VolumeSpace
      */
     public BigInteger getFreeSpace() throws IOException, UnsupportedOperationException {
     	return this.fileUtil.getFreeSpace(internalFile);
@@ -206,6 +344,7 @@ public class FileUtil {
      *         BigInteger due to platform-specific issues.
      * @throws IOException
      * @throws UnsupportedOperationException if the method isn't supported in the specific platform.
+     * @see VolumeSpace
      */
     public BigInteger getTotalSpace() throws IOException, UnsupportedOperationException {
     	return this.fileUtil.getTotalSpace(internalFile);
@@ -245,5 +384,87 @@ public class FileUtil {
     public FileIterator listFiles(FilenameFilter filter) {
     	return new InnerFilenameFilterIterator(filter);
     }
+    
+    /**
+     * Returns a FileEntryIterator object, used to traverse the contents of the directory 
+     * denoted by the File argument together with their type, length and modification 
+     * time. The entries are read in batches of 256. They will not be in any particular order.
+     * 
+     * @return a FileEntryIterator object.
+     */
+    public FileEntryIterator listEntries() {
+    	return listEntries(DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Returns a FileEntryIterator object, used to traverse the contents of the directory 
+     * denoted by the File argument together with their type, length and modification 
+     * time. The entries are read in batches of the given size. They will not be in any 
+     * particular order.
+     * 
+     * @param batchSize the number of entries read at once.
+     * @return a FileEntryIterator object.
+     * @throws IllegalArgumentException if the batch size isn't positive.
+     */
+    public FileEntryIterator listEntries(int batchSize) {
+    	if(batchSize <= 0) {
+    		throw new IllegalArgumentException("batchSize must be positive");
+    	}
+    	return new InnerFileEntryIterator(batchSize);
+    }
+    
+    /**
+     * Returns a FileEntryIterator object, used to traverse the whole tree under the directory 
+     * denoted by the File argument. The subdirectories are listed in parallel on up to 
+     * <code>org.jdesktop.jdic.fileutil.walkerThreads</code> threads (4 by default), and the 
+     * entries will not be in any particular order. Closing the FileEntryIterator cancels the walk.
+     * 
+     * @return a FileEntryIterator object.
+     */
+    public FileEntryIterator walkFiles() {
+    	return new TreeWalker(internalFile, Integer.MAX_VALUE, null, null);
+    }
+    
+    /**
+     * Returns a FileEntryIterator object, used to traverse the tree under the directory 
+     * denoted by the File argument down to the given depth.
+     * 
+     * @param maxDepth the maximum depth of the entries, 1 for the contents of the directory only.
+     * @return a FileEntryIterator object.
+     * @see #walkFiles()
+     */
+    public FileEntryIterator walkFiles(int maxDepth) {
+    	return new TreeWalker(internalFile, maxDepth, null, null);
+    }
+    
+    /**
+     * Returns a FileEntryIterator object, used to traverse the tree under the directory 
+     * denoted by the File argument down to the given depth. Only the entries that satisfy 
+     * the given filter will appear in this FileEntryIterator, but the subdirectories 
+     * rejected by the filter are still walked.
+     * 
+     * @param maxDepth the maximum depth of the entries, 1 for the contents of the directory only.
+     * @param filter the filter to aply to the entries.
+     * @return a FileEntryIterator object.
+     * @see #walkFiles()
+     */
+    public FileEntryIterator walkFiles(int maxDepth, FileFilter filter) {
+    	return new TreeWalker(internalFile, maxDepth, filter, null);
+    }
+    
+    /**
+     * Returns a FileEntryIterator object, used to traverse the tree under the directory 
+     * denoted by the File argument down to the given depth. Only the entries that satisfy 
+     * the given filter will appear in this FileEntryIterator, but the subdirectories 
+     * rejected by the filter are still walked.
+     * 
+     * @param maxDepth the maximum depth of the entries, 1 for the contents of the directory only.
+     * @param filter the filter to aply to the entries.
+     * @return a FileEntryIterator object.
+     * @see #walkFiles()
+     */
+    public FileEntryIterator walkFiles(int maxDepth, FilenameFilter filter) {
+    	return new TreeWalker(internalFile, maxDepth, null, filter);
+    }
 
 }
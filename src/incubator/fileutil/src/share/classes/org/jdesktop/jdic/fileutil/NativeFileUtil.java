@@ -23,6 +23,10 @@ package org.jdesktop.jdic.fileutil;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * @author Fbio Castilho Martins  
@@ -70,6 +74,30 @@ abstract class NativeFileUtil {
      */
     public abstract boolean recycle(File file) throws IOException,
             SecurityException, UnsupportedOperationException;
+    
+    /**
+     * Sends the files or directories to the Recycle Bin/Trash Can. This 
+     * implementation recycles them one by one; platforms able to recycle 
+     * a batch at once override it.
+     * 
+     * @param files the files or directories to be recycled.
+     * @return the files which could not be recycled.
+     * @throws IOException If an I/O error occurs. 
+     * @throws SecurityException If a required system property value cannot be 
+     *         accessed.
+     * @throws UnsupportedOperationException if the method isn't supported in the specific platform.
+     */
+    public List recycle(Collection files) throws IOException,
+            SecurityException, UnsupportedOperationException {
+    	List failed = new ArrayList();
+    	for (Iterator iter = files.iterator(); iter.hasNext();) {
+    		File file = (File) iter.next();
+    		if (!this.recycle(file)) {
+    			failed.add(file);
+    		}
+    	}
+    	return failed;
+    }
 
     /**
      * Return the amount of free bytes available in the directory or file
@@ -94,10 +122,85 @@ abstract class NativeFileUtil {
      */
     public abstract BigInteger getTotalSpace(File file) throws IOException, UnsupportedOperationException;
     
+    /**
+     * Returns the path identifying the volume of the given file. This implementation 
+     * returns the canonical path of the file's directory; platforms able to find the 
+     * mount point of the file override it, so that the files of a volume share its path.
+     * 
+     * @param file an existing file or directory.
+     * @return the path identifying the volume.
+     * @throws IOException If an I/O error occurs.
+     */
+    public String getVolume(File file) throws IOException {
+    	File directory = file.getCanonicalFile();
+    	if (!directory.isDirectory() && directory.getParentFile() != null) {
+    		directory = directory.getParentFile();
+    	}
+    	return directory.getPath();
+    }
+    
+    /**
+     * Returns the free and total bytes of the volume returned by getVolume. This 
+     * implementation calls getFreeSpace and getTotalSpace; platforms able to read 
+     * both at once override it.
+     * 
+     * @param volume the path of the volume.
+     * @return the free bytes and the total bytes of the volume.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long[] getSpace(String volume) throws IOException {
+    	File file = new File(volume);
+    	return new long[] { this.getFreeSpace(file).longValue(), 
+    			this.getTotalSpace(file).longValue() };
+    }
+    
     public abstract String readFirst(String fullPath);
     
     public abstract String readNext();
     
     public abstract void close();    
+    
+    /**
+     * Reads the next entries of a directory, with their attributes. The first call opens 
+     * the directory, like readFirst, and the directory is closed with close.
+     * <p>
+     * The attributes of each entry are stored as 3 longs: its type (one of the 
+     * FileEntry.TYPE_ constants), its length and its last modification time. This 
+     * implementation reads them through readFirst, readNext and java.io.File; platforms 
+     * able to read a whole batch in a single native call override it.
+     * 
+     * @param fullPath the canonical path of the directory.
+     * @param first <b>true</b> to open the directory and read its first entries.
+     * @param names receives the names of the entries, without leading separator.
+     * @param attributes receives the attributes of the entries, 3 per entry.
+     * @return the number of entries read, less than names.length only when the end 
+     *         of the directory is reached.
+     */
+    public int readEntries(String fullPath, boolean first, String[] names, long[] attributes) {
+    	int count = 0;
+    	while (count < names.length) {
+    		String name = first ? this.readFirst(fullPath) : this.readNext();
+    		first = false;
+    		if (name == null) {
+    			break;
+    		}
+    		if (name.startsWith(File.separator)) {
+    			name = name.substring(File.separator.length());
+    		}
+    		if (name.equals(".") || name.equals("..")) {
+    			continue;
+    		}
+    		
+    		File file = new File(fullPath, name);
+    		int type = file.isDirectory() ? FileEntry.TYPE_DIRECTORY 
+    				: file.isFile() ? FileEntry.TYPE_FILE : FileEntry.TYPE_OTHER;
+    		names[count] = name;
+    		attributes[3 * count] = type;
+    		attributes[3 * count + 1] = (type == FileEntry.TYPE_FILE) ? file.length() : 0;
+    		attributes[3 * count + 2] = file.lastModified();
+    		count++;
+    	}
+    	return count;
+    }
 
 }
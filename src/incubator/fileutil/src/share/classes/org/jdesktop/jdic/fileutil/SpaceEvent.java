@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.util.EventObject;
+
+/**
+ * The event sent to a SpaceListener when the free space of a volume crosses its threshold.
+ * 
+ * @see SpaceListener
+ */
+public class SpaceEvent extends EventObject {
+	
+	private String volume;
+	
+	private long freeSpace;
+	
+	private long threshold;
+	
+	SpaceEvent(VolumeSpace source, String volume, long freeSpace, long threshold) {
+		super(source);
+		this.volume = volume;
+		this.freeSpace = freeSpace;
+		this.threshold = threshold;
+	}
+	
+	/**
+     * Returns the path identifying the volume, its mount point where the platform 
+     * supports it.
+     * 
+     * @return the path of the volume.
+     */
+	public String getVolume() {
+		return this.volume;
+	}
+	
+	/**
+     * Returns the free space of the volume, in bytes.
+     * 
+     * @return the free space of the volume.
+     */
+	public long getFreeSpace() {
+		return this.freeSpace;
+	}
+	
+	/**
+     * Returns the threshold the listener was registered with, in bytes.
+     * 
+     * @return the threshold of the listener.
+     */
+	public long getThreshold() {
+		return this.threshold;
+	}
+	
+	/**
+     * Returns <tt>true</tt> if the free space went below the threshold, <tt>false</tt> 
+     * if it went back above it.
+     * 
+     * @return <tt>true</tt> if the free space is below the threshold.
+     */
+	public boolean isBelowThreshold() {
+		return this.freeSpace < this.threshold;
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Walks a directory tree on a pool of threads, and streams the entries found through 
+ * a bounded queue. Each thread lists one directory at a time and queues the subdirectories 
+ * it finds for any idle thread to take, so the subtrees are walked in parallel. The walk 
+ * stops when the queue is full until the entries are consumed, and is cancelled by close.
+ * <p>
+ * A directory reached again through a symbolic link is not walked twice. The directories 
+ * which can't be read are skipped. A runtime exception thrown by a filter cancels the walk, 
+ * and is rethrown by hasNext.
+ * 
+ * @see FileUtil#walkFiles(int, FileFilter)
+ */
+class TreeWalker implements FileEntryIterator {
+	
+	/** System property giving the number of threads walking a tree. */
+	static final String THREADS_PROPERTY = "org.jdesktop.jdic.fileutil.walkerThreads";
+	
+	private static final int DEFAULT_THREADS = 4;
+	
+	private static final int QUEUE_SIZE = 1024;
+	
+	// the state shared with the threads, which don't refer to the iterator so that it can be finalized
+	private Walk walk;
+	
+	private FileEntry nextEntry;
+	
+	private static class Directory {
+		
+		final File file;
+		
+		final int depth;
+		
+		Directory(File file, int depth) {
+			this.file = file;
+			this.depth = depth;
+		}
+	}
+	
+	/**
+	 * Starts walking the tree under the given directory.
+	 * 
+	 * @param root the directory to walk.
+	 * @param maxDepth the maximum depth of the entries, 1 for the entries of the root directory.
+	 * @param fileFilter the filter of the entries returned, or null.
+	 * @param filenameFilter the filter of the entries returned, or null.
+	 */
+	TreeWalker(File root, int maxDepth, FileFilter fileFilter, FilenameFilter filenameFilter) {
+		this.walk = new Walk(root, maxDepth, fileFilter, filenameFilter);
+		this.walk.start(Math.max(Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS).intValue(), 1));
+	}
+	
+	/**
+	 * Returns true if the walk found another entry, waiting for it if needed.
+	 * 
+	 * @throws RuntimeException thrown by a filter, which cancelled the walk.
+	 */
+	public synchronized boolean hasNext() throws IOException {
+		this.nextEntry = this.walk.takeEntry();
+		return this.nextEntry != null;
+	}
+	
+	public synchronized FileEntry next() throws NoSuchElementException {
+		if(this.nextEntry == null) {
+			throw new NoSuchElementException();
+		}
+		else {
+			return this.nextEntry;
+		}
+	}
+	
+	/**
+	 * Cancels the walk, and discards the entries not returned yet.
+	 */
+	public void close() {
+		this.walk.cancel();
+	}
+	
+	protected void finalize() throws Throwable {
+		this.close();
+	}
+	
+	private static class Walk {
+		
+		private int maxDepth;
+		
+		private FileFilter fileFilter;
+		
+		private FilenameFilter filenameFilter;
+		
+		// the directories left to walk, the last one is taken first
+		private LinkedList directories = new LinkedList();
+		
+		// the canonical paths of the directories walked
+		private Set walked = new HashSet();
+		
+		private LinkedList entries = new LinkedList();
+		
+		private int activeThreads;
+		
+		private boolean done;
+		
+		private boolean cancelled;
+		
+		// thrown by a filter, and rethrown to the consumer
+		private RuntimeException failure;
+		
+		Walk(File root, int maxDepth, FileFilter fileFilter, FilenameFilter filenameFilter) {
+			this.maxDepth = maxDepth;
+			this.fileFilter = fileFilter;
+			this.filenameFilter = filenameFilter;
+			this.directories.add(new Directory(root, 0));
+		}
+		
+		void start(int threads) {
+			for(int i = 0; i < threads; i++) {
+				Thread thread = new Thread("TreeWalker-" + i) {
+					public void run() {
+						walk();
+					}
+				};
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+		
+		/*
+		 * Returns the next entry, or null at the end of the walk.
+		 */
+		synchronized FileEntry takeEntry() throws IOException {
+			try {
+				while(this.entries.isEmpty() && !this.done && !this.cancelled) {
+					this.wait();
+				}
+			}
+			catch(InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			
+			if(this.failure != null) {
+				throw this.failure;
+			}
+			if(this.entries.isEmpty()) {
+				return null;
+			}
+			this.notifyAll();
+			return (FileEntry) this.entries.removeFirst();
+		}
+		
+		synchronized void cancel() {
+			this.cancelled = true;
+			this.entries.clear();
+			this.directories.clear();
+			this.notifyAll();
+		}
+		
+		private synchronized void fail(RuntimeException e) {
+			if(this.failure == null) {
+				this.failure = e;
+			}
+			this.cancel();
+		}
+		
+		private void walk() {
+			try {
+				Directory directory;
+				while((directory = this.takeDirectory()) != null) {
+					try {
+						this.list(directory);
+					}
+					catch(IOException e) {
+						// skip the directories which can't be read
+					}
+					catch(RuntimeException e) {
+						this.fail(e);
+					}
+					finally {
+						this.finishDirectory();
+					}
+				}
+			}
+			catch(InterruptedException e) {
+				this.cancel();
+			}
+		}
+		
+		private synchronized Directory takeDirectory() throws InterruptedException {
+			while(this.directories.isEmpty() && this.activeThreads > 0 && !this.cancelled) {
+				this.wait();
+			}
+			if(this.directories.isEmpty() || this.cancelled) {
+				return null;
+			}
+			this.activeThreads++;
+			return (Directory) this.directories.removeLast();
+		}
+		
+		private synchronized void finishDirectory() {
+			this.activeThreads--;
+			if(this.activeThreads == 0 && this.directories.isEmpty()) {
+				this.done = true;
+			}
+			this.notifyAll();
+		}
+		
+		private void list(Directory directory) throws IOException, InterruptedException {
+			synchronized(this) {
+				if(!this.walked.add(directory.file.getCanonicalPath())) {
+					return;
+				}
+			}
+			
+			int depth = directory.depth + 1;
+			FileEntryIterator iterator = new FileUtil(directory.file).listEntries();
+			try {
+				while(iterator.hasNext()) {
+					FileEntry entry = iterator.next();
+					if(this.accept(directory.file, entry)) {
+						if(!this.addEntry(entry)) {
+							return;
+						}
+					}
+					if(entry.isDirectory() && depth < this.maxDepth) {
+						this.addDirectory(new Directory(entry.getFile(), depth));
+					}
+				}
+			}
+			finally {
+				iterator.close();
+			}
+		}
+		
+		private boolean accept(File parent, FileEntry entry) {
+			return (this.fileFilter == null || this.fileFilter.accept(entry.getFile())) 
+					&& (this.filenameFilter == null || this.filenameFilter.accept(parent, entry.getName()));
+		}
+		
+		/*
+		 * Queues the entry, waiting while the queue is full, and returns false if the walk is cancelled.
+		 */
+		private synchronized boolean addEntry(FileEntry entry) throws InterruptedException {
+			while(this.entries.size() >= QUEUE_SIZE && !this.cancelled) {
+				this.wait();
+			}
+			if(this.cancelled) {
+				return false;
+			}
+			this.entries.addLast(entry);
+			this.notifyAll();
+			return true;
+		}
+		
+		private synchronized void addDirectory(Directory directory) {
+			if(!this.cancelled) {
+				this.directories.addLast(directory);
+				this.notifyAll();
+			}
+		}
+	}
+}
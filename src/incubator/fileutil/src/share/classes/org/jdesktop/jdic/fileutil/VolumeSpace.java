@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Provides the free and total space of volumes, cached to be polled cheaply. Each path 
+ * is mapped once to its volume (the mount point, where the platform supports it), and 
+ * the space of a volume is read again only when the cached value is older than the 
+ * maximum age, <code>org.jdesktop.jdic.fileutil.spaceMaxAge</code> milliseconds 
+ * (1000 by default, or if the property is negative).
+ * <p>
+ * Listeners can be registered to be notified when the free space of a volume crosses 
+ * a threshold. The volumes with listeners are polled at the maximum age interval by a 
+ * daemon thread.
+ * 
+ * @see FileUtil#getFreeSpace()
+ * @see FileUtil#getTotalSpace()
+ */
+public class VolumeSpace {
+	
+	/** System property giving the maximum age of the cached space, in milliseconds. */
+	public static final String MAX_AGE_PROPERTY = "org.jdesktop.jdic.fileutil.spaceMaxAge";
+	
+	private static final long DEFAULT_MAX_AGE = 1000;
+	
+	private static final int MAX_PATHS = 256;
+	
+	private static VolumeSpace instance;
+	
+	private NativeFileUtil fileUtil;
+	
+	private long maxAge;
+	
+	// path to volume path, the least recently used removed first
+	private Map volumes = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return this.size() > MAX_PATHS;
+		}
+	};
+	
+	// volume path to Space
+	private Map spaces = new HashMap();
+	
+	private List registrations = new ArrayList();
+	
+	private Timer timer;
+	
+	private static class Space {
+		
+		long freeSpace;
+		
+		long totalSpace;
+		
+		long readTime;
+	}
+	
+	private static class Registration {
+		
+		String volume;
+		
+		long threshold;
+		
+		SpaceListener listener;
+		
+		boolean below;
+	}
+	
+	/**
+	 * Creates a VolumeSpace instance with its own cache.
+	 * 
+	 * @throws UnsupportedOperationException If the platform isn't supported.
+	 */
+	public VolumeSpace() throws UnsupportedOperationException {
+		this.fileUtil = NativeFileUtil.getNativeFileUtil();
+		this.maxAge = Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE).longValue();
+		if(this.maxAge < 0) {
+			this.maxAge = DEFAULT_MAX_AGE;
+		}
+	}
+	
+	/**
+	 * Returns the VolumeSpace instance shared by the application.
+	 * 
+	 * @return the shared VolumeSpace.
+	 * @throws UnsupportedOperationException If the platform isn't supported.
+	 */
+	public static synchronized VolumeSpace getInstance() throws UnsupportedOperationException {
+		if(instance == null) {
+			instance = new VolumeSpace();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Returns the maximum age of the cached space, in milliseconds.
+	 * 
+	 * @return the maximum age of the cached space.
+	 */
+	public synchronized long getMaxAge() {
+		return this.maxAge;
+	}
+	
+	/**
+	 * Sets the maximum age of the cached space, which is also the polling interval of 
+	 * the volumes with listeners.
+	 * 
+	 * @param maxAge the maximum age, in milliseconds.
+	 * @throws IllegalArgumentException if the maximum age is negative.
+	 */
+	public synchronized void setMaxAge(long maxAge) {
+		if(maxAge < 0) {
+			throw new IllegalArgumentException("maxAge must not be negative");
+		}
+		this.maxAge = maxAge;
+		if(this.timer != null) {
+			this.stopPolling();
+			this.startPolling();
+		}
+	}
+	
+	/**
+	 * Returns the amount of free bytes available in the volume of the given file.
+	 * 
+	 * @param file an existing file or directory.
+	 * @return the free space of the volume.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public long getFreeSpace(File file) throws IOException {
+		return this.getSpace(this.getVolume(file)).freeSpace;
+	}
+	
+	/**
+	 * Returns the size in bytes of the volume of the given file.
+	 * 
+	 * @param file an existing file or directory.
+	 * @return the size of the volume.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public long getTotalSpace(File file) throws IOException {
+		return this.getSpace(this.getVolume(file)).totalSpace;
+	}
+	
+	/**
+	 * Registers a listener notified when the free space of the volume of the given file 
+	 * goes below the threshold, and when it goes back above it.
+	 * 
+	 * @param file an existing file or directory.
+	 * @param threshold the free space threshold, in bytes.
+	 * @param listener the listener to notify.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void addSpaceListener(File file, long threshold, SpaceListener listener) throws IOException {
+		Registration registration = new Registration();
+		registration.volume = this.getVolume(file);
+		registration.threshold = threshold;
+		registration.listener = listener;
+		registration.below = this.getSpace(registration.volume).freeSpace < threshold;
+		
+		synchronized(this) {
+			this.registrations.add(registration);
+			if(this.timer == null) {
+				this.startPolling();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all the registrations of the given listener.
+	 * 
+	 * @param listener the listener to remove.
+	 */
+	public synchronized void removeSpaceListener(SpaceListener listener) {
+		for(Iterator iter = this.registrations.iterator(); iter.hasNext(); ) {
+			if(((Registration) iter.next()).listener == listener) {
+				iter.remove();
+			}
+		}
+		if(this.registrations.isEmpty() && this.timer != null) {
+			this.stopPolling();
+		}
+	}
+	
+	private String getVolume(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		synchronized(this) {
+			String volume = (String) this.volumes.get(path);
+			if(volume != null) {
+				return volume;
+			}
+		}
+		
+		String volume = this.fileUtil.getVolume(file);
+		synchronized(this) {
+			this.volumes.put(path, volume);
+		}
+		return volume;
+	}
+	
+	private Space getSpace(String volume) throws IOException {
+		long now = System.currentTimeMillis();
+		synchronized(this) {
+			Space space = (Space) this.spaces.get(volume);
+			if(space != null && now - space.readTime < this.maxAge) {
+				return space;
+			}
+		}
+		
+		long[] values = this.fileUtil.getSpace(volume);
+		Space space = new Space();
+		space.freeSpace = values[0];
+		space.totalSpace = values[1];
+		space.readTime = now;
+		synchronized(this) {
+			this.spaces.put(volume, space);
+		}
+		return space;
+	}
+	
+	private void startPolling() {
+		this.timer = new Timer(true);
+		this.timer.schedule(new TimerTask() {
+			public void run() {
+				poll();
+			}
+		}, this.maxAge, Math.max(this.maxAge, 1));
+	}
+	
+	private void stopPolling() {
+		this.timer.cancel();
+		this.timer = null;
+	}
+	
+	/*
+	 * Reads the space of the volumes with listeners, and notifies the listeners whose 
+	 * threshold is crossed.
+	 */
+	private void poll() {
+		Registration[] polled;
+		synchronized(this) {
+			polled = (Registration[]) this.registrations.toArray(new Registration[this.registrations.size()]);
+		}
+		
+		Map read = new HashMap();
+		for(int i = 0; i < polled.length; i++) {
+			Registration registration = polled[i];
+			Space space = (Space) read.get(registration.volume);
+			if(space == null) {
+				try {
+					space = this.getSpace(registration.volume);
+				}
+				catch(IOException e) {
+					continue; // the volume may be unmounted, try again next time
+				}
+				read.put(registration.volume, space);
+			}
+			
+			boolean below = space.freeSpace < registration.threshold;
+			if(below != registration.below) {
+				registration.below = below;
+				try {
+					registration.listener.thresholdCrossed(new SpaceEvent(this, registration.volume, 
+							space.freeSpace, registration.threshold));
+				}
+				catch(RuntimeException e) {
+					// don't let a listener stop the polling of the others
+				}
+			}
+		}
+	}
+}
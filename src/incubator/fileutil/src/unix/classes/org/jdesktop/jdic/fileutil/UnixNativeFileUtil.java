@@ -21,8 +21,12 @@
 package org.jdesktop.jdic.fileutil;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.jdesktop.jdic.fileutil.NativeFileUtil;
 
@@ -36,13 +40,12 @@ class UnixNativeFileUtil extends NativeFileUtil {
     	System.loadLibrary("jdic_fileutil");
     }
 	
-	private int handle;
+	private long handle;
 	
 	/**
-     * This method isn't supported on Linux. It will throw an UnsupportedOperationException.
-     * <p>
      * Sends the file or directory denoted by this abstract pathname to the
-     * Recycle Bin/Trash Can.
+     * Trash Can, as specified by the freedesktop.org Trash specification. The file
+     * is renamed into the trash of its file system, never copied.
      * 
      * @param file the file or directory to be recycled.
      * @return <b>true</b> if and only if the file or directory is
@@ -50,10 +53,24 @@ class UnixNativeFileUtil extends NativeFileUtil {
      * @throws IOException If an I/O error occurs. 
      * @throws SecurityException If a required system property value cannot be 
      *         accessed.
-     * @throws UnsupportedOperationException If the method isn't supported in the specific platform.
      */
     public boolean recycle(File file) throws IOException, SecurityException {
-    	throw new UnsupportedOperationException("Your platform doesn't support this method");
+    	return new XdgTrash(this).recycle(Collections.singletonList(file)).isEmpty();
+    }
+    
+    /**
+     * Sends the files or directories to the Trash Can, as specified by the 
+     * freedesktop.org Trash specification. The trash directories are looked up 
+     * once, and the files are only renamed.
+     * 
+     * @param files the files or directories to be recycled.
+     * @return the files which could not be recycled.
+     * @throws IOException If an I/O error occurs. 
+     * @throws SecurityException If a required system property value cannot be 
+     *         accessed.
+     */
+    public List recycle(Collection files) throws IOException, SecurityException {
+    	return new XdgTrash(this).recycle(files);
     }
 
     /**
@@ -69,10 +86,10 @@ class UnixNativeFileUtil extends NativeFileUtil {
         BigInteger freeSpace;
         
         if (file.isFile()) {
-        	freeSpace = new BigInteger(Long.toString(this.getFreeSpace(file.getCanonicalFile().getParent())));
+        	freeSpace = BigInteger.valueOf(this.getFreeSpace(file.getCanonicalFile().getParent()));
             return freeSpace; 
         } else if (file.isDirectory()) {
-        	freeSpace = new BigInteger(Long.toString(this.getFreeSpace(file.getCanonicalPath())));
+        	freeSpace = BigInteger.valueOf(this.getFreeSpace(file.getCanonicalPath()));
             return freeSpace;
         } else {
             return BigInteger.ZERO;
@@ -83,16 +100,53 @@ class UnixNativeFileUtil extends NativeFileUtil {
     	BigInteger totalSpace;
         
         if (file.isFile()) {
-        	totalSpace = new BigInteger(Long.toString(this.getTotalSpace(file.getCanonicalFile().getParent())));
+        	totalSpace = BigInteger.valueOf(this.getTotalSpace(file.getCanonicalFile().getParent()));
             return totalSpace; 
         } else if (file.isDirectory()) {
-        	totalSpace = new BigInteger(Long.toString(this.getTotalSpace(file.getCanonicalPath())));
+        	totalSpace = BigInteger.valueOf(this.getTotalSpace(file.getCanonicalPath()));
             return totalSpace;
         } else {
             return BigInteger.ZERO;
         }
 	}
     
+    /**
+     * Returns the mount point of the file system of the given file.
+     * 
+     * @param file an existing file or directory.
+     * @return the mount point.
+     * @throws IOException If an I/O error occurs.
+     */
+    public String getVolume(File file) throws IOException {
+    	File volume = file.getCanonicalFile();
+    	long device = this.getDevice(volume.getPath());
+    	if (device == -1) {
+    		throw new FileNotFoundException(file.getPath());
+    	}
+    	for (File parent = volume.getParentFile(); parent != null; parent = parent.getParentFile()) {
+    		if (this.getDevice(parent.getPath()) != device) {
+    			break;
+    		}
+    		volume = parent;
+    	}
+    	return volume.getPath();
+    }
+    
+    /**
+     * Returns the free and total bytes of the file system with a single statfs call.
+     * 
+     * @param volume the mount point of the file system.
+     * @return the free bytes and the total bytes of the file system.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long[] getSpace(String volume) throws IOException {
+    	long[] space = new long[2];
+    	if (!this.getVolumeSpace(volume, space)) {
+    		throw new IOException("Can't read the space of " + volume);
+    	}
+    	return space;
+    }
+    
     public void close() {
     	this.findClose();
 	}
@@ -119,6 +173,17 @@ class UnixNativeFileUtil extends NativeFileUtil {
 		return path;
 	}
 
+	/**
+	 * Reads a whole batch of entries and their attributes in a single native call, 
+	 * with one readdir and one stat per entry.
+	 */
+	public int readEntries(String fullPath, boolean first, String[] names, long[] attributes) {
+		if(first && !this.findOpen(fullPath)) {
+			return 0;
+		}
+		return this.findEntries(fullPath, names, attributes);
+	}
+
 	private native long getFreeSpace(String fullPath);
 	
 	private native long getTotalSpace(String fullPath);
@@ -128,5 +193,21 @@ class UnixNativeFileUtil extends NativeFileUtil {
 	private native String findNext();
 	
 	private native boolean findClose();
+	
+	private native boolean findOpen(String fullPath);
+	
+	private native int findEntries(String fullPath, String[] names, long[] attributes);
+	
+	native int getUid();
+	
+	native long getDevice(String fullPath);
+	
+	native String getEnvironmentVariable(String name);
+	
+	native boolean makePrivateDirectory(String fullPath);
+	
+	native boolean isOwnDirectory(String fullPath, boolean privateMode);
+	
+	private native boolean getVolumeSpace(String fullPath, long[] space);
 
 }
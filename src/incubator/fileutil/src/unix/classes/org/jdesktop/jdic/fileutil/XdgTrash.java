@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2005 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.fileutil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves files to the trash as specified by the freedesktop.org Trash specification. 
+ * A file is renamed into the trash of its own file system, so it is never copied: the 
+ * home trash for the file system of the home directory, <code>$topdir/.Trash-$uid</code> 
+ * for any other file system. A <code>.trashinfo</code> file records its original path 
+ * and deletion date.
+ * <p>
+ * The trash directories are looked up once per file system, and all the 
+ * <code>.trashinfo</code> files of a batch are written before the files are moved.
+ */
+class XdgTrash {
+	
+	private static final String INFO_SUFFIX = ".trashinfo";
+	
+	private UnixNativeFileUtil fileUtil;
+	
+	// file system device to its TrashDirectory
+	private Map trashDirectories = new HashMap();
+	
+	private static class TrashDirectory {
+		
+		File files;
+		
+		File info;
+		
+		// the top directory of the file system, null for the home trash
+		String topDirectory;
+	}
+	
+	private static class Recycled {
+		
+		File file;
+		
+		File infoFile;
+		
+		File trashedFile;
+	}
+	
+	XdgTrash(UnixNativeFileUtil fileUtil) {
+		this.fileUtil = fileUtil;
+	}
+	
+	/**
+	 * Moves the given files to the trash.
+	 * 
+	 * @param files the files or directories to be recycled.
+	 * @return the files which could not be recycled, including those whose info file 
+	 *         could not be written.
+	 */
+	List recycle(Collection files) {
+		List failed = new ArrayList();
+		List recycled = new ArrayList(files.size());
+		String deletionDate = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+		
+		// write all the info files first, as the specification requires
+		for(Iterator iter = files.iterator(); iter.hasNext(); ) {
+			File file = (File) iter.next();
+			Recycled entry;
+			try {
+				entry = this.writeInfo(file, deletionDate);
+			}
+			catch(IOException e) {
+				// a failure of one file doesn't stop the batch
+				entry = null;
+			}
+			if(entry == null) {
+				failed.add(file);
+			}
+			else {
+				recycled.add(entry);
+			}
+		}
+		
+		for(Iterator iter = recycled.iterator(); iter.hasNext(); ) {
+			Recycled entry = (Recycled) iter.next();
+			// rename replaces an existing file, so the name is checked again just before
+			if(this.fileUtil.getDevice(entry.trashedFile.getPath()) != -1 
+					|| !entry.file.renameTo(entry.trashedFile)) {
+				entry.infoFile.delete();
+				failed.add(entry.file);
+			}
+		}
+		return failed;
+	}
+	
+	/*
+	 * Reserves a name in the trash of the file, and writes its info file. Returns null 
+	 * if the file doesn't exist or has no trash.
+	 */
+	private Recycled writeInfo(File file, String deletionDate) throws IOException {
+		// resolve the links of the parent directory, but not of the file itself
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent == null) {
+			return null;
+		}
+		file = new File(parent.getCanonicalFile(), file.getName());
+		
+		long device = this.fileUtil.getDevice(file.getPath());
+		if(device == -1) {
+			return null;
+		}
+		TrashDirectory trash = this.getTrashDirectory(file, device);
+		if(trash == null) {
+			return null;
+		}
+		
+		String path = file.getPath();
+		if(trash.topDirectory != null) {
+			path = path.substring(trash.topDirectory.length());
+			if(path.startsWith(File.separator)) {
+				path = path.substring(1);
+			}
+		}
+		byte[] content = ("[Trash Info]\nPath=" + encodePath(path) 
+				+ "\nDeletionDate=" + deletionDate + "\n").getBytes("UTF-8");
+		
+		// the info file is created first, atomically, to reserve the name, skipping the 
+		// names of the files left in the trash without info file
+		String name = file.getName();
+		File infoFile = new File(trash.info, name + INFO_SUFFIX);
+		for(int i = 2; this.fileUtil.getDevice(new File(trash.files, name).getPath()) != -1 
+				|| !infoFile.createNewFile(); i++) {
+			name = file.getName() + "." + i;
+			infoFile = new File(trash.info, name + INFO_SUFFIX);
+		}
+		
+		FileOutputStream out = new FileOutputStream(infoFile);
+		try {
+			out.write(content);
+		}
+		catch(IOException e) {
+			infoFile.delete();
+			throw e;
+		}
+		finally {
+			out.close();
+		}
+		
+		Recycled entry = new Recycled();
+		entry.file = file;
+		entry.infoFile = infoFile;
+		entry.trashedFile = new File(trash.files, name);
+		return entry;
+	}
+	
+	private TrashDirectory getTrashDirectory(File file, long device) {
+		Long key = new Long(device);
+		if(this.trashDirectories.containsKey(key)) {
+			return (TrashDirectory) this.trashDirectories.get(key);
+		}
+		
+		TrashDirectory trash;
+		if(this.fileUtil.getDevice(this.getDataHome().getPath()) == device) {
+			trash = this.createTrashDirectory(new File(this.getDataHome(), "Trash"), null, false);
+		}
+		else {
+			// the files can't be renamed into the home trash of another file system, so 
+			// without a usable top directory trash they are reported as not recycled
+			trash = this.getTopDirectoryTrash(file, device);
+		}
+		this.trashDirectories.put(key, trash);
+		return trash;
+	}
+	
+	private File getDataHome() {
+		String dataHome = this.fileUtil.getEnvironmentVariable("XDG_DATA_HOME");
+		if(dataHome == null || dataHome.length() == 0) {
+			dataHome = System.getProperty("user.home") + "/.local/share";
+		}
+		File dataDir = new File(dataHome);
+		dataDir.mkdirs();
+		return dataDir;
+	}
+	
+	private TrashDirectory getTopDirectoryTrash(File file, long device) {
+		File topDirectory = file.getParentFile();
+		for(File parent = topDirectory.getParentFile(); parent != null; parent = parent.getParentFile()) {
+			if(this.fileUtil.getDevice(parent.getPath()) != device) {
+				break;
+			}
+			topDirectory = parent;
+		}
+		return this.createTrashDirectory(new File(topDirectory, ".Trash-" + this.fileUtil.getUid()), 
+				topDirectory.getPath(), true);
+	}
+	
+	/*
+	 * Creates the trash directory and its subdirectories if needed, only its owner 
+	 * being allowed to access them. An existing directory is used only if it is a real 
+	 * directory, not a symbolic link, owned by the user, and with mode 0700 when 
+	 * privateMode is set, so that no other user of a shared file system can receive 
+	 * the recycled files. Returns null if the directories can't be created or used.
+	 */
+	private TrashDirectory createTrashDirectory(File directory, String topDirectory, boolean privateMode) {
+		TrashDirectory trash = new TrashDirectory();
+		trash.files = new File(directory, "files");
+		trash.info = new File(directory, "info");
+		trash.topDirectory = topDirectory;
+		
+		File[] directories = { directory, trash.files, trash.info };
+		for(int i = 0; i < directories.length; i++) {
+			String path = directories[i].getPath();
+			if(this.fileUtil.getDevice(path) == -1) {
+				this.fileUtil.makePrivateDirectory(path);
+			}
+			// checked even when just created, as another user may have won the race
+			if(!this.fileUtil.isOwnDirectory(path, privateMode)) {
+				return null;
+			}
+		}
+		return trash;
+	}
+	
+	/*
+	 * Escapes the path like an URL path, as the specification requires.
+	 */
+	private static String encodePath(String path) throws UnsupportedEncodingException {
+		byte[] bytes = path.getBytes("UTF-8");
+		StringBuffer buf = new StringBuffer(bytes.length);
+		for(int i = 0; i < bytes.length; i++) {
+			int c = bytes[i] & 0xff;
+			if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') 
+					|| "/-_.!~*'()".indexOf(c) >= 0) {
+				buf.append((char) c);
+			}
+			else {
+				buf.append('%');
+				buf.append(Character.toUpperCase(Character.forDigit(c >> 4, 16)));
+				buf.append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+			}
+		}
+		return buf.toString();
+	}
+}
@@ -21,9 +21,21 @@
 #include <jni.h>
 #include <sys/statfs.h>
 #include <sys/types.h>
+#include <sys/stat.h>
 #include <dirent.h>
+#include <limits.h>
+#include <string.h>
+#include <stdlib.h>
+#include <unistd.h>
 #include "UnixNativeFileUtil.h"
 
+/* st_mtime is a macro for st_mtim.tv_sec where the nanoseconds are kept */
+#ifdef st_mtime
+#define MTIME_MILLIS(st) ((jlong) (st).st_mtim.tv_sec * 1000 + (st).st_mtim.tv_nsec / 1000000)
+#else
+#define MTIME_MILLIS(st) ((jlong) (st).st_mtime * 1000)
+#endif
+
 /*
  * author: Fbio Castilho Martins
  */
@@ -69,12 +81,12 @@ JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fin
     char* cpFullPath = (char*) (*env)->GetStringUTFChars(env, fullPath, NULL);
     
     jclass cls = (*env)->GetObjectClass(env, obj);
-    jfieldID fid= (*env)->GetFieldID(env, cls, "handle", "I");
+    jfieldID fid= (*env)->GetFieldID(env, cls, "handle", "J");
     
     if (fid == NULL) {
         return; /* failed to find the field */
     }
-    jint handle = (*env)->GetIntField(env, obj, fid);
+    jlong handle = (*env)->GetLongField(env, obj, fid);
     
     struct dirent *pDirEntry;
     
@@ -88,8 +100,8 @@ JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fin
             return NULL;
         }
         else {
-            handle = (jint) pDir;
-            (*env)->SetIntField(env, obj, fid, handle);
+            handle = (jlong) (long) pDir;
+            (*env)->SetLongField(env, obj, fid, handle);
             return (*env)->NewStringUTF(env, pDirEntry->d_name);
         }          
     }
@@ -98,15 +110,18 @@ JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fin
 JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findNext
   (JNIEnv *env, jobject obj) {
     jclass cls = (*env)->GetObjectClass(env, obj);
-    jfieldID fid= (*env)->GetFieldID(env, cls, "handle", "I");
+    jfieldID fid= (*env)->GetFieldID(env, cls, "handle", "J");
     
     if (fid == NULL) {
         return; /* failed to find the field */
     }
-    jint handle = (*env)->GetIntField(env, obj, fid);
+    jlong handle = (*env)->GetLongField(env, obj, fid);
     
     struct dirent *pDirEntry; 
-    DIR *pDir = (DIR*) handle;
+    DIR *pDir = (DIR*) (long) handle;
+    if(pDir == NULL) {
+        return NULL;
+    }
       
     pDirEntry = readdir(pDir);
         
@@ -114,8 +129,8 @@ JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fin
         return NULL;
     }
     else {
-        handle = (jint) pDir;
-        (*env)->SetIntField(env, obj, fid, handle);
+        handle = (jlong) (long) pDir;
+        (*env)->SetLongField(env, obj, fid, handle);
         return (*env)->NewStringUTF(env, pDirEntry->d_name);;
     }
 }
@@ -123,15 +138,19 @@ JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fin
 JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findClose
   (JNIEnv *env, jobject obj) {
     jclass cls = (*env)->GetObjectClass(env, obj);
-    jfieldID fid = fid = (*env)->GetFieldID(env, cls, "handle", "I");
+    jfieldID fid = fid = (*env)->GetFieldID(env, cls, "handle", "J");
     
     if (fid == NULL) {
         return; /* failed to find the field */
     }
     
-    jint handle = (*env)->GetIntField(env, obj, fid);
+    jlong handle = (*env)->GetLongField(env, obj, fid);
     
-    DIR *pDir = (DIR*) handle;
+    DIR *pDir = (DIR*) (long) handle;
+    if(pDir == NULL) {
+        return JNI_FALSE;
+    }
+    (*env)->SetLongField(env, obj, fid, (jlong) 0);
     
     if(closedir(pDir) == 0) {
         return JNI_TRUE;
@@ -140,3 +159,199 @@ JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fi
         return JNI_FALSE;
     }
 }
+
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findOpen
+  (JNIEnv *env, jobject obj, jstring fullPath) {
+    jclass cls = (*env)->GetObjectClass(env, obj);
+    jfieldID fid = (*env)->GetFieldID(env, cls, "handle", "J");
+    
+    if (fid == NULL) {
+        return JNI_FALSE; /* failed to find the field */
+    }
+    
+    char* cpFullPath = (char*) (*env)->GetStringUTFChars(env, fullPath, NULL);
+    DIR *pDir = opendir(cpFullPath);
+    (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+    
+    if(pDir == NULL) {
+        return JNI_FALSE;
+    }
+    (*env)->SetLongField(env, obj, fid, (jlong) (long) pDir);
+    return JNI_TRUE;
+}
+
+/*
+ * Reads up to the length of names entries of the directory opened by findOpen,
+ * skipping "." and "..". The type, size and modification time (in milliseconds)
+ * of each entry are stored in attributes, 3 per entry. Returns the number of
+ * entries read.
+ */
+JNIEXPORT jint JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findEntries
+  (JNIEnv *env, jobject obj, jstring fullPath, jobjectArray names, jlongArray attributes) {
+    jclass cls = (*env)->GetObjectClass(env, obj);
+    jfieldID fid = (*env)->GetFieldID(env, cls, "handle", "J");
+    
+    if (fid == NULL) {
+        return 0; /* failed to find the field */
+    }
+    
+    DIR *pDir = (DIR*) (long) (*env)->GetLongField(env, obj, fid);
+    if(pDir == NULL) {
+        return 0;
+    }
+    
+    char path[PATH_MAX];
+    const char* cpFullPath = (*env)->GetStringUTFChars(env, fullPath, NULL);
+    size_t dirLength = strlen(cpFullPath);
+    if(dirLength + 1 >= PATH_MAX) {
+        (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+        return 0; /* too long to append any entry name */
+    }
+    memcpy(path, cpFullPath, dirLength);
+    (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+    if(dirLength == 0 || path[dirLength - 1] != '/') {
+        path[dirLength++] = '/';
+    }
+    
+    jsize max = (*env)->GetArrayLength(env, names);
+    jlong* pAttributes = (*env)->GetLongArrayElements(env, attributes, NULL);
+    
+    jint count = 0;
+    struct dirent *pDirEntry;
+    struct stat fileStat;
+    
+    while(count < max && (pDirEntry = readdir(pDir)) != NULL) {
+        if(strcmp(pDirEntry->d_name, ".") == 0 || strcmp(pDirEntry->d_name, "..") == 0) {
+            continue;
+        }
+        
+        jstring name = (*env)->NewStringUTF(env, pDirEntry->d_name);
+        if(name == NULL) {
+            break; /* out of memory error thrown */
+        }
+        (*env)->SetObjectArrayElement(env, names, count, name);
+        (*env)->DeleteLocalRef(env, name);
+        
+        jlong* pEntry = pAttributes + 3 * count;
+        size_t nameLength = strlen(pDirEntry->d_name);
+        if(dirLength + nameLength >= PATH_MAX) {
+            /* the path is too long to stat, report no attributes */
+            pEntry[0] = 0;
+            pEntry[1] = 0;
+            pEntry[2] = 0;
+            count++;
+            continue;
+        }
+        memcpy(path + dirLength, pDirEntry->d_name, nameLength + 1);
+        if(stat(path, &fileStat) == 0) {
+            pEntry[0] = S_ISDIR(fileStat.st_mode) ? 2 : S_ISREG(fileStat.st_mode) ? 1 : 0;
+            pEntry[1] = S_ISREG(fileStat.st_mode) ? (jlong) fileStat.st_size : 0;
+            pEntry[2] = MTIME_MILLIS(fileStat);
+        }
+        else {
+            pEntry[0] = 0;
+            pEntry[1] = 0;
+            pEntry[2] = 0;
+        }
+        count++;
+    }
+    
+    (*env)->ReleaseLongArrayElements(env, attributes, pAttributes, 0);
+    return count;
+}
+
+JNIEXPORT jint JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getUid
+  (JNIEnv *env, jobject obj) {
+    return (jint) getuid();
+}
+
+/*
+ * Returns the device of the file, without following a symbolic link, or -1 if
+ * the file doesn't exist.
+ */
+JNIEXPORT jlong JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getDevice
+  (JNIEnv *env, jobject obj, jstring fullPath) {
+    struct stat fileStat;
+    int status;
+    
+    const char* cpFullPath = (*env)->GetStringUTFChars(env, fullPath, NULL);
+    status = lstat(cpFullPath, &fileStat);
+    (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+    
+    if(status != 0) {
+        return -1;
+    }
+    return (jlong) fileStat.st_dev;
+}
+
+JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getEnvironmentVariable
+  (JNIEnv *env, jobject obj, jstring name) {
+    const char* cpName = (*env)->GetStringUTFChars(env, name, NULL);
+    const char* value = getenv(cpName);
+    (*env)->ReleaseStringUTFChars(env, name, cpName);
+    
+    if(value == NULL) {
+        return NULL;
+    }
+    return (*env)->NewStringUTF(env, value);
+}
+
+/*
+ * Creates a directory only its owner can access.
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_makePrivateDirectory
+  (JNIEnv *env, jobject obj, jstring fullPath) {
+    int status;
+    
+    const char* cpFullPath = (*env)->GetStringUTFChars(env, fullPath, NULL);
+    status = mkdir(cpFullPath, 0700);
+    (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+    
+    return (status == 0) ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Returns true if the path is a directory, not a symbolic link, owned by the
+ * user, and with mode 0700 if privateMode is set.
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_isOwnDirectory
+  (JNIEnv *env, jobject obj, jstring fullPath, jboolean privateMode) {
+    struct stat fileStat;
+    int status;
+    
+    const char* cpFullPath = (*env)->GetStringUTFChars(env, fullPath, NULL);
+    status = lstat(cpFullPath, &fileStat);
+    (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+    
+    if(status != 0 || !S_ISDIR(fileStat.st_mode) || fileStat.st_uid != getuid()) {
+        return JNI_FALSE;
+    }
+    if(privateMode && (fileStat.st_mode & 07777) != 0700) {
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+/*
+ * Stores the free and total bytes of the file system in space, with a single
+ * statfs call. Returns false if the file system can't be queried.
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getVolumeSpace
+  (JNIEnv *env, jobject obj, jstring fullPath, jlongArray space) {
+    struct statfs fsStat;
+    int status;
+    
+    const char* cpFullPath = (*env)->GetStringUTFChars(env, fullPath, NULL);
+    status = statfs(cpFullPath, &fsStat);
+    (*env)->ReleaseStringUTFChars(env, fullPath, cpFullPath);
+    
+    if(status != 0) {
+        return JNI_FALSE;
+    }
+    
+    jlong values[2];
+    values[0] = (jlong) fsStat.f_bavail * fsStat.f_bsize;
+    values[1] = (jlong) fsStat.f_blocks * fsStat.f_bsize;
+    (*env)->SetLongArrayRegion(env, space, 0, 2, values);
+    return JNI_TRUE;
+}
@@ -47,6 +47,70 @@ JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_fin
 JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findClose
   (JNIEnv *, jobject);
 
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    findOpen
+ * Signature: (Ljava/lang/String;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findOpen
+  (JNIEnv *, jobject, jstring);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    findEntries
+ * Signature: (Ljava/lang/String;[Ljava/lang/String;[J)I
+ */
+JNIEXPORT jint JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_findEntries
+  (JNIEnv *, jobject, jstring, jobjectArray, jlongArray);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    getUid
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getUid
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    getDevice
+ * Signature: (Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getDevice
+  (JNIEnv *, jobject, jstring);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    getEnvironmentVariable
+ * Signature: (Ljava/lang/String;)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getEnvironmentVariable
+  (JNIEnv *, jobject, jstring);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    makePrivateDirectory
+ * Signature: (Ljava/lang/String;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_makePrivateDirectory
+  (JNIEnv *, jobject, jstring);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    isOwnDirectory
+ * Signature: (Ljava/lang/String;Z)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_isOwnDirectory
+  (JNIEnv *, jobject, jstring, jboolean);
+
+/*
+ * Class:     org_jdesktop_jdic_fileutil_UnixNativeFileUtil
+ * Method:    getVolumeSpace
+ * Signature: (Ljava/lang/String;[J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_jdesktop_jdic_fileutil_UnixNativeFileUtil_getVolumeSpace
+  (JNIEnv *, jobject, jstring, jlongArray);
+
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,202 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.icons;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.lang.ref.SoftReference;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.ImageIcon;
+
+/**
+ * A cache of decoded icons, keyed by theme, name and size.  The icons are kept as
+ * <code>BufferedImage</code>s of the requested size, so they are neither decoded
+ * nor scaled again.  The least recently used icons are evicted once the icons take
+ * more than a byte budget, and the garbage collector may reclaim them too when
+ * memory runs low.
+ */
+class IconCache {
+
+    private final long maxBytes;
+    private long bytes;
+
+    private long hitCount;
+    private long missCount;
+
+    // Key to Entry, in access order.
+    private final Map entries= new LinkedHashMap(16, 0.75f, true);
+
+    private static class Key {
+        final String theme;
+        final String name;
+        final int size;
+
+        Key(String theme, String name, int size) {
+            this.theme= theme;
+            this.name= name;
+            this.size= size;
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof Key))
+                return false;
+            Key k= (Key)o;
+            return size==k.size && name.equals(k.name)
+                && (theme==null ?k.theme==null :theme.equals(k.theme));
+        }
+
+        public int hashCode() {
+            return (theme==null ?0 :theme.hashCode()*31) + name.hashCode()*17 + size;
+        }
+    }
+
+    private static class Entry {
+        final SoftReference image;
+        final long bytes;
+
+        Entry(BufferedImage image) {
+            this.image= new SoftReference(image);
+            this.bytes= 4L*image.getWidth()*image.getHeight();
+        }
+    }
+
+    /**
+     * Create a cache.
+     * @param maxBytes The budget of the cached images, in bytes.  0 disables the cache.
+     */
+    IconCache(long maxBytes) {
+        this.maxBytes= maxBytes;
+    }
+
+    /**
+     * Obtain the cached icon.
+     * @return The icon, or null if it is not cached.
+     */
+    synchronized Image get(String theme, String name, int size) {
+        Key key= new Key(theme, name, size);
+        Entry entry= (Entry)entries.get(key);
+        Image image= entry==null ?null :(Image)entry.image.get();
+        if(image==null) {
+            if(entry!=null) {
+                // Reclaimed by the garbage collector.
+                entries.remove(key);
+                bytes-= entry.bytes;
+            }
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+        return image;
+    }
+
+    /**
+     * Obtain the cached icon, without counting a hit or a miss.
+     * @return The icon, or null if it is not cached.
+     */
+    synchronized Image peek(String theme, String name, int size) {
+        Entry entry= (Entry)entries.get(new Key(theme, name, size));
+        return entry==null ?null :(Image)entry.image.get();
+    }
+
+    /**
+     * Decode and scale the given icon, and cache it unless it does not fit the budget.
+     * @return The icon of the requested size, or the given icon if it could not be decoded.
+     */
+    Image put(String theme, String name, int size, Image icon) {
+        if(maxBytes==0)
+            return icon;
+
+        BufferedImage image= toBufferedImage(icon, size);
+        if(image==null)
+            return icon;
+
+        Entry entry= new Entry(image);
+        if(entry.bytes>maxBytes)
+            return image;
+
+        synchronized(this) {
+            Entry old= (Entry)entries.put(new Key(theme, name, size), entry);
+            if(old!=null)
+                bytes-= old.bytes;
+            bytes+= entry.bytes;
+
+            // Evict the least recently used icons.
+            for(Iterator it= entries.values().iterator(); bytes>maxBytes && it.hasNext(); ) {
+                Entry eldest= (Entry)it.next();
+                it.remove();
+                bytes-= eldest.bytes;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Draw the icon into an image of the requested size, waiting for it to be decoded.
+     * A non-square icon is scaled to fit, keeping its aspect ratio, and centered.
+     * @return The image, or null if the icon could not be decoded.
+     */
+    private static BufferedImage toBufferedImage(Image icon, int size) {
+        // ImageIcon waits until the image is loaded.
+        Image loaded= new ImageIcon(icon).getImage();
+        int width= loaded.getWidth(null);
+        int height= loaded.getHeight(null);
+        if(width<=0 || height<=0)
+            return null;
+
+        int scaledWidth= size;
+        int scaledHeight= size;
+        if(width>height)
+            scaledHeight= Math.max(1, (int)((long)height*size/width));
+        else if(height>width)
+            scaledWidth= Math.max(1, (int)((long)width*size/height));
+
+        BufferedImage image= new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g= image.createGraphics();
+        try {
+            g.drawImage(loaded, (size-scaledWidth)/2, (size-scaledHeight)/2,
+                        scaledWidth, scaledHeight, null);
+        }
+        finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes= 0;
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.icons;
+
+import java.awt.Image;
+
+import java.util.EventListener;
+
+/**
+ * The listener notified when an icon requested with
+ * {@link IconService#getIconAsync IconService.getIconAsync} is available.
+ * The notification is delivered on the event dispatch thread, so that the
+ * listener can repaint the component showing the icon.
+ */
+public interface IconListener extends EventListener {
+
+    /**
+     * Invoked when the requested icon has been loaded.
+     * @param name The name of the icon
+     * @param size The requested size of the icon
+     * @param icon The icon of the requested size, or null if no icon of the given name exists
+     */
+    void iconLoaded(String name, int size, Image icon);
+}
@@ -0,0 +1,149 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.jdesktop.jdic.icons;
+
+import java.awt.EventQueue;
+import java.awt.Image;
+import java.awt.Toolkit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads icons on a bounded pool of daemon threads.  The requests are served in
+ * order, and a request for an icon which is already queued joins the queued one.
+ * The threads are started as needed, up to <code>org.jdesktop.jdic.icons.loaderThreads</code>
+ * (2 by default), and stop after they have been idle for a while.
+ */
+class IconLoader {
+
+    private static final long IDLE_TIME= 30000;
+
+    private final int maxThreads;
+    private int threads;
+    private int idleThreads;
+
+    private final LinkedList queue= new LinkedList();
+    private final Map pending= new HashMap();      // key to queued Request
+
+    private static class Request {
+        final String key;
+        final String name;
+        final int size;
+        final Toolkit toolkit;
+        final List listeners= new ArrayList();
+
+        Request(String key, String name, int size, Toolkit toolkit) {
+            this.key= key;
+            this.name= name;
+            this.size= size;
+            this.toolkit= toolkit;
+        }
+    }
+
+    IconLoader(int maxThreads) {
+        this.maxThreads= Math.max(maxThreads, 1);
+    }
+
+    /**
+     * Queue the loading of an icon.
+     * @param listener The listener notified on the event dispatch thread, or null
+     */
+    synchronized void load(String name, int size, Toolkit toolkit, IconListener listener) {
+        String key= name + '\n' + size;
+        Request request= (Request)pending.get(key);
+        if(request==null) {
+            request= new Request(key, name, size, toolkit);
+            pending.put(key, request);
+            queue.addLast(request);
+            if(idleThreads>0)
+                notify();
+            else if(threads<maxThreads)
+                startThread();
+        }
+        if(listener!=null)
+            request.listeners.add(listener);
+    }
+
+    private void startThread() {
+        Thread thread= new Thread("IconLoader-" + threads) {
+            public void run() {
+                serve();
+            }
+        };
+        thread.setDaemon(true);
+        ++threads;
+        thread.start();
+    }
+
+    /**
+     * Take the next request, waiting for one while idle.
+     * @return The request, or null if the thread should stop
+     */
+    private synchronized Request take() {
+        if(queue.isEmpty()) {
+            ++idleThreads;
+            try {
+                wait(IDLE_TIME);
+            }
+            catch(InterruptedException ex) {
+            }
+            finally {
+                --idleThreads;
+            }
+        }
+        if(queue.isEmpty()) {
+            --threads;
+            return null;
+        }
+        return (Request)queue.removeFirst();
+    }
+
+    private void serve() {
+        for(Request request; (request= take())!=null; ) {
+            Image icon= null;
+            try {
+                icon= IconService.loadIcon(request.name, request.size, request.toolkit);
+            }
+            catch(RuntimeException ex) {
+            }
+
+            List listeners;
+            synchronized(this) {
+                pending.remove(request.key);
+                listeners= request.listeners;
+            }
+            if(!listeners.isEmpty())
+                notifyListeners(request, listeners, icon);
+        }
+    }
+
+    private static void notifyListeners(final Request request, final List listeners, final Image icon) {
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                for(Iterator it= listeners.iterator(); it.hasNext(); )
+                    ((IconListener)it.next()).iconLoaded(request.name, request.size, icon);
+            }
+        });
+    }
+}
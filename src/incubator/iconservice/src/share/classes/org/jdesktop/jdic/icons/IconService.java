@@ -20,17 +20,45 @@ package org.jdesktop.jdic.icons;
 import java.awt.Image;
 import java.awt.Toolkit;
 
+import java.util.Collection;
+import java.util.Iterator;
+
 import org.jdesktop.jdic.icons.spi.IconProvider;
 
 /**
  * The <code>IconService</code> class provides several methods to access
  * system icons. It includes methods to retrieve a particular icon and to set and get icon themes.
  * The icons are obtained from the {@link IconProvider IconProvider}.
+ * <p>
+ * The icons are decoded and scaled once, then cached until the theme is changed.
+ * The cache holds at most <code>org.jdesktop.jdic.icons.cacheBytes</code> bytes
+ * of images (4MB by default), the least recently used icons being evicted first.
+ * A budget of 0 disables the cache.
+ * <p>
+ * Icons can also be loaded in the background with {@link #getIconAsync getIconAsync}
+ * and {@link #prefetch prefetch}, on at most <code>org.jdesktop.jdic.icons.loaderThreads</code>
+ * threads (2 by default).
  */
 public class IconService {
 
+    /** System property giving the budget of the icon cache, in bytes. */
+    public static final String CACHE_BYTES_PROPERTY= "org.jdesktop.jdic.icons.cacheBytes";
+
+    /** System property giving the maximum number of threads loading icons in the background. */
+    public static final String LOADER_THREADS_PROPERTY= "org.jdesktop.jdic.icons.loaderThreads";
+
+    private static final long DEFAULT_CACHE_BYTES= 4*1024*1024;
+
+    private static final int DEFAULT_LOADER_THREADS= 2;
+
     private static IconProvider provider= IconProvider.getProvider();
 
+    private static IconCache cache= new IconCache(
+        Long.getLong(CACHE_BYTES_PROPERTY, DEFAULT_CACHE_BYTES).longValue());
+
+    private static IconLoader loader= new IconLoader(
+        Integer.getInteger(LOADER_THREADS_PROPERTY, DEFAULT_LOADER_THREADS).intValue());
+
     /**
      * Suppress default constructor for noninstantiability.
      */
@@ -60,7 +88,69 @@ public class IconService {
      * @return An icon of the requested size or null
      */
     public static Image getIcon(String name, int size, Toolkit toolkit) {
-        return provider.getIcon(name, size, toolkit);
+        String theme= provider.getTheme();
+        Image icon= cache.get(theme, name, size);
+        if(icon!=null)
+            return icon;
+        return createIcon(theme, name, size, toolkit);
+    }
+
+    /**
+     * Return an icon of the requested size from the desktop without blocking.
+     * If the icon has already been loaded, it is returned immediately and the listener is not notified.
+     * Otherwise the icon is loaded in the background, the placeholder is returned,
+     * and the listener is notified on the event dispatch thread once the icon is available.
+     * The icon is created by the default Toolkit.
+     * @param name The name of the icon
+     * @param size The requested size of the returned image
+     * @param placeholder The image to return while the icon is loaded.  This may be null.
+     * @param listener The listener notified when the icon is loaded.  This may be null.
+     * @return The icon of the requested size or the placeholder
+     */
+    public static Image getIconAsync(String name, int size, Image placeholder, IconListener listener) {
+        Image icon= cache.get(provider.getTheme(), name, size);
+        if(icon!=null)
+            return icon;
+
+        loader.load(name, size, Toolkit.getDefaultToolkit(), listener);
+        return placeholder;
+    }
+
+    /**
+     * Load icons of the requested size in the background, so that later requests find them
+     * already decoded and scaled.  Icons which have already been loaded are skipped.
+     * @param names The names of the icons, as Strings
+     * @param size The requested size of the icons
+     */
+    public static void prefetch(Collection names, int size) {
+        String theme= provider.getTheme();
+        Toolkit toolkit= Toolkit.getDefaultToolkit();
+        for(Iterator it= names.iterator(); it.hasNext(); ) {
+            String name= (String)it.next();
+            if(cache.peek(theme, name, size)==null)
+                loader.load(name, size, toolkit, null);
+        }
+    }
+
+    /**
+     * Load an icon in the background, unless it has been cached meanwhile.
+     */
+    static Image loadIcon(String name, int size, Toolkit toolkit) {
+        String theme= provider.getTheme();
+        Image icon= cache.peek(theme, name, size);
+        if(icon!=null)
+            return icon;
+        return createIcon(theme, name, size, toolkit);
+    }
+
+    /**
+     * Obtain an icon from the provider, and cache it decoded and scaled.
+     */
+    private static Image createIcon(String theme, String name, int size, Toolkit toolkit) {
+        Image icon= provider.getIcon(name, size, toolkit);
+        if(icon==null)
+            return null;
+        return cache.put(theme, name, size, icon);
     }
 
     /**
@@ -77,5 +167,29 @@ public class IconService {
      */
     public static void setTheme(String iconTheme) {
         provider.setTheme(iconTheme);
+        cache.clear();
+    }
+
+    /**
+     * Discard the cached icons, so that they are obtained again from the desktop.
+     */
+    public static void flushCache() {
+        cache.clear();
+    }
+
+    /**
+     * Obtain the number of icons found in the cache.
+     * @return The number of cache hits since the service was loaded.
+     */
+    public static long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Obtain the number of icons not found in the cache.
+     * @return The number of cache misses since the service was loaded.
+     */
+    public static long getCacheMissCount() {
+        return cache.getMissCount();
     }
 }
@@ -40,7 +40,7 @@ public class UnixIconProvider extends IconProvider {
         if(!XdgDirectory.isLoaded())
             return false;
 
-        theme= new XdgIconTheme(XdgDirectory.getGconfValue("/desktop/gnome/interface/icon_theme"));
+        theme= XdgIconTheme.getTheme(XdgDirectory.getGconfValue("/desktop/gnome/interface/icon_theme"));
         return true;
     }
 
@@ -81,7 +81,7 @@ public class UnixIconProvider extends IconProvider {
      * @param The icon theme name.  This may be ignored if themes are not used by the platform.
      */
     public void setTheme(String iconTheme) {
-        theme= new XdgIconTheme(iconTheme);
+        theme= XdgIconTheme.getTheme(iconTheme);
     }
 
 }
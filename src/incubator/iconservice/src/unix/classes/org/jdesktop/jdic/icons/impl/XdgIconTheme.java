@@ -34,23 +34,59 @@ import java.util.regex.Pattern;
 /**
 * An icon theme based upon <a href="http://freedesktop.org/Standards/icon-theme-spec">
 * freedesktop icon theme specification</a>
+* <p>
+* The icon files of the theme directories are listed once, when an icon is first
+* looked up, into an index from icon name to the directories holding it.  An icon
+* name is indexed both with and without its .png, .xpm or .svg extension.  The
+* index is built again when any of the theme directories is created, removed or
+* modified.
+* <p>
+* The themes are shared: {@link #getTheme getTheme} parses the index.theme file of
+* a theme once, and the inherited themes are looked up by name among the shared
+* themes.  A theme parses its index.theme file again only when the file is modified.
 */
 public class XdgIconTheme {
 
     private String name;
-    private long lastReadTime;
+    private File indexFile;         // the index.theme file read
     private long lastModTime;
-    private List directories;
-    private List inherits;
+    private List directories;       // List of Directory, null until read
+    private List inherits;          // List of inherited theme names
+
+    // The supported icon file extensions, by preference.
+    private static final String[] EXTENSIONS= { ".png", ".xpm", ".svg" };
+
+    // The minimum interval between two checks of the listed directories.
+    private static final long INDEX_CHECK_INTERVAL= 5000;
+
+    private Map iconIndex;          // icon name to List of IndexEntry
+    private List indexedDirs;       // the theme directories, existing or not
+    private long indexStamp;
+    private long lastIndexCheckTime;
+
+    private static final Map themes= new HashMap();     // theme name to shared theme
+
+    /**
+    * Obtain the shared theme of the given name.
+    * @param name The theme name, or null for the hicolor theme
+    */
+    static XdgIconTheme getTheme(String name) {
+        if(name==null)
+            name= "hicolor";
+
+        synchronized(themes) {
+            XdgIconTheme theme= (XdgIconTheme)themes.get(name);
+            if(theme==null) {
+                theme= new XdgIconTheme(name);
+                themes.put(name, theme);
+            }
+            return theme;
+        }
+    }
 
-    XdgIconTheme(String name) {
-        this.name= name==null ?"hicolor" :name;
-        directories= new ArrayList();
-        inherits= new ArrayList();
+    private XdgIconTheme(String name) {
+        this.name= name;
         readIndex();
-        if(inherits.size()==0 && !name.equals("hicolor")) {
-            inherits.add(new XdgIconTheme("hicolor"));
-        }
     }
 
     String getName() {
@@ -66,6 +102,140 @@ public class XdgIconTheme {
         return getIconFile(iconName);
     }
 
+    /**
+    * An icon file of a theme directory.
+    */
+    private static class IndexEntry {
+        final Directory directory;
+        final File file;
+        final int extension;    // index in EXTENSIONS, or -1 if the name has none
+
+        IndexEntry(Directory directory, File file, int extension) {
+            this.directory= directory;
+            this.file= file;
+            this.extension= extension;
+        }
+    }
+
+    /**
+    * Obtain the icon files of the given name, in the order of the theme directories.
+    * @return a List of IndexEntry, or null if the theme has no such icon.
+    */
+    private synchronized List getIndexEntries(String iconName) {
+        checkIconIndex();
+        return (List)iconIndex.get(iconName);
+    }
+
+    /**
+    * Obtain the shared themes this theme inherits from.
+    */
+    private synchronized List getInherits() {
+        List rc= new ArrayList(inherits.size());
+        for(Iterator it= inherits.iterator(); it.hasNext(); ) {
+            rc.add(getTheme((String)it.next()));
+        }
+        return rc;
+    }
+
+    private void checkIconIndex() {
+        long currentTime= System.currentTimeMillis();
+        if(iconIndex!=null && currentTime-lastIndexCheckTime<INDEX_CHECK_INTERVAL)
+            return;
+        lastIndexCheckTime= currentTime;
+
+        if(readIndex() || iconIndex==null || getIndexStamp(indexedDirs)!=indexStamp)
+            buildIconIndex();
+    }
+
+    private static long getIndexStamp(List dirs) {
+        long stamp= 0;
+        for(Iterator it= dirs.iterator(); it.hasNext(); ) {
+            stamp= stamp*31+((File)it.next()).lastModified();
+        }
+        return stamp;
+    }
+
+    /**
+    * List the files of each theme directory, in every base directory of the theme.
+    * The base directories are searched in the same order as getIconFile.
+    */
+    private void buildIconIndex() {
+        List bases= new ArrayList();
+        bases.add(new File(getHome()+"/.icons/"+name));
+        for(Iterator it= XdgDirectory.getDataDirs("/icons/"+name); it.hasNext(); ) {
+            bases.add(it.next());
+        }
+        bases.add(new File("/usr/share/pixmaps/"+name));
+
+        Map index= new HashMap();
+        List dirs= new ArrayList();
+        for(Iterator it= directories.iterator(); it.hasNext(); ) {
+            Directory directory= (Directory)it.next();
+            // file name to entry, the first base directory wins
+            Map dirIndex= new HashMap();
+            for(Iterator bit= bases.iterator(); bit.hasNext(); ) {
+                File dir= new File((File)bit.next(), directory.dirName);
+                // stamped even if missing, so that creating it rebuilds the index
+                dirs.add(dir);
+                String[] files= dir.list();
+                if(files==null)
+                    continue;
+
+                for(int i= 0; i<files.length; ++i) {
+                    if(!dirIndex.containsKey(files[i]))
+                        dirIndex.put(files[i], new File(dir, files[i]));
+                }
+            }
+
+            for(Iterator fit= dirIndex.entrySet().iterator(); fit.hasNext(); ) {
+                Map.Entry e= (Map.Entry)fit.next();
+                String fileName= (String)e.getKey();
+                File file= (File)e.getValue();
+                addIndexEntry(index, fileName, new IndexEntry(directory, file, -1));
+
+                int ext= getExtension(fileName);
+                if(ext>=0) {
+                    String iconName= fileName.substring(0, fileName.length()-EXTENSIONS[ext].length());
+                    addIndexEntry(index, iconName, new IndexEntry(directory, file, ext));
+                }
+            }
+        }
+
+        iconIndex= index;
+        indexedDirs= dirs;
+        indexStamp= getIndexStamp(dirs);
+    }
+
+    private static int getExtension(String fileName) {
+        for(int i= 0; i<EXTENSIONS.length; ++i) {
+            if(fileName.endsWith(EXTENSIONS[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+    * Add the entry to the entries of its icon name.  An icon name has one entry per 
+    * directory, the one of the preferred extension.
+    */
+    private static void addIndexEntry(Map index, String iconName, IndexEntry entry) {
+        List entries= (List)index.get(iconName);
+        if(entries==null) {
+            entries= new ArrayList(2);
+            index.put(iconName, entries);
+        }
+
+        for(int i= 0; i<entries.size(); ++i) {
+            IndexEntry other= (IndexEntry)entries.get(i);
+            if(other.directory==entry.directory) {
+                if(entry.extension<other.extension)
+                    entries.set(i, entry);
+                return;
+            }
+        }
+        entries.add(entry);
+    }
+
     private static String home;
     private static String getHome() {
         if(home==null) {
@@ -109,30 +279,35 @@ public class XdgIconTheme {
 
     static private Pattern comma= Pattern.compile(",");
 
-    private void readIndex() {
-        long currentTime= System.currentTimeMillis();
-        if(currentTime-lastReadTime <5000) {
-            return;
-        }
-        lastReadTime= currentTime;
-
+    /**
+    * Read the index.theme file, unless it has not been modified since it was read.
+    * @return true, if the file was read
+    */
+    private boolean readIndex() {
         File indexTheme= getThemeFile("index.theme");
-        if(indexTheme==null) {
+        if(indexTheme==null)
             indexTheme= getThemeFile("index.desktop");
-            if(indexTheme==null) {
-                return;
-            }
-        }
 
-        long modTime= indexTheme.lastModified();
-        if(lastModTime==modTime) {
-            return;
-        }
+        long modTime= indexTheme==null ?0 :indexTheme.lastModified();
+        if(directories!=null && modTime==lastModTime
+        && (indexTheme==null ?indexFile==null :indexTheme.equals(indexFile)))
+            return false;
+        indexFile= indexTheme;
         lastModTime= modTime;
 
-        inherits.clear();
-        directories.clear();
+        List dirList= new ArrayList();
+        List inhList= new ArrayList();
+        if(indexTheme!=null)
+            parseIndex(indexTheme, dirList, inhList);
+        if(inhList.size()==0 && !name.equals("hicolor"))
+            inhList.add("hicolor");
+
+        directories= dirList;
+        inherits= inhList;
+        return true;
+    }
 
+    private void parseIndex(File indexTheme, List dirList, List inhList) {
         try {
             XdgDesktopReader index= new XdgDesktopReader(indexTheme);
 
@@ -151,7 +326,7 @@ public class XdgIconTheme {
         
                     try {
                         Directory dir= new Directory(dirName, dirGroup);
-                        directories.add(dir);
+                        dirList.add(dir);
                     }
                     catch(Exception ex) {
                     }
@@ -161,8 +336,7 @@ public class XdgIconTheme {
             Iterator inh= group.getStrings("Inherits", comma);
             if(inh!=null) {
                 while(inh.hasNext()) {
-                    String inheritTheme= inh.next().toString();
-                    inherits.add(new XdgIconTheme(inheritTheme));
+                    inhList.add(inh.next().toString());
                 }
             }
         }
@@ -191,26 +365,23 @@ public class XdgIconTheme {
 
             beenHere.put(theme.getName(), theme);
 
-            for(Iterator dirs= theme.directories.iterator(); dirs.hasNext(); ) {
-                Directory directory= (Directory)dirs.next();
-                int err= directory.error(size);
-                if(err==0) {
-                    File f= directory.getDirectoryIcon(iconName);
-                    if(f!=null) {
-                        bestFit= f;
+            List entries= theme.getIndexEntries(iconName);
+            if(entries!=null) {
+                for(Iterator it= entries.iterator(); it.hasNext(); ) {
+                    IndexEntry entry= (IndexEntry)it.next();
+                    int err= entry.directory.error(size);
+                    if(err==0) {
+                        bestFit= entry.file;
                         return true;
                     }
-                }
-                if(err<minError) {
-                    File f= directory.getDirectoryIcon(iconName);
-                    if(f!=null) {
+                    if(err<minError) {
                         minError= err;
-                        bestFit= f;
+                        bestFit= entry.file;
                     }
                 }
             }
 
-            for(Iterator inh= theme.inherits.iterator(); inh.hasNext(); ) {
+            for(Iterator inh= theme.getInherits().iterator(); inh.hasNext(); ) {
                 XdgIconTheme parent= (XdgIconTheme)inh.next();
                 if(beenHere.get(parent.getName())!=null)
                     continue;
@@ -264,10 +435,6 @@ public class XdgIconTheme {
 
             return 0;
         }
-
-        File getDirectoryIcon(String iconName) {
-            return getThemeFile(dirName+"/"+iconName);
-        }
     }
 
 }                                                          
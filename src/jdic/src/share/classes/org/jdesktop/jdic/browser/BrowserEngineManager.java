@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.jdesktop.jdic.browser.internal.NativeBrowserPool;
+import org.jdesktop.jdic.browser.internal.NativeEventThread;
 import org.jdesktop.jdic.browser.internal.WebBrowserUtil;
 import org.jdesktop.jdic.init.JdicInitException;
 
@@ -284,4 +286,81 @@ public class BrowserEngineManager {
 		}
 		return activeEngine;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Sets the maximum number of native browser processes hosting the
+	 * <code>WebBrowser</code> instances. A new <code>WebBrowser</code> is
+	 * hosted by the process with the fewest browsers, and a new process is
+	 * started while every running one already hosts a browser, so a heavy
+	 * page only stalls the browsers sharing its process. Defaults to 1, or
+	 * the value of the <code>org.jdesktop.jdic.browser.processes</code>
+	 * system property.
+	 * 
+	 * @param count the maximum number of native browser processes.
+	 * @throws IllegalArgumentException if <code>count</code> is less than 1.
+	 */
+	public void setNativeProcessCount(int count) {
+		NativeBrowserPool.setMaxProcesses(count);
+	}
+
+	/**
+	 * Returns the maximum number of native browser processes.
+	 * 
+	 * @see #setNativeProcessCount
+	 */
+	public int getNativeProcessCount() {
+		return NativeBrowserPool.getMaxProcesses();
+	}
+
+	/**
+	 * Starts a native browser process in the background, so that the next
+	 * <code>WebBrowser</code> created doesn't wait for loading the native
+	 * libraries, spawning the process and connecting to it. Typically
+	 * called once at application start, after choosing the active engine.
+	 * <p>
+	 * Nothing is started if a running process hosts no browser yet, or if
+	 * the maximum number of processes is reached.
+	 * 
+	 * @see #setNativeProcessCount
+	 * @see NativeProcessStats#getStartupTimings
+	 */
+	public void prestartNativeBrowser() {
+		Thread starter = new Thread("NativeBrowserStarter") {
+			public void run() {
+				try {
+					NativeBrowserPool.getProcess();
+				} catch (Exception e) {
+					WebBrowserUtil.error("Can't start the native browser: "
+							+ e.getMessage());
+				}
+			}
+		};
+		starter.setDaemon(true);
+		starter.start();
+	}
+
+	/**
+	 * Returns the state of each running native browser process.
+	 * 
+	 * @return an array of <code>NativeProcessStats</code>, empty if no
+	 *         process is running.
+	 */
+	public NativeProcessStats[] getNativeProcessStats() {
+		NativeEventThread[] processes = NativeBrowserPool.getProcesses();
+		NativeProcessStats[] stats = new NativeProcessStats[processes.length];
+		for (int i = 0; i < processes.length; i++) {
+			stats[i] = new NativeProcessStats(processes[i]);
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns how many native browser processes were started again after a
+	 * previous one exited, such as after a crash of the native browser.
+	 * 
+	 * @return the number of restarted processes.
+	 */
+	public int getNativeProcessRestartCount() {
+		return NativeBrowserPool.getRestartCount();
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser;
+
+/**
+ * The pending result of a request sent to the native browser, such as
+ * {@link WebBrowser#executeScriptAsync(String)} or
+ * {@link WebBrowser#getContentAsync()}.
+ * <p>
+ * The result is <code>null</code> if the native browser returned no result,
+ * or if it exited before answering the request.
+ *
+ * @see WebBrowser
+ */
+public interface IBrowserFuture {
+
+	/**
+	 * Returns whether the result of the request has arrived.
+	 *
+	 * @return <code>true</code> if the request is completed.
+	 */
+	boolean isDone();
+
+	/**
+	 * Waits until the request is completed and returns its result.
+	 *
+	 * @return the result of the request.
+	 * @throws InterruptedException if the current thread is interrupted
+	 *         while waiting.
+	 */
+	String get() throws InterruptedException;
+
+	/**
+	 * Waits at most <code>timeout</code> milliseconds for the request to
+	 * complete and returns its result.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds.
+	 * @return the result of the request, or <code>null</code> if it is not
+	 *         completed within the timeout.
+	 * @throws InterruptedException if the current thread is interrupted
+	 *         while waiting.
+	 */
+	String get(long timeout) throws InterruptedException;
+
+	/**
+	 * Adds a listener which is run on the event dispatching thread once the
+	 * request is completed. If the request is already completed, the
+	 * listener is scheduled right away.
+	 *
+	 * @param listener the listener to run.
+	 */
+	void addCompletionListener(Runnable listener);
+}
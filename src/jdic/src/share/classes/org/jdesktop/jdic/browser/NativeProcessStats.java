@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser;
+
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.jdesktop.jdic.browser.internal.LatencyHistogram;
+import org.jdesktop.jdic.browser.internal.MsgClient;
+import org.jdesktop.jdic.browser.internal.NativeEventData;
+import org.jdesktop.jdic.browser.internal.NativeEventThread;
+
+/**
+ * A snapshot of the state of one native browser process, as returned by
+ * {@link BrowserEngineManager#getNativeProcessStats()}.
+ */
+public class NativeProcessStats {
+	private int browserCount;
+
+	private int pendingEventCount;
+
+	private long completedRequestCount;
+
+	private long averageRequestLatency;
+
+	private long maxRequestLatency;
+
+	private int maxPendingEventCount;
+
+	private long coalescedEventCount;
+
+	private Map startupTimings;
+
+	private long messagesSent;
+
+	private long bytesSent;
+
+	private long flushCount;
+
+	private long messagesReceived;
+
+	private long bytesReceived;
+
+	private long messagePieces;
+
+	private long reassembledMessages;
+
+	// bucket counts per Java event type, as long[] keyed by the Integer type.
+	private Hashtable latencyHistograms = new Hashtable();
+
+	// the event types with a latency histogram.
+	private static final int[] MEASURED_EVENTS = {
+			NativeEventData.EVENT_CREATEWINDOW,
+			NativeEventData.EVENT_DESTROYWINDOW, NativeEventData.EVENT_GETURL,
+			NativeEventData.EVENT_GETCONTENT,
+			NativeEventData.EVENT_EXECUTESCRIPT };
+
+	private static final String[] MEASURED_EVENT_NAMES = { "createwindow",
+			"destroywindow", "geturl", "getcontent", "executescript" };
+
+	NativeProcessStats(NativeEventThread process) {
+		browserCount = process.getLoad();
+		pendingEventCount = process.getPendingEventCount();
+		maxPendingEventCount = process.getMaxPendingEventCount();
+		coalescedEventCount = process.getCoalescedEventCount();
+		completedRequestCount = process.getCompletedRequestCount();
+		averageRequestLatency = process.getAverageRequestLatency();
+		maxRequestLatency = process.getMaxRequestLatency();
+		startupTimings = process.getStartupTimings();
+
+		MsgClient messenger = process.getMessenger();
+		if (messenger != null) {
+			messagesSent = messenger.getMessagesSent();
+			bytesSent = messenger.getBytesSent();
+			flushCount = messenger.getFlushCount();
+			messagesReceived = messenger.getMessagesReceived();
+			bytesReceived = messenger.getBytesReceived();
+			messagePieces = messenger.getMessagePieces();
+			reassembledMessages = messenger.getReassembledMessages();
+		}
+
+		for (int i = 0; i < MEASURED_EVENTS.length; i++) {
+			LatencyHistogram histogram = process
+					.getLatencyHistogram(MEASURED_EVENTS[i]);
+			if (histogram != null) {
+				latencyHistograms.put(new Integer(MEASURED_EVENTS[i]),
+						histogram.getCounts());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of browsers hosted by the process.
+	 */
+	public int getBrowserCount() {
+		return browserCount;
+	}
+
+	/**
+	 * Returns the number of events waiting to be sent to the process.
+	 */
+	public int getPendingEventCount() {
+		return pendingEventCount;
+	}
+
+	/**
+	 * Returns the number of requests, such as
+	 * <code>WebBrowser.executeScript</code>, answered by the process.
+	 */
+	public long getCompletedRequestCount() {
+		return completedRequestCount;
+	}
+
+	/**
+	 * Returns the average round trip time of the answered requests, in
+	 * milliseconds.
+	 */
+	public long getAverageRequestLatency() {
+		return averageRequestLatency;
+	}
+
+	/**
+	 * Returns the longest round trip time of the answered requests, in
+	 * milliseconds.
+	 */
+	public long getMaxRequestLatency() {
+		return maxRequestLatency;
+	}
+
+	/**
+	 * Returns how long each phase of starting the process took. The keys are
+	 * the phase names in startup order: "library", "engine", "process",
+	 * "connect" and "handshake"; the values are <code>Long</code> durations
+	 * in milliseconds.
+	 */
+	public Map getStartupTimings() {
+		return startupTimings;
+	}
+
+	/**
+	 * Returns the largest number of events which waited to be sent to the
+	 * process at once.
+	 */
+	public int getMaxPendingEventCount() {
+		return maxPendingEventCount;
+	}
+
+	/**
+	 * Returns the number of events dropped before being sent to the process
+	 * because a later event superseded them, such as repeated bounds
+	 * changes.
+	 */
+	public long getCoalescedEventCount() {
+		return coalescedEventCount;
+	}
+
+	/**
+	 * Returns the number of messages sent to the process.
+	 */
+	public long getMessagesSent() {
+		return messagesSent;
+	}
+
+	/**
+	 * Returns the number of bytes sent to the process.
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Returns how many writes sent the messages to the process. Messages
+	 * queued together are sent in one write.
+	 */
+	public long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * Returns the number of messages received from the process, counting a
+	 * message split into pieces once.
+	 */
+	public long getMessagesReceived() {
+		return messagesReceived;
+	}
+
+	/**
+	 * Returns the number of bytes received from the process.
+	 */
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Returns the number of pieces received for the messages too long to be
+	 * sent at once.
+	 */
+	public long getMessagePieces() {
+		return messagePieces;
+	}
+
+	/**
+	 * Returns the number of messages reassembled from pieces.
+	 */
+	public long getReassembledMessages() {
+		return reassembledMessages;
+	}
+
+	/**
+	 * Returns the round trip times of one kind of exchange with the process,
+	 * as counts per bucket: the count at index <code>i</code> is the number
+	 * of round trips shorter than {@link #getLatencyBucketLimit(int)
+	 * getLatencyBucketLimit(i)} milliseconds and not shorter than the limit
+	 * of the previous bucket.
+	 * 
+	 * @param eventType one of "createwindow", "destroywindow", "geturl",
+	 *        "getcontent" and "executescript".
+	 * @return the bucket counts, or <code>null</code> if no such exchange
+	 *         completed yet.
+	 */
+	public long[] getLatencyHistogram(String eventType) {
+		int type = getEventType(eventType);
+		return (type < 0) ? null : (long[]) latencyHistograms
+				.get(new Integer(type));
+	}
+
+	/**
+	 * Returns the exclusive upper bound of a latency histogram bucket, in
+	 * milliseconds. The last bucket has no bound and returns
+	 * <code>Long.MAX_VALUE</code>.
+	 */
+	public static long getLatencyBucketLimit(int bucket) {
+		return LatencyHistogram.getBucketLimit(bucket);
+	}
+
+	private static int getEventType(String name) {
+		for (int i = 0; i < MEASURED_EVENT_NAMES.length; i++) {
+			if (MEASURED_EVENT_NAMES[i].equalsIgnoreCase(name)) {
+				return MEASURED_EVENTS[i];
+			}
+		}
+		return -1;
+	}
+
+	public String toString() {
+		return "browsers=" + browserCount + ", pendingEvents="
+				+ pendingEventCount + ", requests=" + completedRequestCount
+				+ ", avgLatency=" + averageRequestLatency + "ms, maxLatency="
+				+ maxRequestLatency + "ms, maxPendingEvents="
+				+ maxPendingEventCount + ", coalescedEvents="
+				+ coalescedEventCount + ", sent=" + messagesSent + "/"
+				+ bytesSent + "B/" + flushCount + " writes, received=" + messagesReceived + "/"
+				+ bytesReceived + "B, pieces=" + messagePieces
+				+ ", startup=" + startupTimings;
+	}
+}
@@ -32,7 +32,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.util.Enumeration;
@@ -41,6 +44,8 @@ import java.util.Vector;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
+import org.jdesktop.jdic.browser.internal.BrowserFuture;
+import org.jdesktop.jdic.browser.internal.NativeBrowserPool;
 import org.jdesktop.jdic.browser.internal.NativeEventData;
 import org.jdesktop.jdic.browser.internal.NativeEventThread;
 import org.jdesktop.jdic.browser.internal.WebBrowserUtil;
@@ -218,20 +223,19 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 	 * @see #isAutoDispose()
 	 */
 	public WebBrowser(URL url, boolean autoDispose) {
+		synchronized (WebBrowser.class) {
+			instanceNum = lastInstanceNum;
+			lastInstanceNum++;
+		}
+
 		try {
-			eventThread = NativeEventThread.getInstance();
+			// hosted by the least loaded native browser process.
+			eventThread = NativeBrowserPool.attach(this);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return;
 		}		
 		this.autoDispose = autoDispose;
-		
-		synchronized (WebBrowser.class) {
-			instanceNum = lastInstanceNum;
-			lastInstanceNum++;
-		}
-		
-		eventThread.attachWebBrowser(this);	
 
 		if (null != url) {
 			setURL(url);
@@ -392,7 +396,10 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 	public void dispatchWebBrowserEvent(WebBrowserEvent e) {
 		int eid = e.getID();
 
-		WebBrowserUtil.trace("Dispatch event from NativeEventThread: " + eid);
+		if (WebBrowserUtil.getDebug()) {
+			WebBrowserUtil.trace("Dispatch event from NativeEventThread: "
+					+ eid);
+		}
 
 		// native browser needs immediate return value for these two events.
 		// Special trigger messages beginning with a '@' character, to give
@@ -579,11 +586,10 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 	 *         currentlloadayed or the WebBrowser is not yet initialized.
 	 */
 	public URL getURL() {
-		eventThread.fireNativeEvent(instanceNum, NativeEventData.EVENT_GETURL);
-
-		if (waitForResult() == true) {
+		String url = waitForResult(NativeEventData.EVENT_GETURL, null);
+		if (url != null) {
 			try {
-				return new URL(eventThread.getEventRetString());
+				return new URL(url);
 			} catch (Exception e) {
 			}
 		}
@@ -893,6 +899,22 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 				NativeEventData.EVENT_SETCONTENT, htmlContent);
 	}
 
+	/**
+	 * Sets new HTML content, read from the given reader. The content is
+	 * sent to the native browser in bounded chunks as it is read, so a large
+	 * document is never held in memory as a whole on the Java side. The
+	 * reader is read and closed asynchronously, after this method returns.
+	 * If reading fails, the content read so far is set.
+	 * 
+	 * @param htmlContent
+	 *            the reader of the HTML content to set.
+	 * @since 0.9.3
+	 */
+	public void setContent(Reader htmlContent) {
+		eventThread.fireNativeEvent(instanceNum,
+				NativeEventData.EVENT_SETCONTENT, htmlContent);
+	}
+
 	/**
 	 * Returns the HTML content of a document, loaded in a browser.
 	 * 
@@ -900,16 +922,59 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 	 * @since 0.9
 	 */
 	public String getContent() {
-		eventThread.fireNativeEvent(instanceNum,
-				NativeEventData.EVENT_GETCONTENT);
+		return waitForResult(NativeEventData.EVENT_GETCONTENT, null);
+	}
 
-		if (waitForResult() == true) {
-			try {
-				return eventThread.getEventRetString();
-			} catch (Exception e) {
-			}
+	/**
+	 * Writes the HTML content of a document, loaded in a browser, to the
+	 * given writer. The content is written in chunks as it is received from
+	 * the native browser, instead of being returned as one string. The
+	 * writer is flushed but not closed; nothing is written if the browser is
+	 * not yet initialized.
+	 * 
+	 * @param out
+	 *            the writer of the HTML content.
+	 * @throws IOException
+	 *             if writing to <code>out</code> fails.
+	 * @throws InterruptedIOException
+	 *             if the calling thread is interrupted while waiting for the
+	 *             content; its interrupt status is set again.
+	 * @since 0.9.3
+	 */
+	public void getContent(Writer out) throws IOException {
+		if (!isInitialized) {
+			WebBrowserUtil.trace("You can't call this method before "
+					+ "WebBrowser is initialized!");
+			return;
 		}
-		return null;
+
+		BrowserFuture future = (BrowserFuture) eventThread.fireRequest(
+				instanceNum, NativeEventData.EVENT_GETCONTENT, null, out);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for the content");
+		}
+		if (future.getException() != null) {
+			throw future.getException();
+		}
+	}
+
+	/**
+	 * Requests the HTML content of a document, loaded in a browser, without
+	 * waiting for it.
+	 * <p>
+	 * If the browser is not yet initialized, the request is sent once it is.
+	 * 
+	 * @return the pending HTML content.
+	 * @see #getContent
+	 * @since 0.9.3
+	 */
+	public IBrowserFuture getContentAsync() {
+		return eventThread.fireRequest(instanceNum,
+				NativeEventData.EVENT_GETCONTENT, null);
 	}
 
 	/**
@@ -932,16 +997,25 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 	 * @since 0.9
 	 */
 	public String executeScript(java.lang.String javaScript) {
-		eventThread.fireNativeEvent(instanceNum,
-				NativeEventData.EVENT_EXECUTESCRIPT, javaScript);
+		return waitForResult(NativeEventData.EVENT_EXECUTESCRIPT, javaScript);
+	}
 
-		if (waitForResult() == true) {
-			try {
-				return eventThread.getEventRetString();
-			} catch (Exception e) {
-			}
-		}
-		return null;
+	/**
+	 * Executes the specified JavaScript code on the currently loaded document
+	 * without waiting for the result. Any number of scripts may be pending at
+	 * the same time, each result is delivered to its own
+	 * <code>IBrowserFuture</code>.
+	 * <p>
+	 * If the browser is not yet initialized, the script is sent once it is.
+	 * 
+	 * @param javaScript the JavaScript code to execute.
+	 * @return the pending result of the JavaScript execution.
+	 * @see #executeScript
+	 * @since 0.9.3
+	 */
+	public IBrowserFuture executeScriptAsync(String javaScript) {
+		return eventThread.fireRequest(instanceNum,
+				NativeEventData.EVENT_EXECUTESCRIPT, javaScript);
 	}
 
 	/**
@@ -1009,28 +1083,27 @@ public class WebBrowser extends Canvas implements IWebBrowser {
 	}
 
 	/**
-	 * Waits for a result returned from the native embedded browser.
+	 * Sends a request to the native embedded browser and waits for its
+	 * result.
 	 * <p>
 	 * This method is called by methods requiring a return value, such as
 	 * getURL, getContent, executeScript.
 	 */
-	private boolean waitForResult() {
+	private String waitForResult(int type, String stringValue) {
 		if (!isInitialized) {
 			WebBrowserUtil.trace("You can't call this method before "
 					+ "WebBrowser is initialized!");
-			return false;
+			return null;
 		}
 
-		boolean ret = false;
-		synchronized (this) {
-			try {
-				wait();
-				ret = true;
-			} catch (Exception e) {
-				System.out.println(e.getMessage());
-			}
+		try {
+			return eventThread.fireRequest(instanceNum, type, stringValue)
+					.get();
+		} catch (InterruptedException e) {
+			// leave the interrupt to the caller.
+			Thread.currentThread().interrupt();
+			return null;
 		}
-		return ret;
 	}
 
 	public int getNativeWindow() {
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser.internal;
+
+import java.io.IOException;
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+
+import org.jdesktop.jdic.browser.IBrowserFuture;
+
+/**
+ * The <code>IBrowserFuture</code> returned for the requests sent by
+ * <code>NativeEventThread</code>. It is completed by the event thread when
+ * the native browser answers the request.
+ */
+public class BrowserFuture implements IBrowserFuture {
+	private boolean done = false;
+
+	private String result = null;
+
+	private IOException exception = null;
+
+	private Vector listeners = new Vector();
+
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	public synchronized String get() throws InterruptedException {
+		while (!done) {
+			wait();
+		}
+		return result;
+	}
+
+	public synchronized String get(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (!done && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return result;
+	}
+
+	public void addCompletionListener(Runnable listener) {
+		synchronized (this) {
+			if (!done) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		SwingUtilities.invokeLater(listener);
+	}
+
+	/**
+	 * Returns the exception which prevented handing on the result, such as
+	 * a failure writing it to the <code>Writer</code> given to
+	 * <code>WebBrowser.getContent</code>, or <code>null</code>.
+	 */
+	public synchronized IOException getException() {
+		return exception;
+	}
+
+	/**
+	 * Completes the request with a <code>null</code> result because of the
+	 * given exception.
+	 */
+	void fail(IOException e) {
+		synchronized (this) {
+			if (!done) {
+				exception = e;
+			}
+		}
+		complete(null);
+	}
+
+	/**
+	 * Sets the result and wakes up the waiting threads. Only the first call
+	 * takes effect.
+	 */
+	void complete(String result) {
+		Vector toRun;
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			this.result = result;
+			done = true;
+			notifyAll();
+
+			toRun = listeners;
+			listeners = null;
+		}
+		for (int i = 0; i < toRun.size(); i++) {
+			SwingUtilities.invokeLater((Runnable) toRun.get(i));
+		}
+	}
+}
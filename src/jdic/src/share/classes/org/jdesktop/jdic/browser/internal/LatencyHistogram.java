@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser.internal;
+
+/**
+ * An internal class counting round trip times in exponential buckets: the
+ * bucket <code>i</code> counts the times below <code>2^i</code>
+ * milliseconds, and the last bucket the longer ones.
+ */
+public class LatencyHistogram {
+	/** The number of buckets. */
+	public static final int BUCKETS = 16;
+
+	private long[] counts = new long[BUCKETS];
+
+	private long count = 0;
+
+	private long total = 0;
+
+	private long max = 0;
+
+	/**
+	 * Returns the exclusive upper bound of the given bucket in milliseconds,
+	 * or <code>Long.MAX_VALUE</code> for the last one.
+	 */
+	public static long getBucketLimit(int bucket) {
+		return (bucket >= BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	/**
+	 * Counts a round trip time, in milliseconds.
+	 */
+	public synchronized void record(long latency) {
+		int bucket = 0;
+		while (bucket < BUCKETS - 1 && latency >= (1L << bucket)) {
+			bucket++;
+		}
+		counts[bucket]++;
+		count++;
+		total += latency;
+		if (latency > max) {
+			max = latency;
+		}
+	}
+
+	/**
+	 * Returns a copy of the bucket counts.
+	 */
+	public synchronized long[] getCounts() {
+		long[] copy = new long[BUCKETS];
+		System.arraycopy(counts, 0, copy, 0, BUCKETS);
+		return copy;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getAverage() {
+		return (count == 0) ? 0 : total / count;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+}
@@ -21,7 +21,7 @@
 package org.jdesktop.jdic.browser.internal;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -30,17 +30,35 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
-import java.util.HashSet;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Set;
 
 import org.jdesktop.jdic.browser.BrowserEngineManager;
 
 /**
  * An internal class that implements a socket client.
- * 
+ * <p>
+ * Two wire formats are supported. The original delimiter mode terminates
+ * every message string with <code>MSG_DELIMITER</code>. The binary mode
+ * sends length-prefixed frames: a 12-byte header of three big-endian ints
+ * (instance, type, payload length) followed by the payload encoded with the
+ * engine charset. Binary mode is requested with the
+ * <code>PROTOCOL_FLAG</code> command line flag of the native browser, and is
+ * only used once the native browser acknowledges it right after the
+ * connection is accepted. Otherwise the delimiter mode is kept.
+ * <p>
+ * By default the client listens on an ephemeral loopback port, passed to
+ * the native browser with the <code>CONNECT_FLAG</code> command line flag,
+ * and the native browser connects back to it. Setting the
+ * <code>org.jdesktop.jdic.browser.connect</code> system property to
+ * "retry" restores the former scheme, where the native browser listens and
+ * the client retries connecting to it.
+ *
  * @author Kyle Yuan
  * @version 0.1, 03/07/30
  */
@@ -49,6 +67,12 @@ public class MsgClient {
 
 	private static final int BUFFERSIZE = 2048;
 
+	// size of the pooled direct buffers holding the outgoing messages.
+	private static final int SEND_CHUNK_SIZE = 8192;
+
+	// the maximum number of free send buffers kept for reuse.
+	private static final int MAX_POOLED_CHUNKS = 16;
+
 	// socket message delimiter.
 	// use these delimiters assuming they won't appear in the message itself.
 	private static final String MSG_DELIMITER = "</html><body></html>";
@@ -64,31 +88,157 @@ public class MsgClient {
 
 	private static final String MSG_DELIMITER_END = MSG_DELIMITER + "_end";
 
+	// the delimiters are plain ASCII, so they could be searched for in the
+	// raw bytes for any charset used by the native browser.
+	private static final byte[] DELIMITER_BYTES = asciiBytes(MSG_DELIMITER);
+
+	private static final byte[] SUFFIX_HEAD_BYTES = asciiBytes(MSG_DELIMITER_HEAD
+			.substring(MSG_DELIMITER.length()));
+
+	private static final byte[] SUFFIX_MIDDLE_BYTES = asciiBytes(MSG_DELIMITER_MIDDLE
+			.substring(MSG_DELIMITER.length()));
+
+	private static final byte[] SUFFIX_END_BYTES = asciiBytes(MSG_DELIMITER_END
+			.substring(MSG_DELIMITER.length()));
+
+	// message piece kinds in the delimiter mode.
+	private static final int PIECE_SHORT = 0;
+
+	private static final int PIECE_HEAD = 1;
+
+	private static final int PIECE_MIDDLE = 2;
+
+	private static final int PIECE_END = 3;
+
+	// the data size of the head and middle pieces, must keep same with
+	// BUFFER_SIZE_HALF in MsgServer.h.
+	private static final int PIECE_DATA_SIZE = 1024;
+
+	// how long a delimiter ending the received data waits for a piece suffix
+	// which may follow it, in millisecond. A short message ends the same way,
+	// so it's taken as one after this time.
+	private static final int SUFFIX_TIMEOUT = 100;
+
+	/**
+	 * Command line flag asking the native browser for binary framing. Must
+	 * keep same with Message.h.
+	 */
+	public static final String PROTOCOL_FLAG = "-protocol=binary";
+
+	// System property to force the delimiter mode, set it to "delimiter".
+	private static final String PROTOCOL_PROPERTY = "org.jdesktop.jdic.browser.protocol";
+
+	private static final String PROTOCOL_DELIMITER = "delimiter";
+
+	// the message acknowledging the binary mode, sent by the native browser
+	// in the delimiter mode right after accepting the connection. Must keep
+	// same with Message.h.
+	private static final int CEVENT_PROTOCOL = 3081;
+
+	private static final String PROTOCOL_BINARY = "binary";
+
+	private static final String PROTOCOL_ACK = "-1," + CEVENT_PROTOCOL + ","
+			+ PROTOCOL_BINARY;
+
+	// how long to wait for the acknowledgement, in millisecond.
+	private static final int HANDSHAKE_TIMEOUT = 1000;
+
+	/**
+	 * Command line flag asking the native browser to connect back to the
+	 * given port instead of listening on it. Must keep same with Message.h.
+	 */
+	public static final String CONNECT_FLAG = "-connect";
+
+	// System property to make the client connect to the native browser, set
+	// it to "retry".
+	private static final String CONNECT_PROPERTY = "org.jdesktop.jdic.browser.connect";
+
+	private static final String CONNECT_RETRY = "retry";
+
+	// how long to wait for the native browser to connect back, in
+	// millisecond, and how often to check that it is still running.
+	private static final int ACCEPT_TIMEOUT = 30000;
+
+	private static final int ACCEPT_CHECK_INTERVAL = 200;
+
+	// frame header: instance, type and payload length.
+	private static final int FRAME_HEADER_SIZE = 12;
+
+	// frame type of a raw message string, such as a trigger reply, which is
+	// handled by the native browser as a delimiter mode message.
+	private static final int FRAME_TYPE_RAW = -1;
+
 	private Selector selector = null;
 
 	private SocketChannel channel = null;
 
+	// the channel the native browser connects back to.
+	private ServerSocketChannel serverChannel = null;
+
 	private int port;
 
 	private InetSocketAddress serverAddr;
 
 	private String charsetName = null;
 
-	private CharsetDecoder decoder;
+	private Charset charset;
+
+	private boolean binaryRequested;
+
+	private boolean binaryMode = false;
+
+	private boolean connectBack;
+
+	// time spent connecting and negotiating the protocol, in millisecond.
+	private long connectTime = 0;
+
+	private long handshakeTime = 0;
+
+	// bytes received but not yet parsed are between recvStart and the
+	// position of recvBuffer.
+	private ByteBuffer recvBuffer;
+
+	private int recvStart = 0;
+
+	// where to resume searching for a message delimiter.
+	private int scanFrom = 0;
+
+	// when the delimiter ending the received data started waiting for its
+	// piece suffix, 0 if none.
+	private long suffixWaitStart = 0;
 
 	private CharsetEncoder encoder;
 
-	private ByteBuffer buffer;
+	// outgoing messages, encoded once into direct buffers which are written
+	// with a single gathering write. The last buffer is being filled.
+	private LinkedList sendChunks = new LinkedList();
+
+	// free send buffers.
+	private LinkedList chunkPool = new LinkedList();
+
+	// messages appended since the send buffer was last drained.
+	private int pendingMessages = 0;
+
+	// outgoing traffic counters.
+	private long flushCount = 0;
+
+	private long bytesSent = 0;
 
-	private CharBuffer charBuffer;
+	private long messagesSent = 0;
 
-	private String sendBuffer = new String();
+	// incoming traffic counters.
+	private long bytesReceived = 0;
 
-	private String recvBuffer = new String();
+	private long messagesReceived = 0;
 
-	// cached long message pieces, once a complete message is received, it will
-	// be handled and removed from the set.
-	private static Set msgPieces = new HashSet();
+	private long messagePieces = 0;
+
+	private long reassembledMessages = 0;
+
+	// the pieces of the long messages being received, keyed by the instance
+	// and type of the message. Once a complete message is received, it will
+	// be handled and removed.
+	private Hashtable msgPieces = new Hashtable();
 
 	public MsgClient() {		
 		WebBrowserUtil.trace("Msg Client started");
@@ -101,19 +251,38 @@ public class MsgClient {
 		charsetName = BrowserEngineManager.instance().getActiveEngine()
 				.getCharsetName();
 
-		Charset charset = Charset.forName(charsetName);
-		decoder = charset.newDecoder();
+		charset = Charset.forName(charsetName);
 		encoder = charset.newEncoder();
+		encoder.onMalformedInput(CodingErrorAction.REPLACE);
+		encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		binaryRequested = !PROTOCOL_DELIMITER.equalsIgnoreCase(System
+				.getProperty(PROTOCOL_PROPERTY));
 
-		buffer = ByteBuffer.allocateDirect(BUFFERSIZE);
-		charBuffer = CharBuffer.allocate(BUFFERSIZE);
+		connectBack = !CONNECT_RETRY.equalsIgnoreCase(System
+				.getProperty(CONNECT_PROPERTY));
+
+		recvBuffer = ByteBuffer.allocateDirect(BUFFERSIZE);
 
 		try {
 			//initialize a Selector
 			selector = Selector.open();			
-			port= findAFreePort();
-			serverAddr = new InetSocketAddress("localhost", port);
-			WebBrowserUtil.trace("Found a free socket port: " + port);
+			if (connectBack) {
+				// the native browser connects to 127.0.0.1, see
+				// MsgServer::CreateServerSocket.
+				serverChannel = ServerSocketChannel.open();
+				serverChannel.socket().bind(
+						new InetSocketAddress(InetAddress
+								.getByName("127.0.0.1"), 0), 1);
+				serverChannel.configureBlocking(false);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+				port = serverChannel.socket().getLocalPort();
+				WebBrowserUtil.trace("Listening on socket port: " + port);
+			} else {
+				port= findAFreePort();
+				serverAddr = new InetSocketAddress("localhost", port);
+				WebBrowserUtil.trace("Found a free socket port: " + port);
+			}
 		} catch (Exception e) {
 			WebBrowserUtil.error(e.getMessage());
 		}		
@@ -123,7 +292,109 @@ public class MsgClient {
 		return port;
 	}
 
-	void connect() throws IOException, InterruptedException {
+	/**
+	 * Whether the native browser should be asked for binary framing, with
+	 * the <code>PROTOCOL_FLAG</code> command line flag.
+	 */
+	public boolean isBinaryRequested() {
+		return binaryRequested;
+	}
+
+	/**
+	 * Whether binary framing was negotiated with the native browser.
+	 */
+	public boolean isBinaryMode() {
+		return binaryMode;
+	}
+
+	/**
+	 * Whether the native browser should connect back to the port, with the
+	 * <code>CONNECT_FLAG</code> command line flag.
+	 */
+	public boolean isConnectBack() {
+		return connectBack;
+	}
+
+	/**
+	 * Returns the time spent establishing the connection, in millisecond.
+	 */
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	/**
+	 * Returns the time spent negotiating the protocol, in millisecond.
+	 */
+	public long getHandshakeTime() {
+		return handshakeTime;
+	}
+
+	/**
+	 * Connects to the native browser started as the given process. The
+	 * connection attempt is given up once the process exits.
+	 */
+	void connect(Process nativeProcess) throws IOException,
+			InterruptedException {
+		long start = System.currentTimeMillis();
+		if (connectBack) {
+			acceptConnection(nativeProcess);
+		} else {
+			connectWithRetry();
+		}
+		long connected = System.currentTimeMillis();
+		connectTime = connected - start;
+
+		WebBrowserUtil.trace("connected");
+		if (binaryRequested) {
+			negotiateProtocol();
+		}
+		handshakeTime = System.currentTimeMillis() - connected;
+		channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+	}
+
+	/*
+	 * Waits for the native browser to connect back to the listening port.
+	 */
+	private void acceptConnection(Process nativeProcess) throws IOException,
+			InterruptedException {
+		WebBrowserUtil.trace("Waiting for the native browser to connect ...");
+		long deadline = System.currentTimeMillis() + ACCEPT_TIMEOUT;
+		try {
+			while (channel == null) {
+				long timeout = Math.min(deadline - System.currentTimeMillis(),
+						ACCEPT_CHECK_INTERVAL);
+				if (timeout <= 0) {
+					throw new InterruptedException(
+							"The native browser didn't connect in time!");
+				}
+				if (nativeProcess != null && hasExited(nativeProcess)) {
+					throw new InterruptedException(
+							"The native browser exited before connecting!");
+				}
+				if (selector.select(timeout) > 0) {
+					selector.selectedKeys().clear();
+					channel = serverChannel.accept();
+				}
+			}
+		} finally {
+			// only one connection is accepted.
+			serverChannel.close();
+			serverChannel = null;
+		}
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ);
+	}
+
+	private static boolean hasExited(Process process) {
+		try {
+			process.exitValue();
+			return true;
+		} catch (IllegalThreadStateException e) {
+			return false;
+		}
+	}
+
+	private void connectWithRetry() throws IOException, InterruptedException {
 		int retry;
 		for (retry = 0; retry < MAX_RETRY; retry++) {
 			WebBrowserUtil.trace("Connecting to native browser ... " + retry);
@@ -170,94 +441,336 @@ public class MsgClient {
 		if (retry == MAX_RETRY) {
 			throw new InterruptedException("Maximum retry number reached!");
 		}
+	}
 
-		WebBrowserUtil.trace("connected");
-		channel.keyFor(selector).interestOps(SelectionKey.OP_READ|SelectionKey.OP_WRITE);		
+	/**
+	 * Waits for the native browser to acknowledge the binary mode. Nothing
+	 * has been sent to the native browser yet, so both sides switch to the
+	 * binary mode right after the acknowledgement. A native browser not
+	 * supporting the binary mode never sends it, and any message received
+	 * meanwhile is kept for <code>getMessage</code>.
+	 */
+	private void negotiateProtocol() throws IOException {
+		SelectionKey key = channel.keyFor(selector);
+		key.interestOps(SelectionKey.OP_READ);
+
+		long deadline = System.currentTimeMillis() + HANDSHAKE_TIMEOUT;
+		while (true) {
+			int pos = indexOfDelimiter(recvStart, recvBuffer.position());
+			if (pos >= 0) {
+				if (PROTOCOL_ACK.equals(decode(recvStart, pos))) {
+					recvStart = pos + DELIMITER_BYTES.length;
+					scanFrom = recvStart;
+					binaryMode = true;
+					WebBrowserUtil.trace("Binary message framing is used.");
+				} else {
+					WebBrowserUtil.trace("Delimiter message framing is used.");
+				}
+				break;
+			}
+
+			long timeout = deadline - System.currentTimeMillis();
+			if (timeout <= 0) {
+				WebBrowserUtil.trace("No protocol acknowledgement, "
+						+ "delimiter message framing is used.");
+				break;
+			}
+			if (selector.select(timeout) > 0) {
+				selector.selectedKeys().clear();
+				readFromChannel(channel);
+			}
+		}
 	}
 
 	// Append a sockate message string to the send buffer.
 	// NOTE: the "," character is used as the message field delimiter to
 	//       compose/decompose socket message strings. Which should be identical
 	//       between the Java side and native side.
-	public void sendMessage(String msg) {
-		sendBuffer += msg + MSG_DELIMITER;		
+	public synchronized void sendMessage(String msg) {
+		if (binaryMode) {
+			writeFrame(-1, FRAME_TYPE_RAW, msg);
+		} else {
+			writeString(msg);
+			writeString(MSG_DELIMITER);
+		}
+		pendingMessages++;
+		wakeup();
+	}
+
+	/**
+	 * Appends a message for the given browser instance and event type to the
+	 * send buffer.
+	 *
+	 * @param instance the browser instance number.
+	 * @param type the event type, one of the <code>NativeEventData</code>
+	 *            constants.
+	 * @param data the message content, may be null.
+	 */
+	public synchronized void sendMessage(int instance, int type, String data) {
+		if (binaryMode) {
+			writeFrame(instance, type, data);
+		} else {
+			writeString(instance + "," + type + ",");
+			if (data != null) {
+				writeString(data);
+			}
+			writeString(MSG_DELIMITER);
+		}
+		pendingMessages++;
+		wakeup();
+	}
+
+	/**
+	 * Wakes up the thread blocked in <code>portListening</code>, so that it
+	 * could send the pending messages or process new events.
+	 */
+	public void wakeup() {
+		if (selector != null) {
+			selector.wakeup();
+		}
 	}
 
+	/**
+	 * Gets the next complete message received from the native browser, in
+	 * the "instance,type,data" form.
+	 *
+	 * @return the message string, or null if no complete message is
+	 *         available.
+	 */
 	public String getMessage() {
-		int pos = recvBuffer.indexOf(MSG_DELIMITER);
-		if (pos < 0)
+		if (!binaryMode) {
+			return nextDelimitedMessage();
+		}
+
+		NativeEventData eventData = nextFrame();
+		if (eventData == null) {
 			return null;
+		}
+		return eventData.instance + "," + eventData.type + ","
+				+ (eventData.stringValue == null ? "" : eventData.stringValue);
+	}
 
-		String msg = recvBuffer.substring(0, pos);
-		if (pos != recvBuffer.indexOf(MSG_DELIMITER_)) {
-			// a short message.
-			recvBuffer = recvBuffer.substring(pos
-					+ (new String(MSG_DELIMITER).length()));
-			WebBrowserUtil.trace("Got a complete short message: " + msg);
-			return msg;
+	/**
+	 * Gets the next complete event received from the native browser.
+	 *
+	 * @return the event, or null if no complete message is available.
+	 */
+	public NativeEventData getEvent() {
+		if (binaryMode) {
+			return nextFrame();
 		}
+		return NativeEventThread.parseMessageString(nextDelimitedMessage());
+	}
 
-		NativeEventData eventData = NativeEventThread.parseMessageString(msg);
+	/*
+	 * Parses the next binary frame right from the receive buffer.
+	 */
+	private NativeEventData nextFrame() {
+		int available = recvBuffer.position() - recvStart;
+		if (available < FRAME_HEADER_SIZE) {
+			return null;
+		}
 
-		// receive a long message, consisting of one head message piece,
-		// multiple middle message pieces and one end message piece.
-		if (pos == recvBuffer.indexOf(MSG_DELIMITER_HEAD)) {
-			// The head piece of a long message.
-			// Each head piece contains the instance and type information
-			// identifying a long message.
-			msgPieces.add(new NativeEventData(eventData.instance,
-					eventData.type, eventData.stringValue));
-			recvBuffer = recvBuffer.substring(pos
-					+ (new String(MSG_DELIMITER_HEAD).length()));
-			WebBrowserUtil.trace("Got a head message piece: "
-					+ eventData.stringValue);
+		int instance = recvBuffer.getInt(recvStart);
+		int type = recvBuffer.getInt(recvStart + 4);
+		int length = recvBuffer.getInt(recvStart + 8);
+		if (length < 0) {
+			WebBrowserUtil.error("Invalid message frame length: " + length);
+			recvStart = recvBuffer.position();
 			return null;
-		} else {
-			Iterator it = msgPieces.iterator();
-			while (it.hasNext()) {
-				NativeEventData element = (NativeEventData) it.next();
-				if ((element.instance == eventData.instance)
-						&& (element.type == eventData.type)) {
-					if (pos == recvBuffer.indexOf(MSG_DELIMITER_MIDDLE)) {
-						NativeEventData newElement = new NativeEventData(
-								eventData.instance, eventData.type,
-								element.stringValue + eventData.stringValue);
-						msgPieces.remove(element);
-						msgPieces.add(newElement);
-						recvBuffer = recvBuffer.substring(pos
-								+ (new String(MSG_DELIMITER_MIDDLE).length()));
-						WebBrowserUtil.trace("Got a middle message piece: "
-								+ eventData.stringValue);
-						return null;
-					} else if (pos == recvBuffer.indexOf(MSG_DELIMITER_END)) {
-						// The end piece of a long message. Concat the complete
-						// message and return it.
-						msg = eventData.instance + "," + eventData.type + ","
-								+ element.stringValue + eventData.stringValue;
-						msgPieces.remove(element);
-						recvBuffer = recvBuffer.substring(pos
-								+ (new String(MSG_DELIMITER_END).length()));
-						WebBrowserUtil.trace("Got an end message piece: "
-								+ eventData.stringValue);
-						WebBrowserUtil.trace("Got a complete long message: "
-								+ element.stringValue + eventData.stringValue);
-						return (msg);
-					}
+		}
+		if (available < FRAME_HEADER_SIZE + length) {
+			return null;
+		}
+
+		int payloadStart = recvStart + FRAME_HEADER_SIZE;
+		String stringValue = (length == 0) ? null : decode(payloadStart,
+				payloadStart + length);
+		recvStart = payloadStart + length;
+		scanFrom = recvStart;
+		messageReceived(0);
+		if (WebBrowserUtil.getDebug()) {
+			WebBrowserUtil.trace("Got a message frame: " + instance + ","
+					+ type + "," + stringValue);
+		}
+		return new NativeEventData(instance, type, stringValue);
+	}
+
+	/*
+	 * Gets the next complete message in the delimiter mode. The pieces of a
+	 * long message are consumed until the end piece is received.
+	 */
+	private String nextDelimitedMessage() {
+		while (true) {
+			int end = recvBuffer.position();
+			int pos = indexOfDelimiter(scanFrom, end);
+			if (pos < 0) {
+				// keep the last bytes which may be the beginning of a
+				// delimiter.
+				scanFrom = Math.max(recvStart, end - DELIMITER_BYTES.length + 1);
+				return null;
+			}
+
+			int suffixStart = pos + DELIMITER_BYTES.length;
+			if (suffixStart == end && mayBePiece(recvStart, pos)
+					&& !suffixTimedOut()) {
+				// the piece suffix may not be received yet.
+				scanFrom = pos;
+				return null;
+			}
+			suffixWaitStart = 0;
+
+			int piece = PIECE_SHORT;
+			int suffixLength = 0;
+			if (suffixStart < end && recvBuffer.get(suffixStart) == '_') {
+				if (matches(SUFFIX_HEAD_BYTES, suffixStart, end)) {
+					piece = PIECE_HEAD;
+					suffixLength = SUFFIX_HEAD_BYTES.length;
+				} else if (matches(SUFFIX_MIDDLE_BYTES, suffixStart, end)) {
+					piece = PIECE_MIDDLE;
+					suffixLength = SUFFIX_MIDDLE_BYTES.length;
+				} else if (matches(SUFFIX_END_BYTES, suffixStart, end)) {
+					piece = PIECE_END;
+					suffixLength = SUFFIX_END_BYTES.length;
+				} else {
+					// the piece suffix is not completely received yet.
+					scanFrom = pos;
+					return null;
 				}
 			}
 
+			String msg = decode(recvStart, pos);
+			recvStart = suffixStart + suffixLength;
+			scanFrom = recvStart;
+
+			if (piece == PIECE_SHORT) {
+				messageReceived(0);
+				if (WebBrowserUtil.getDebug()) {
+					WebBrowserUtil.trace("Got a complete short message: " + msg);
+				}
+				return msg;
+			}
+
+			msg = handleMessagePiece(piece, msg);
+			if (msg != null) {
+				messageReceived(1);
+				return msg;
+			}
+		}
+	}
+
+	/*
+	 * Returns true if the message between the given positions may be a long
+	 * message piece: a head piece carries exactly PIECE_DATA_SIZE bytes of
+	 * data, and the other pieces only come after a head piece.
+	 */
+	private boolean mayBePiece(int start, int end) {
+		if (!msgPieces.isEmpty()) {
+			return true;
+		}
+		// the message is "<instance>,<type>,<data>".
+		int commas = 0;
+		for (int i = start; i < end; i++) {
+			if (recvBuffer.get(i) == ',' && ++commas == 2) {
+				return end - i - 1 == PIECE_DATA_SIZE;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Returns true if the delimiter ending the received data has waited long
+	 * enough for a piece suffix, starting the wait on the first call.
+	 */
+	private boolean suffixTimedOut() {
+		long now = System.currentTimeMillis();
+		if (suffixWaitStart == 0) {
+			suffixWaitStart = now;
+		}
+		return now - suffixWaitStart >= SUFFIX_TIMEOUT;
+	}
+
+	/*
+	 * Caches a long message piece, and returns the complete long message once
+	 * its end piece is received.
+	 */
+	private String handleMessagePiece(int piece, String msg) {
+		synchronized (this) {
+			messagePieces++;
+		}
+
+		// the message is "<instance>,<type>,<piece>", keep the prefix as key.
+		int pos = msg.indexOf(',');
+		pos = (pos < 0) ? -1 : msg.indexOf(',', pos + 1);
+		if (pos < 0) {
+			WebBrowserUtil.trace("Invalid message piece: " + msg);
+			return null;
+		}
+		String key = msg.substring(0, pos + 1);
+
+		// receive a long message, consisting of one head message piece,
+		// multiple middle message pieces and one end message piece.
+		if (piece == PIECE_HEAD) {
+			// The head piece of a long message, which starts with the
+			// instance and type information identifying it.
+			msgPieces.put(key, new StringBuffer(msg));
+			if (WebBrowserUtil.getDebug()) {
+				WebBrowserUtil.trace("Got a head message piece: " + msg);
+			}
+			return null;
+		}
+
+		StringBuffer pieces = (StringBuffer) msgPieces.get(key);
+		if (pieces == null) {
+			WebBrowserUtil.trace("Message piece without head: " + msg);
 			return null;
 		}
+		pieces.append(msg.substring(pos + 1));
+
+		if (piece == PIECE_MIDDLE) {
+			if (WebBrowserUtil.getDebug()) {
+				WebBrowserUtil.trace("Got a middle message piece: " + msg);
+			}
+			return null;
+		}
+
+		// The end piece of a long message, return the complete message.
+		msgPieces.remove(key);
+		if (WebBrowserUtil.getDebug()) {
+			WebBrowserUtil.trace("Got a complete long message of "
+					+ pieces.length() + " chars.");
+		}
+		return pieces.toString();
 	}
 
 	/**
-	 * Port listening to read or send msg
+	 * Port listening to read or send msg. Blocks until there is data to read,
+	 * pending data could be written, <code>wakeup</code> is called, or a
+	 * message delimiter has waited long enough for its piece suffix.
 	 * 
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	public void portListening() throws IOException, InterruptedException {
-		if (selector != null && selector.select(1) > 0) {//can't block here
+		if (selector == null) {
+			return;
+		}
+
+		// only ask for the writable state when there is something to send,
+		// otherwise the select would never block.
+		SelectionKey channelKey = channel.keyFor(selector);
+		if (channelKey != null && channelKey.isValid()) {
+			channelKey.interestOps(hasPendingData() ? SelectionKey.OP_READ
+					| SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+		// don't block past the time a delimiter waits for its piece suffix.
+		long timeout = 0;
+		if (suffixWaitStart != 0) {
+			timeout = Math.max(suffixWaitStart + SUFFIX_TIMEOUT
+					- System.currentTimeMillis(), 1);
+		}
+		if (selector.select(timeout) > 0) {
 			Set readyKeys = selector.selectedKeys();
 			Iterator i = readyKeys.iterator();
 			while (i.hasNext()) {
@@ -266,12 +779,90 @@ public class MsgClient {
 				SocketChannel keyChannel = (SocketChannel) key.channel();
 				if (key.isReadable()) {
 					readFromChannel(keyChannel);
-				} else if (key.isWritable()) {
+				}
+				if (key.isValid() && key.isWritable()) {
 					writeToChannel(keyChannel);
 				}
 			}
 		}
 	}
+
+	private synchronized boolean hasPendingData() {
+		return !sendChunks.isEmpty();
+	}
+
+	/**
+	 * Writes the send buffer until it is drained. The received data is kept
+	 * in the receive buffer meanwhile, for <code>getEvent</code>. Only
+	 * called from the thread calling <code>portListening</code>, so that a
+	 * large transfer doesn't pile up in the send buffer.
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void flush() throws IOException, InterruptedException {
+		while (hasPendingData()) {
+			portListening();
+		}
+	}
+
+	/**
+	 * Returns how many times the send buffer was written to the channel.
+	 */
+	public synchronized long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * Returns the total number of bytes written to the channel.
+	 */
+	public synchronized long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Returns the total number of messages written to the channel. Messages
+	 * are counted once the send buffer holding them is drained.
+	 */
+	public synchronized long getMessagesSent() {
+		return messagesSent;
+	}
+
+	/**
+	 * Returns the total number of bytes read from the channel.
+	 */
+	public synchronized long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Returns the total number of complete messages received, a long
+	 * message received in pieces counting once.
+	 */
+	public synchronized long getMessagesReceived() {
+		return messagesReceived;
+	}
+
+	/**
+	 * Returns the number of long message pieces received in the delimiter
+	 * mode.
+	 */
+	public synchronized long getMessagePieces() {
+		return messagePieces;
+	}
+
+	/**
+	 * Returns the number of long messages reassembled from their pieces in
+	 * the delimiter mode.
+	 */
+	public synchronized long getReassembledMessages() {
+		return reassembledMessages;
+	}
+
+	private synchronized void messageReceived(int reassembled) {
+		messagesReceived++;
+		reassembledMessages += reassembled;
+	}
 	
 	/**
 	 * read channel content to buffer
@@ -280,39 +871,210 @@ public class MsgClient {
 	 * @throws IOException
 	 */
 	private void readFromChannel(SocketChannel channel) throws IOException {
-		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERSIZE);
-		CharBuffer charBuffer = CharBuffer.allocate(BUFFERSIZE);
-		while (channel.read(buffer) > 0) {
-			buffer.flip();
-			decoder.decode(buffer, charBuffer, false);//should can deal all at once
-			charBuffer.flip();
-			recvBuffer += charBuffer;			
-			charBuffer.clear();
-			buffer.clear();
-			WebBrowserUtil.trace("Read data from socket: " + recvBuffer);
+		while (true) {
+			if (!recvBuffer.hasRemaining()) {
+				makeRoom();
+			}
+			int len = channel.read(recvBuffer);
+			if (len < 0) {
+				throw new IOException("The native browser closed the connection.");
+			}
+			if (len == 0) {
+				break;
+			}
+			synchronized (this) {
+				bytesReceived += len;
+			}
+			if (WebBrowserUtil.getDebug()) {
+				WebBrowserUtil.trace("Read " + len + " bytes from socket.");
+			}
 		}
 	}
 	
+	/*
+	 * Makes room in the receive buffer, by discarding the parsed bytes or
+	 * growing the buffer.
+	 */
+	private void makeRoom() {
+		if (recvStart > 0) {
+			recvBuffer.flip();
+			recvBuffer.position(recvStart);
+			recvBuffer.compact();
+			scanFrom -= recvStart;
+			recvStart = 0;
+		}
+		if (!recvBuffer.hasRemaining()) {
+			ByteBuffer newBuffer = ByteBuffer.allocateDirect(recvBuffer
+					.capacity() * 2);
+			recvBuffer.flip();
+			newBuffer.put(recvBuffer);
+			recvBuffer = newBuffer;
+		}
+	}
+
 	/**
-	 * write content of buffer to channel
+	 * write content of buffer to channel, with a single gathering write of
+	 * all the pending send buffers. What the channel can't take now is kept
+	 * for the next time it's writable.
 	 * 
 	 * @param keyChannel
-	 * @throws UnsupportedEncodingException
 	 * @throws IOException
 	 */
-	private void writeToChannel(SocketChannel keyChannel) throws IOException {
-		if (sendBuffer.length() > 0) {
-			WebBrowserUtil.trace("Send data to socket: " + sendBuffer);
-			ByteBuffer buf = ByteBuffer.wrap(sendBuffer.getBytes(charsetName));
-			keyChannel.write(buf);
-			while (buf.hasRemaining()) {
-				WebBrowserUtil
-						.trace("==there're still contens in write buffer==");
-				// write until the buffer is drained
-				keyChannel.write(buf);
+	private synchronized void writeToChannel(SocketChannel keyChannel)
+			throws IOException {
+		if (sendChunks.isEmpty()) {
+			return;
+		}
+
+		ByteBuffer[] chunks = new ByteBuffer[sendChunks.size()];
+		sendChunks.toArray(chunks);
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i].flip();
+		}
+
+		long len = keyChannel.write(chunks);
+
+		// recycle the drained buffers, and keep the rest in the fill state.
+		sendChunks.clear();
+		for (int i = 0; i < chunks.length; i++) {
+			if (chunks[i].hasRemaining()) {
+				chunks[i].compact();
+				sendChunks.add(chunks[i]);
+			} else {
+				releaseChunk(chunks[i]);
+			}
+		}
+
+		int drained = 0;
+		flushCount++;
+		bytesSent += len;
+		if (sendChunks.isEmpty()) {
+			drained = pendingMessages;
+			messagesSent += pendingMessages;
+			pendingMessages = 0;
+		}
+
+		if (WebBrowserUtil.getDebug()) {
+			WebBrowserUtil.trace("Send " + len + " bytes in " + chunks.length
+					+ " buffers to socket, " + drained + " messages.");
+		}
+	}
+
+	/*
+	 * Appends a binary frame to the send buffer. The header is reserved
+	 * first, and its length field is filled once the payload is encoded.
+	 */
+	private void writeFrame(int instance, int type, String data) {
+		ByteBuffer headerChunk = fillChunk(FRAME_HEADER_SIZE);
+		int headerPos = headerChunk.position();
+		headerChunk.putInt(instance);
+		headerChunk.putInt(type);
+		headerChunk.putInt(0);
+
+		int length = (data == null) ? 0 : writeString(data);
+		headerChunk.putInt(headerPos + 8, length);
+	}
+
+	/*
+	 * Encodes a string right into the send buffers, and returns the number
+	 * of bytes it takes.
+	 */
+	private int writeString(String msg) {
+		CharBuffer in = CharBuffer.wrap(msg);
+		ByteBuffer out = fillChunk(1);
+		int length = -out.position();
+
+		encoder.reset();
+		boolean flushing = false;
+		while (true) {
+			CoderResult result = flushing ? encoder.flush(out) : encoder
+					.encode(in, out, true);
+			if (result.isOverflow()) {
+				length += out.position();
+				out = newChunk();
+				length -= out.position();
+			} else if (flushing) {
+				break;
+			} else {
+				flushing = true;
+			}
+		}
+
+		return length + out.position();
+	}
+
+	/*
+	 * Returns the send buffer being filled, or a new one if it hasn't the
+	 * given room left.
+	 */
+	private ByteBuffer fillChunk(int room) {
+		if (!sendChunks.isEmpty()) {
+			ByteBuffer chunk = (ByteBuffer) sendChunks.getLast();
+			if (chunk.remaining() >= room) {
+				return chunk;
 			}
-			sendBuffer = "";
 		}
+		return newChunk();
+	}
+
+	private ByteBuffer newChunk() {
+		ByteBuffer chunk = chunkPool.isEmpty() ? ByteBuffer
+				.allocateDirect(SEND_CHUNK_SIZE) : (ByteBuffer) chunkPool
+				.removeFirst();
+		sendChunks.add(chunk);
+		return chunk;
+	}
+
+	private void releaseChunk(ByteBuffer chunk) {
+		if (chunkPool.size() < MAX_POOLED_CHUNKS) {
+			chunk.clear();
+			chunkPool.add(chunk);
+		}
+	}
+
+	/*
+	 * Decodes the received bytes between the given offsets.
+	 */
+	private String decode(int from, int to) {
+		ByteBuffer bytes = recvBuffer.duplicate();
+		bytes.limit(to);
+		bytes.position(from);
+		return charset.decode(bytes).toString();
+	}
+
+	/*
+	 * Returns the offset of the first message delimiter between the given
+	 * offsets of the receive buffer, or -1 if there is none.
+	 */
+	private int indexOfDelimiter(int from, int to) {
+		int last = to - DELIMITER_BYTES.length;
+		for (int i = from; i <= last; i++) {
+			if (recvBuffer.get(i) == DELIMITER_BYTES[0]
+					&& matches(DELIMITER_BYTES, i, to)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(byte[] pattern, int from, int to) {
+		if (to - from < pattern.length) {
+			return false;
+		}
+		for (int i = 0; i < pattern.length; i++) {
+			if (recvBuffer.get(from + i) != pattern[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] asciiBytes(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) s.charAt(i);
+		}
+		return bytes;
 	}
 
 	
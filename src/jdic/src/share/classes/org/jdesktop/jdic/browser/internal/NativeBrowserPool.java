@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser.internal;
+
+import java.util.Vector;
+
+import org.jdesktop.jdic.browser.IWebBrowser;
+
+/**
+ * An internal class maintaining the native browser processes. Each process
+ * is driven by its own <code>NativeEventThread</code> and message channel.
+ * A new browser is attached to the process hosting the fewest browsers, and
+ * a new process is started when every running process already hosts a
+ * browser and the maximum number of processes isn't reached yet.
+ * <p>
+ * The maximum number of processes defaults to 1, which is configurable
+ * through the <code>org.jdesktop.jdic.browser.processes</code> system
+ * property.
+ *
+ * @see NativeEventThread
+ */
+public class NativeBrowserPool {
+	/** configurable through this */
+	private static final String PROCESSES_PROPERTY = "org.jdesktop.jdic.browser.processes";
+
+	private static int maxProcesses = -1;
+
+	// the running native browser processes, as NativeEventThread objects.
+	private static Vector processes = new Vector();
+
+	// the number of processes which exited, and of those started after one
+	// exited.
+	private static int exitedProcesses = 0;
+
+	private static int restartedProcesses = 0;
+
+	private NativeBrowserPool() {
+	}
+
+	/**
+	 * Returns the maximum number of native browser processes.
+	 */
+	public static synchronized int getMaxProcesses() {
+		if (maxProcesses < 0) {
+			maxProcesses = 1;
+			String value = System.getProperty(PROCESSES_PROPERTY);
+			if (value != null) {
+				try {
+					maxProcesses = Math.max(1, Integer.parseInt(value.trim()));
+				} catch (NumberFormatException e) {
+					WebBrowserUtil.error("Invalid " + PROCESSES_PROPERTY
+							+ " value: " + value);
+				}
+			}
+		}
+		return maxProcesses;
+	}
+
+	/**
+	 * Sets the maximum number of native browser processes. The running
+	 * processes are kept even if there are more of them, they just don't get
+	 * any new browser until their number falls below the maximum.
+	 */
+	public static synchronized void setMaxProcesses(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException(
+					"At least one native browser process is needed.");
+		}
+		maxProcesses = count;
+	}
+
+	/**
+	 * Returns the running native browser processes.
+	 */
+	public static synchronized NativeEventThread[] getProcesses() {
+		return (NativeEventThread[]) processes
+				.toArray(new NativeEventThread[processes.size()]);
+	}
+
+	/**
+	 * Returns the least loaded native browser process, starting one if
+	 * needed.
+	 */
+	public static synchronized NativeEventThread getProcess() throws Exception {
+		NativeEventThread process = null;
+		for (int i = 0; i < processes.size(); i++) {
+			NativeEventThread candidate = (NativeEventThread) processes.get(i);
+			if (process == null || candidate.getLoad() < process.getLoad()
+					|| (candidate.getLoad() == process.getLoad() && candidate
+							.getPendingEventCount() < process
+							.getPendingEventCount())) {
+				process = candidate;
+			}
+		}
+
+		if (process == null
+				|| (process.getLoad() > 0 && processes.size() < getMaxProcesses())) {
+			process = new NativeEventThread();
+			if (restartedProcesses < exitedProcesses) {
+				restartedProcesses++;
+			}
+			processes.addElement(process);
+			process.start();// start dealing msgs
+			WebBrowserUtil.trace("Native browser process " + processes.size()
+					+ " started.");
+		}
+		return process;
+	}
+
+	/**
+	 * Attaches the browser to the least loaded native browser process.
+	 *
+	 * @return the event thread of the process.
+	 */
+	public static synchronized NativeEventThread attach(IWebBrowser webBrowser)
+			throws Exception {
+		NativeEventThread process = getProcess();
+		process.attachWebBrowser(webBrowser);
+		return process;
+	}
+
+	/**
+	 * Returns the number of native browser processes which exited.
+	 */
+	public static synchronized int getExitedProcessCount() {
+		return exitedProcesses;
+	}
+
+	/**
+	 * Returns the number of native browser processes started to replace one
+	 * which exited.
+	 */
+	public static synchronized int getRestartCount() {
+		return restartedProcesses;
+	}
+
+	/**
+	 * Forgets a native browser process which exited.
+	 */
+	static synchronized void remove(NativeEventThread process) {
+		if (processes.removeElement(process)) {
+			exitedProcesses++;
+		}
+	}
+}
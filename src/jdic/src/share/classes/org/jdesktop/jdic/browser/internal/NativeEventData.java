@@ -21,6 +21,8 @@
 package org.jdesktop.jdic.browser.internal;
 
 import java.awt.Rectangle;
+import java.io.Reader;
+import java.io.Writer;
 
 import org.jdesktop.jdic.browser.WebBrowser;
 
@@ -53,11 +55,23 @@ public class NativeEventData
 	public   final static int EVENT_GETCONTENT        = 15;
 	public   final static int EVENT_SETCONTENT        = 16;
 	public   final static int EVENT_EXECUTESCRIPT     = 17;
+	public   final static int EVENT_REQUEST           = 18;
+	public   final static int EVENT_SETCONTENT_CHUNK  = 19;
     
     int instance;
     int type;
     Rectangle rectValue;
     String stringValue;
+    // the pending result, for the events answered by the native browser.
+    BrowserFuture future;
+    // when the request was sent to the native browser.
+    long sentTime;
+    // the content streamed by EVENT_SETCONTENT, instead of stringValue.
+    Reader contentReader;
+    // where the result of a request is streamed to, if any.
+    Writer resultWriter;
+    // the result chunks received so far, when not streamed.
+    StringBuffer partialResult;
 
     NativeEventData (int instance, int type)
     {
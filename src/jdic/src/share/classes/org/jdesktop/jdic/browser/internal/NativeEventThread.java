@@ -27,13 +27,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import javax.swing.SwingUtilities;
 
+import org.jdesktop.jdic.browser.IBrowserFuture;
 import org.jdesktop.jdic.browser.IWebBrowser;
 import org.jdesktop.jdic.browser.IBrowserEngine;
 import org.jdesktop.jdic.browser.WebBrowserEvent;
@@ -53,12 +61,52 @@ import org.jdesktop.jdic.init.JdicManager;
 public class NativeEventThread extends Thread {
 	private Vector webBrowsers = new Vector();
 
+	// instance numbers of the attached browsers which hold a native window
+	// or are about to create one.
+	private HashSet liveBrowsers = new HashSet();
+
 	// Event queue for events sent from Java to the native browser.
 	private Vector nativeEvents = new Vector();
 
+	// number of events dropped from the queue as superseded.
+	private long coalescedEvents = 0;
+
 	private Process nativeBrowserProcess;
 
-	private String eventRetString;
+	// reply to a request tagged with its request id, must keep same with
+	// CEVENT_REQUEST_RESULT in Message.h.
+	private static final int CEVENT_REQUEST_RESULT = 3082;
+
+	// a chunk of a long request result: "<request id>,<chunk>", must keep
+	// same with CEVENT_REQUEST_CHUNK in Message.h.
+	private static final int CEVENT_REQUEST_CHUNK = 3083;
+
+	// the number of chars of a streamed content sent at once.
+	private static final int CONTENT_CHUNK_SIZE = 32768;
+
+	// requests sent to the native browser as NativeEventData objects, keyed
+	// by their request id.
+	private Hashtable pendingRequests = new Hashtable();
+
+	// requests sent without a request id, the native browser answers them
+	// in order.
+	private Vector untaggedRequests = new Vector();
+
+	private int lastRequestId = 0;
+
+	// round trip times of the completed requests, in milliseconds.
+	private LatencyHistogram requestLatency = new LatencyHistogram();
+
+	// round trip times per Java event type, as LatencyHistogram objects
+	// keyed by the type.
+	private Hashtable latencyHistograms = new Hashtable();
+
+	// window creations and destructions waiting for the native browser's
+	// acknowledgement, keyed by the instance.
+	private Hashtable pendingWindowEvents = new Hashtable();
+
+	// the largest number of events queued at once.
+	private int maxPendingEvents = 0;
 
 	private MsgClient messenger = null;
 
@@ -66,20 +114,21 @@ public class NativeEventThread extends Thread {
 
 	private boolean stopThreads = false;
 
-	private static NativeEventThread nativeEventThread = null;
+	// startup phase names mapped to their duration in milliseconds, in
+	// startup order.
+	private Map startupTimings = new LinkedHashMap();
+
+	private long phaseStart;
 
 	/**
-	 * get singlton instance
+	 * Returns the least loaded native browser process, see
+	 * <code>NativeBrowserPool</code>.
 	 * 
 	 * @return
 	 * @throws Exception
 	 */
 	public static NativeEventThread getInstance() throws Exception {
-		if (nativeEventThread == null) {
-			nativeEventThread = new NativeEventThread();
-			nativeEventThread.start();// start dealing msgs
-		}
-		return nativeEventThread;
+		return NativeBrowserPool.getProcess();
 	}
 
 	/**
@@ -89,12 +138,40 @@ public class NativeEventThread extends Thread {
 	 * @throws PrivilegedActionException
 	 * 
 	 */
-	private NativeEventThread() throws Exception {
+	NativeEventThread() throws Exception {
 		super("EventThread");
+		phaseStart = System.currentTimeMillis();
 		WebBrowserUtil.loadLibrary();
+		endPhase("library");
 		init();
 	}
 
+	/*
+	 * Records the duration of a startup phase, which ends now.
+	 */
+	private void endPhase(String phase) {
+		long now = System.currentTimeMillis();
+		synchronized (startupTimings) {
+			startupTimings.put(phase, new Long(now - phaseStart));
+		}
+		WebBrowserUtil.trace("Startup phase " + phase + ": "
+				+ (now - phaseStart) + " ms");
+		phaseStart = now;
+	}
+
+	/**
+	 * Returns how long each phase of starting the native browser took: the
+	 * "library" loading, the "engine" initialization, the "process" spawn,
+	 * the "connect"ion to it and the protocol "handshake". The map keys are
+	 * the phase names in startup order, the values are <code>Long</code>
+	 * durations in milliseconds.
+	 */
+	public Map getStartupTimings() {
+		synchronized (startupTimings) {
+			return new LinkedHashMap(startupTimings);
+		}
+	}
+
 	/**
 	 * send msg to native and get msg from native
 	 */
@@ -102,16 +179,13 @@ public void run() {
 		WebBrowserUtil.trace("Envent thread started");
 
 		while (!stopThreads) {
-			try {
-				Thread.sleep(10);
-			} catch (Exception e) {
-				e.printStackTrace();// seems some error here
-			}
 			try {
 				processEventsFromJava();// if have msgs to be sent
-				messenger.portListening();// send/get msgs
-				processMessageFromNative(messenger.getMessage());// deal got
-				// msgs
+				messenger.portListening();// wait to send/get msgs
+				NativeEventData eventData;
+				while ((eventData = messenger.getEvent()) != null) {
+					processMessageFromNative(eventData);// deal got msgs
+				}
 			} catch (Exception e) {
 				WebBrowserUtil.trace("Exception occured when portListening: "
 						+ e.getMessage());
@@ -126,6 +200,87 @@ public void run() {
 			webBrowsers.setSize(instanceNum + 1);
 		}
 		webBrowsers.set(instanceNum, webBrowser);
+		synchronized (liveBrowsers) {
+			liveBrowsers.add(new Integer(instanceNum));
+		}
+	}
+
+	/**
+	 * Returns the number of browsers hosted by this native browser process,
+	 * not counting the disposed ones.
+	 */
+	public int getLoad() {
+		synchronized (liveBrowsers) {
+			return liveBrowsers.size();
+		}
+	}
+
+	/**
+	 * Returns whether the native browser process is still running.
+	 */
+	public boolean isProcessRunning() {
+		return !stopThreads;
+	}
+
+	/**
+	 * Returns the number of requests answered by the native browser, such as
+	 * getContent or executeScript.
+	 */
+	public long getCompletedRequestCount() {
+		return requestLatency.getCount();
+	}
+
+	/**
+	 * Returns the average time between sending a request to the native
+	 * browser and receiving its result, in milliseconds.
+	 */
+	public long getAverageRequestLatency() {
+		return requestLatency.getAverage();
+	}
+
+	/**
+	 * Returns the longest time between sending a request to the native
+	 * browser and receiving its result, in milliseconds.
+	 */
+	public long getMaxRequestLatency() {
+		return requestLatency.getMax();
+	}
+
+	/**
+	 * Returns the round trip times of the given Java event type, from
+	 * sending the event to receiving the native browser's answer. Kept for
+	 * the requests (EVENT_GETURL, EVENT_GETCONTENT, EVENT_EXECUTESCRIPT) and
+	 * for EVENT_CREATEWINDOW and EVENT_DESTROYWINDOW.
+	 * 
+	 * @return the histogram, or <code>null</code> if no such event was
+	 *         answered yet.
+	 */
+	public LatencyHistogram getLatencyHistogram(int eventType) {
+		return (LatencyHistogram) latencyHistograms.get(new Integer(eventType));
+	}
+
+	/**
+	 * Returns the largest number of events waiting to be sent to the native
+	 * browser at once.
+	 */
+	public synchronized int getMaxPendingEventCount() {
+		return maxPendingEvents;
+	}
+
+	/*
+	 * Counts the round trip time of an event sent at the given time.
+	 */
+	private void recordLatency(int eventType, long sentTime) {
+		Integer key = new Integer(eventType);
+		LatencyHistogram histogram;
+		synchronized (latencyHistograms) {
+			histogram = (LatencyHistogram) latencyHistograms.get(key);
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				latencyHistograms.put(key, histogram);
+			}
+		}
+		histogram.record(System.currentTimeMillis() - sentTime);
 	}
 
 	public static NativeEventData parseMessageString(String msg) {
@@ -150,14 +305,6 @@ public void run() {
 		return new NativeEventData(instance, eventType, stringValue);
 	}
 
-	/*
-	 * Process an event received from the native browser
-	 */
-
-	public String getEventRetString() {
-		return eventRetString;
-	}
-
 	/**
 	 * @return Returns the messenger.
 	 */
@@ -166,22 +313,144 @@ public void run() {
 	}
 
 	public synchronized void fireNativeEvent(int instance, int type) {
-		nativeEvents.addElement(new NativeEventData(instance, type));
+		queueEvent(new NativeEventData(instance, type));
 	}
 
 	public synchronized void fireNativeEvent(int instance, int type,
 			Rectangle rectValue) {
-		nativeEvents.addElement(new NativeEventData(instance, type, rectValue));
+		queueEvent(new NativeEventData(instance, type, rectValue));
 	}
 
 	public synchronized void fireNativeEvent(int instance, int type,
 			String stringValue) {
-		nativeEvents
-				.addElement(new NativeEventData(instance, type, stringValue));
+		queueEvent(new NativeEventData(instance, type, stringValue));
+	}
+
+	/**
+	 * Queues an event whose content is read from the given reader, such as
+	 * EVENT_SETCONTENT. The reader is read and closed by this thread.
+	 */
+	public synchronized void fireNativeEvent(int instance, int type,
+			Reader contentReader) {
+		NativeEventData event = new NativeEventData(instance, type);
+		event.contentReader = contentReader;
+		queueEvent(event);
+	}
+
+	/**
+	 * Queues an event answered by the native browser, such as
+	 * EVENT_GETCONTENT, and returns the pending result.
+	 */
+	public synchronized IBrowserFuture fireRequest(int instance, int type,
+			String stringValue) {
+		return fireRequest(instance, type, stringValue, null);
+	}
+
+	/**
+	 * Queues an event answered by the native browser, whose result is
+	 * written to the given writer as it arrives rather than returned by the
+	 * <code>IBrowserFuture</code>. The writer is only used by this thread.
+	 */
+	public synchronized IBrowserFuture fireRequest(int instance, int type,
+			String stringValue, Writer resultWriter) {
+		NativeEventData event = new NativeEventData(instance, type, stringValue);
+		event.resultWriter = resultWriter;
+		event.future = new BrowserFuture();
+		if (stopThreads) {
+			event.future.complete(null);
+		} else {
+			queueEvent(event);
+		}
+		return event.future;
+	}
+
+	/**
+	 * Returns the number of events dropped from the queue because a later
+	 * event superseded them, such as repeated bounds changes or paired focus
+	 * gain/loss events.
+	 */
+	public synchronized long getCoalescedEventCount() {
+		return coalescedEvents;
+	}
+
+	/**
+	 * Returns the number of events waiting to be sent to the native browser.
+	 */
+	public synchronized int getPendingEventCount() {
+		return nativeEvents.size();
+	}
+
+	/*
+	 * Appends an event to the queue, unless it could be coalesced with a
+	 * pending event of the same browser.
+	 */
+	private void queueEvent(NativeEventData event) {
+		if (!coalesceEvent(event)) {
+			synchronized (this) {
+				nativeEvents.addElement(event);
+				if (nativeEvents.size() > maxPendingEvents) {
+					maxPendingEvents = nativeEvents.size();
+				}
+			}
+		}
+		messenger.wakeup();
+	}
+
+	/*
+	 * Coalesces the event with the latest pending event of the same browser
+	 * and type: the last bounds win, and a focus gain and a focus loss
+	 * cancel out. A pending window creation or destruction is never crossed.
+	 * 
+	 * @return true if the event needn't be queued.
+	 */
+	private boolean coalesceEvent(NativeEventData event) {
+		boolean isFocusEvent = isFocusEvent(event.type);
+		if (NativeEventData.EVENT_SET_BOUNDS != event.type && !isFocusEvent) {
+			return false;
+		}
+
+		for (int i = nativeEvents.size() - 1; i >= 0; i--) {
+			NativeEventData pending = (NativeEventData) nativeEvents.get(i);
+			if (pending.instance != event.instance) {
+				continue;
+			}
+			if (NativeEventData.EVENT_CREATEWINDOW == pending.type
+					|| NativeEventData.EVENT_DESTROYWINDOW == pending.type) {
+				return false;
+			}
+
+			if (isFocusEvent) {
+				if (isFocusEvent(pending.type)) {
+					if (pending.type != event.type) {
+						// a gain and a loss, neither is needed.
+						nativeEvents.removeElementAt(i);
+						coalescedEvents += 2;
+					} else {
+						coalescedEvents++;
+					}
+					return true;
+				}
+			} else if (NativeEventData.EVENT_SET_BOUNDS == pending.type) {
+				pending.rectValue = event.rectValue;
+				coalescedEvents++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isFocusEvent(int type) {
+		return NativeEventData.EVENT_FOCUSGAINED == type
+				|| NativeEventData.EVENT_FOCUSLOST == type;
 	}
 
 	public void setBrowsersInitFailReason(String msg) {
-		((IWebBrowser) webBrowsers.elementAt(0)).setInitFailureMessage(msg);
+		for (int i = 0; i < webBrowsers.size(); i++) {
+			IWebBrowser browser = (IWebBrowser) webBrowsers.get(i);
+			if (browser != null) {
+				browser.setInitFailureMessage(msg);
+			}
+		}
 	}
 
 	/**
@@ -194,20 +463,29 @@ public void run() {
 
 			engine = BrowserEngineManager.instance().getActiveEngine();
 			engine.initialize();
+			endPhase("engine");
 
 			// start native browser
 			String filepath = JdicManager.getManager().getBinaryPath()
 					+ File.separator + engine.getEmbeddedBinaryName();
 			final String cmd = (new File(filepath).exists()) ? filepath
 					: engine.getEmbeddedBinaryName();
-			WebBrowserUtil.trace("Executing " + cmd + " -port="
-					+ messenger.getPort());
+			Vector args = new Vector();
+			args.addElement(cmd);
+			args.addElement("-port=" + messenger.getPort());
+			if (messenger.isBinaryRequested()) {
+				args.addElement(MsgClient.PROTOCOL_FLAG);
+			}
+			if (messenger.isConnectBack()) {
+				args.addElement(MsgClient.CONNECT_FLAG);
+			}
+			final String[] cmdArray = (String[]) args.toArray(new String[args
+					.size()]);
+			WebBrowserUtil.trace("Executing " + args);
 			AccessController.doPrivileged(new PrivilegedExceptionAction() {
 				public Object run() throws IOException {
 					nativeBrowserProcess = Runtime.getRuntime()
-							.exec(
-									new String[] { cmd,
-											"-port=" + messenger.getPort() });
+							.exec(cmdArray);
 					new StreamGobbler(nativeBrowserProcess.getErrorStream()).start();
 					new StreamGobbler(nativeBrowserProcess.getInputStream()).start();
 					return null;
@@ -224,11 +502,13 @@ public void run() {
 			throw inie;
 		}
 
-		// create socket client and connect to socket server
+		endPhase("process");
+
+		// connect the socket client and the native socket server
 		try {
 			AccessController.doPrivileged(new PrivilegedExceptionAction() {
 				public Object run() throws Exception {
-					messenger.connect();
+					messenger.connect(nativeBrowserProcess);
 					return null;
 				}
 			});
@@ -239,6 +519,11 @@ public void run() {
 					+ "browser.");
 			throw e;
 		}
+		synchronized (startupTimings) {
+			startupTimings.put("connect", new Long(messenger.getConnectTime()));
+			startupTimings.put("handshake", new Long(messenger
+					.getHandshakeTime()));
+		}
 
 		// start native process monitor
 		NativeProcessMonitor npm = new NativeProcessMonitor();
@@ -267,20 +552,44 @@ public void run() {
 	}
 
 	/*
-	 * Processes events sent from Java to the native browser.
+	 * Processes all the queued events sent from Java to the native browser.
+	 * Events of a browser not initialized yet are kept in the queue, they are
+	 * retried once the native browser reports the initialization.
+	 * 
+	 * The queue is taken over as a whole, so that the events being sent are
+	 * never coalesced.
 	 */
-	private void processEventsFromJava() {
-		int size = nativeEvents.size();
-		for (int i = 0; i < size; ++i) {
-			NativeEventData nativeEvent = (NativeEventData) nativeEvents.get(i);
-			if (processEventFromJava(nativeEvent)) {
-				nativeEvents.removeElementAt(i);
-				break;
+	private void processEventsFromJava() throws IOException,
+			InterruptedException {
+		Object[] events;
+		synchronized (this) {
+			if (nativeEvents.isEmpty()) {
+				return;
+			}
+			events = nativeEvents.toArray();
+			nativeEvents.clear();
+		}
+
+		Vector deferredEvents = null;
+		for (int i = 0; i < events.length; i++) {
+			NativeEventData nativeEvent = (NativeEventData) events[i];
+			if (!processEventFromJava(nativeEvent)) {
+				if (deferredEvents == null) {
+					deferredEvents = new Vector();
+				}
+				deferredEvents.addElement(nativeEvent);
+			}
+		}
+
+		if (deferredEvents != null) {
+			synchronized (this) {
+				nativeEvents.addAll(0, deferredEvents);
 			}
 		}
 	}
 
-	private boolean processEventFromJava(NativeEventData nativeEvent) {
+	private boolean processEventFromJava(NativeEventData nativeEvent)
+			throws IOException, InterruptedException {
 		IWebBrowser browser =null;
 		// for init action, needn't browser
 		if (NativeEventData.EVENT_INIT != nativeEvent.type) {
@@ -295,13 +604,26 @@ public void run() {
 				return false;
 			}
 		}
-		WebBrowserUtil.trace("Process event to native browser: "
-				+ nativeEvent.instance + ", " + nativeEvent.type + ", ");
+		if (WebBrowserUtil.getDebug()) {
+			WebBrowserUtil.trace("Process event to native browser: "
+					+ nativeEvent.instance + ", " + nativeEvent.type + ", ");
+		}
+
+		if (nativeEvent.future != null) {
+			sendRequest(nativeEvent);
+			return true;
+		}
+		if (nativeEvent.contentReader != null) {
+			sendContent(nativeEvent);
+			return true;
+		}
 
-		String msg = nativeEvent.instance + "," + nativeEvent.type + ",";
 		switch (nativeEvent.type) {
-		case NativeEventData.EVENT_INIT:
 		case NativeEventData.EVENT_DESTROYWINDOW:
+			windowEventSent(nativeEvent);
+			messenger.sendMessage(nativeEvent.instance, nativeEvent.type, null);
+			break;
+		case NativeEventData.EVENT_INIT:
 		case NativeEventData.EVENT_GOBACK:
 		case NativeEventData.EVENT_GOFORWARD:
 		case NativeEventData.EVENT_REFRESH:
@@ -309,11 +631,10 @@ public void run() {
 		case NativeEventData.EVENT_GETURL:
 		case NativeEventData.EVENT_FOCUSGAINED:
 		case NativeEventData.EVENT_FOCUSLOST:
-		case NativeEventData.EVENT_GETCONTENT:
-			messenger.sendMessage(msg);
+			messenger.sendMessage(nativeEvent.instance, nativeEvent.type, null);
 			break;
 		case NativeEventData.EVENT_SHUTDOWN:
-			messenger.sendMessage(msg);
+			messenger.sendMessage(nativeEvent.instance, nativeEvent.type, null);
 			break;
 		case NativeEventData.EVENT_CREATEWINDOW:
 			int nativeWindow = browser.getNativeWindow();
@@ -321,36 +642,292 @@ public void run() {
 				WebBrowserUtil
 						.trace("Can't get the JAWT native window handler.");
 			} else {
-				msg += nativeWindow;
-				messenger.sendMessage(msg);
+				windowEventSent(nativeEvent);
+				messenger.sendMessage(nativeEvent.instance, nativeEvent.type,
+						String.valueOf(nativeWindow));
 			}
 			break;
 		case NativeEventData.EVENT_SET_BOUNDS:
-			msg += nativeEvent.rectValue.x + "," + nativeEvent.rectValue.y
-					+ "," + nativeEvent.rectValue.width + ","
-					+ nativeEvent.rectValue.height;
-			messenger.sendMessage(msg);
+			messenger.sendMessage(nativeEvent.instance, nativeEvent.type,
+					nativeEvent.rectValue.x + "," + nativeEvent.rectValue.y
+							+ "," + nativeEvent.rectValue.width + ","
+							+ nativeEvent.rectValue.height);
 			break;
 		case NativeEventData.EVENT_NAVIGATE:
 		case NativeEventData.EVENT_NAVIGATE_POST:
 		case NativeEventData.EVENT_SETCONTENT:
-		case NativeEventData.EVENT_EXECUTESCRIPT:
-			msg += nativeEvent.stringValue;
-			messenger.sendMessage(msg);
+			messenger.sendMessage(nativeEvent.instance, nativeEvent.type,
+					nativeEvent.stringValue);
 			break;
 		}
 
 		return true;
 	}
 
-	private void processMessageFromNative(String msg) {
-		NativeEventData eventData = parseMessageString(msg);
+	/*
+	 * Sends the content read from the event's reader. With the binary
+	 * protocol, the content is sent in EVENT_SETCONTENT_CHUNK chunks, which
+	 * the native browser collects until the final EVENT_SETCONTENT, and the
+	 * send buffer is drained after each chunk so that only one chunk is held
+	 * in memory. An older native browser gets the whole content at once.
+	 * If reading fails, the content read so far is set.
+	 */
+	private void sendContent(NativeEventData nativeEvent) throws IOException,
+			InterruptedException {
+		Reader reader = nativeEvent.contentReader;
+		boolean chunked = messenger.isBinaryMode();
+		StringBuffer content = new StringBuffer();
+		char[] buf = new char[CONTENT_CHUNK_SIZE];
+		try {
+			int len;
+			while ((len = reader.read(buf)) >= 0) {
+				content.append(buf, 0, len);
+				if (chunked && content.length() >= CONTENT_CHUNK_SIZE) {
+					// Don't split a surrogate pair between two chunks.
+					int end = content.length();
+					char last = content.charAt(end - 1);
+					if (last >= '\uD800' && last <= '\uDBFF') {
+						end--;
+					}
+					messenger.sendMessage(nativeEvent.instance,
+							NativeEventData.EVENT_SETCONTENT_CHUNK, content
+									.substring(0, end));
+					content.delete(0, end);
+					messenger.flush();
+				}
+			}
+		} catch (IOException e) {
+			WebBrowserUtil.error("Can't read the content to set: "
+					+ e.getMessage());
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
+		messenger.sendMessage(nativeEvent.instance, nativeEvent.type, content
+				.toString());
+	}
+
+	/*
+	 * Sends a request answered by the native browser. A native browser
+	 * speaking the binary protocol tags the result with the request id, so
+	 * concurrent requests of a browser can't be mixed up; an older one gets
+	 * the plain event and answers the requests in order.
+	 */
+	private void sendRequest(NativeEventData nativeEvent) {
+		boolean tagged = messenger.isBinaryMode();
+		int requestId = 0;
+		nativeEvent.sentTime = System.currentTimeMillis();
+		synchronized (this) {
+			if (stopThreads) {
+				// too late, the requests have been aborted.
+				nativeEvent.future.complete(null);
+				return;
+			}
+			if (tagged) {
+				requestId = ++lastRequestId;
+				if (requestId <= 0) {
+					requestId = lastRequestId = 1;
+				}
+				pendingRequests.put(new Integer(requestId), nativeEvent);
+			} else {
+				untaggedRequests.addElement(nativeEvent);
+			}
+		}
+
+		if (tagged) {
+			String data = (nativeEvent.stringValue == null) ? ""
+					: nativeEvent.stringValue;
+			messenger.sendMessage(nativeEvent.instance,
+					NativeEventData.EVENT_REQUEST, requestId + ","
+							+ nativeEvent.type + "," + data);
+		} else {
+			messenger.sendMessage(nativeEvent.instance, nativeEvent.type,
+					nativeEvent.stringValue);
+		}
+	}
+
+	/*
+	 * Completes the request answered by the given message.
+	 * 
+	 * @return false if no request is waiting for the message.
+	 */
+	private boolean completeRequest(NativeEventData eventData) {
+		if (CEVENT_REQUEST_CHUNK == eventData.type) {
+			// the message is "<request id>,<chunk>".
+			String value = eventData.stringValue;
+			int pos = (value == null) ? -1 : value.indexOf(',');
+			if (pos < 0) {
+				return false;
+			}
+			NativeEventData request;
+			try {
+				request = (NativeEventData) pendingRequests.get(Integer
+						.valueOf(value.substring(0, pos)));
+			} catch (NumberFormatException e) {
+				WebBrowserUtil.trace("Invalid request result chunk: " + value);
+				return false;
+			}
+			if (request != null) {
+				appendResult(request, value.substring(pos + 1));
+			}
+			return true;
+		}
+
+		if (CEVENT_REQUEST_RESULT == eventData.type) {
+			// the message is "<request id>,<result>".
+			String value = eventData.stringValue;
+			if (value == null) {
+				return false;
+			}
+			int pos = value.indexOf(',');
+			String result = null;
+			if (pos < 0) {
+				pos = value.length();
+			} else if (pos + 1 < value.length()) {
+				result = value.substring(pos + 1);
+			}
+
+			NativeEventData request;
+			try {
+				request = (NativeEventData) pendingRequests.remove(Integer
+						.valueOf(value.substring(0, pos)));
+			} catch (NumberFormatException e) {
+				WebBrowserUtil.trace("Invalid request result: " + value);
+				return false;
+			}
+			if (request != null) {
+				requestCompleted(request, result);
+			}
+			return true;
+		}
+
+		int requestType;
+		if (WebBrowserEvent.WEBBROWSER_RETURN_URL == eventData.type) {
+			requestType = NativeEventData.EVENT_GETURL;
+		} else if (WebBrowserEvent.WEBBROWSER_GETCONTENT == eventData.type) {
+			requestType = NativeEventData.EVENT_GETCONTENT;
+		} else if (WebBrowserEvent.WEBBROWSER_EXECUTESCRIPT == eventData.type) {
+			requestType = NativeEventData.EVENT_EXECUTESCRIPT;
+		} else {
+			return false;
+		}
+
+		for (int i = 0; i < untaggedRequests.size(); i++) {
+			NativeEventData request = (NativeEventData) untaggedRequests.get(i);
+			if (request.instance == eventData.instance
+					&& request.type == requestType) {
+				untaggedRequests.removeElementAt(i);
+				requestCompleted(request, eventData.stringValue);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Hands on a chunk of the result of a request, to its writer if any.
+	 */
+	private void appendResult(NativeEventData request, String chunk) {
+		if (request.resultWriter != null) {
+			try {
+				request.resultWriter.write(chunk);
+			} catch (IOException e) {
+				// the rest of the result is dropped.
+				request.resultWriter = null;
+				request.future.fail(e);
+			}
+		} else if (!request.future.isDone()) {
+			if (request.partialResult == null) {
+				request.partialResult = new StringBuffer(chunk);
+			} else {
+				request.partialResult.append(chunk);
+			}
+		}
+	}
+
+	/*
+	 * Remembers when a window creation or destruction was sent, to measure
+	 * its round trip once the native browser acknowledges it.
+	 */
+	private void windowEventSent(NativeEventData nativeEvent) {
+		nativeEvent.sentTime = System.currentTimeMillis();
+		pendingWindowEvents.put(new Integer(nativeEvent.instance), nativeEvent);
+	}
+
+	private void windowEventAnswered(int instance, int eventType) {
+		NativeEventData sent = (NativeEventData) pendingWindowEvents
+				.get(new Integer(instance));
+		if (sent != null && sent.type == eventType) {
+			pendingWindowEvents.remove(new Integer(instance));
+			recordLatency(eventType, sent.sentTime);
+		}
+	}
+
+	private void requestCompleted(NativeEventData request, String result) {
+		requestLatency.record(System.currentTimeMillis() - request.sentTime);
+		recordLatency(request.type, request.sentTime);
+
+		if (request.resultWriter != null) {
+			if (result != null) {
+				appendResult(request, result);
+			}
+			if (request.resultWriter != null) {
+				try {
+					request.resultWriter.flush();
+				} catch (IOException e) {
+					request.future.fail(e);
+				}
+			}
+			request.future.complete(null);
+		} else if (request.partialResult != null) {
+			if (result != null) {
+				request.partialResult.append(result);
+			}
+			request.future.complete(request.partialResult.toString());
+		} else {
+			request.future.complete(result);
+		}
+	}
+
+	/*
+	 * Completes all the outstanding requests with a null result, once the
+	 * native browser is gone.
+	 */
+	private void abortRequests() {
+		Vector futures;
+		synchronized (this) {
+			futures = new Vector();
+			for (Enumeration e = pendingRequests.elements(); e.hasMoreElements();) {
+				futures.addElement(((NativeEventData) e.nextElement()).future);
+			}
+			pendingRequests.clear();
+			for (int i = 0; i < untaggedRequests.size(); i++) {
+				futures.addElement(((NativeEventData) untaggedRequests.get(i)).future);
+			}
+			untaggedRequests.clear();
+			for (int i = 0; i < nativeEvents.size(); i++) {
+				NativeEventData event = (NativeEventData) nativeEvents.get(i);
+				if (event.future != null) {
+					futures.addElement(event.future);
+				}
+			}
+		}
+		for (Enumeration e = futures.elements(); e.hasMoreElements();) {
+			((BrowserFuture) e.nextElement()).complete(null);
+		}
+	}
+
+	private void processMessageFromNative(NativeEventData eventData) {
 		if (eventData == null)
 			return;
 
-		WebBrowserUtil.trace("Process event from native browser: "
-				+ eventData.instance + ", " + eventData.type + ", "
-				+ eventData.stringValue);
+		if (WebBrowserUtil.getDebug()) {
+			WebBrowserUtil.trace("Process event from native browser: "
+					+ eventData.instance + ", " + eventData.type + ", "
+					+ eventData.stringValue);
+		}
 
 		if (WebBrowserEvent.WEBBROWSER_INIT_FAILED == eventData.type) {
 			setBrowsersInitFailReason(eventData.stringValue);
@@ -358,6 +935,10 @@ public void run() {
 			return;
 		}
 
+		if (completeRequest(eventData)) {
+			return;
+		}
+
 		if (eventData.instance < 0) {
 			return;
 		}
@@ -377,11 +958,18 @@ public void run() {
 			}
 		}
 
+		if (WebBrowserEvent.WEBBROWSER_DESTROYWINDOW_SUCC == eventData.type) {
+			windowEventAnswered(eventData.instance,
+					NativeEventData.EVENT_DESTROYWINDOW);
+			synchronized (liveBrowsers) {
+				liveBrowsers.remove(new Integer(eventData.instance));
+			}
+		}
+
 		if (WebBrowserEvent.WEBBROWSER_RETURN_URL == eventData.type
 				|| WebBrowserEvent.WEBBROWSER_GETCONTENT == eventData.type
 				|| WebBrowserEvent.WEBBROWSER_EXECUTESCRIPT == eventData.type
 				|| WebBrowserEvent.WEBBROWSER_DESTROYWINDOW_SUCC == eventData.type) {
-			eventRetString = eventData.stringValue;
 			notifyWebBrowser(eventData.instance);
 			return;
 		}
@@ -389,6 +977,11 @@ public void run() {
 		if (WebBrowserEvent.WEBBROWSER_INIT_WINDOW_SUCC == eventData.type) {
 			browser.setInitialized(true);
 			browser.setInitFailureMessage("");
+			windowEventAnswered(eventData.instance,
+					NativeEventData.EVENT_CREATEWINDOW);
+			synchronized (liveBrowsers) {
+				liveBrowsers.add(new Integer(eventData.instance));
+			}
 		}
 
 		final WebBrowserEvent event = new WebBrowserEvent(browser,
@@ -427,7 +1020,9 @@ public void run() {
 				BufferedReader br = new BufferedReader(isr);
 				String line = null;
 				while ((line = br.readLine()) != null && !stopThreads) {
-					WebBrowserUtil.trace("+++ Ctrace: " + line);
+					if (WebBrowserUtil.getDebug()) {
+						WebBrowserUtil.trace("+++ Ctrace: " + line);
+					}
 				}
 				if (stopThreads) {
 					WebBrowserUtil.trace("StreamGobbler exited.");
@@ -453,7 +1048,10 @@ public void run() {
 				nativeBrowserProcess.destroy();// kill it anyway
 			} finally {
 				stopThreads = true;
-				nativeEventThread = null;//set current thread to null
+				messenger.wakeup();
+				abortRequests();
+				// no more browsers for this process
+				NativeBrowserPool.remove(NativeEventThread.this);
 				WebBrowserUtil.trace("Native web browser died.");
 			}
 		}
@@ -21,13 +21,19 @@
 package org.jdesktop.jdic.filetypes;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.jdesktop.jdic.filetypes.internal.AppAssociationWriter;
 import org.jdesktop.jdic.filetypes.internal.AppAssociationWriterFactory;
 import org.jdesktop.jdic.filetypes.internal.AppAssociationReader;
 import org.jdesktop.jdic.filetypes.internal.AppAssociationReaderFactory;
 import org.jdesktop.jdic.filetypes.internal.AppUtility;
+import org.jdesktop.jdic.filetypes.internal.AssociationCache;
+import org.jdesktop.jdic.filetypes.internal.BulkLookup;
 import org.jdesktop.jdic.init.JdicInitException;
 import org.jdesktop.jdic.init.JdicManager;
 
@@ -50,6 +56,14 @@ import org.jdesktop.jdic.init.JdicManager;
  *        by providing new MIME files, or being added to existing MIME files.
  * </ul>
  * 
+ * <p>
+ * The associations retrieved are cached, and the caches of all the instances 
+ * are cleared when the associations are changed through any of them or, on 
+ * Gnome/UNIX platforms, when the MIME type database files change. The cache size and the time to 
+ * live of its entries in milliseconds are set with the 
+ * <code>org.jdesktop.jdic.filetypes.cacheSize</code> and 
+ * <code>org.jdesktop.jdic.filetypes.cacheTimeToLive</code> system properties.
+ * 
  * @see Association
  * @see Action
  */
@@ -58,6 +72,8 @@ public class AssociationService {
     private AppAssociationReader appAssocReader;
     // A platform-dependent instance of AppAssociationWriter.
     private AppAssociationWriter appAssocWriter;
+    // The associations looked up by file extension and by mime type.
+    private AssociationCache assocCache;
   
     // Add the initialization code from package org.jdesktop.jdic.init.
     // To set the environment variables or initialize the set up for 
@@ -77,6 +93,7 @@ public class AssociationService {
     public AssociationService() {
         appAssocReader = AppAssociationReaderFactory.newInstance();
         appAssocWriter = AppAssociationWriterFactory.newInstance();
+        assocCache = new AssociationCache(appAssocReader);
     }
   
     /**
@@ -92,6 +109,17 @@ public class AssociationService {
             throw new IllegalArgumentException("The specified mime type is null");
         }
 
+        String key = "mime:" + mimeType;
+        long generation = assocCache.getGeneration();
+        Object cached = assocCache.get(key);
+        if (cached == AssociationCache.NOT_CACHED) {
+            cached = lookupMimeTypeAssociation(mimeType);
+            assocCache.put(key, cached, generation);
+        }
+        return copyOf((Association) cached);
+    }
+
+    private Association lookupMimeTypeAssociation(String mimeType) {
         // Check whether the given mime type exists/is registered in the system.
         if (!appAssocReader.isMimeTypeExist(mimeType)) {
             return null;		
@@ -156,6 +184,17 @@ public class AssociationService {
         // Add the leading '.' character to the given file extension if not exists.    
         fileExt = AppUtility.addDotToFileExtension(fileExt);
 
+        String key = "ext:" + fileExt;
+        long generation = assocCache.getGeneration();
+        Object cached = assocCache.get(key);
+        if (cached == AssociationCache.NOT_CACHED) {
+            cached = lookupFileExtensionAssociation(fileExt);
+            assocCache.put(key, cached, generation);
+        }
+        return copyOf((Association) cached);
+    }
+
+    private Association lookupFileExtensionAssociation(String fileExt) {
         // Check whether the given file extension exists/is registered in the system.
         if (!appAssocReader.isFileExtExist(fileExt)) {
             return null;
@@ -196,6 +235,48 @@ public class AssociationService {
         return assoc;
     }        
   
+    /*
+     * Returns a copy of the given cached association and its actions, so that
+     * the caller can't change it.
+     */
+    private static Association copyOf(Association assoc) {
+        if (assoc == null) {
+            return null;
+        }
+
+        Association copy = new Association();
+        if (assoc.getName() != null) {
+            copy.setName(assoc.getName());
+        }
+        if (assoc.getMimeType() != null) {
+            copy.setMimeType(assoc.getMimeType());
+        }
+        if (assoc.getDescription() != null) {
+            copy.setDescription(assoc.getDescription());
+        }
+        if (assoc.getIconFileName() != null) {
+            copy.setIconFileName(assoc.getIconFileName());
+        }
+        List fileExtList = assoc.getFileExtList();
+        if (fileExtList != null) {
+            Iterator iter = fileExtList.iterator();
+            while (iter.hasNext()) {
+                copy.addFileExtension((String) iter.next());
+            }
+        }
+        List actionList = assoc.getActionList();
+        if (actionList != null) {
+            Iterator iter = actionList.iterator();
+            while (iter.hasNext()) {
+                // Action is mutable too, so it's copied as well.
+                Action action = (Action) iter.next();
+                copy.addAction(new Action(action.getVerb(), action.getCommand(),
+                                          action.getDescription()));
+            }
+        }
+        return copy;
+    }
+
     /**
      * Returns the association representing the file type of the file the given 
      * URL points to.
@@ -230,6 +311,140 @@ public class AssociationService {
         return assoc;
     }        
   
+    /**
+     * Returns the associations representing the file types of the given
+     * MIME types.
+     * <p>
+     * Each distinct MIME type is looked up once, and the lookups run in 
+     * parallel on a bounded number of threads if the system's association
+     * information may be read from several threads at once.
+     *
+     * @param mimeTypes a collection of MIME type names.
+     * @return a map from each given MIME type found in the system to its 
+     *         <code>Association</code> object.
+     * @see #getMimeTypeAssociation(String)
+     */
+    public Map getMimeTypeAssociations(Collection mimeTypes) {
+        checkElements(mimeTypes, "mime type");
+
+        return BulkLookup.run(mimeTypes, new BulkLookup.Lookup() {
+            public Object lookup(Object mimeType) {
+                return getMimeTypeAssociation((String) mimeType);
+            }
+        }, appAssocReader.isThreadSafe());
+    }
+
+    /**
+     * Returns the associations representing the file types of the given 
+     * file extensions.
+     * <p>
+     * Each distinct file extension is looked up once, whether it's given with
+     * a leading '.' character or not, and the lookups run in parallel on a 
+     * bounded number of threads as in {@link #getMimeTypeAssociations}. The 
+     * file extensions naming the same file extension share the same 
+     * <code>Association</code> object.
+     *
+     * @param fileExts a collection of file extension names.
+     * @return a map from each given file extension found in the system to its 
+     *         <code>Association</code> object.
+     * @see #getFileExtensionAssociation(String)
+     */
+    public Map getFileExtensionAssociations(Collection fileExts) {
+        checkElements(fileExts, "file extension");
+
+        List dotFileExts = new ArrayList(fileExts.size());
+        for (Iterator iter = fileExts.iterator(); iter.hasNext();) {
+            dotFileExts.add(AppUtility.addDotToFileExtension((String) iter.next()));
+        }
+        Map assocs = BulkLookup.run(dotFileExts, new BulkLookup.Lookup() {
+            public Object lookup(Object fileExt) {
+                return getFileExtensionAssociation((String) fileExt);
+            }
+        }, appAssocReader.isThreadSafe());
+
+        Map result = new HashMap();
+        Iterator dotIter = dotFileExts.iterator();
+        for (Iterator iter = fileExts.iterator(); iter.hasNext();) {
+            Object fileExt = iter.next();
+            Object assoc = assocs.get(dotIter.next());
+            if (assoc != null) {
+                result.put(fileExt, assoc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the associations representing the file types of the files the
+     * given URLs point to.
+     * <p>
+     * The MIME type of each file is found first. Then the association of each
+     * distinct MIME type, or of each distinct file extension for the files 
+     * whose MIME type is not found, is looked up once. The lookups of each 
+     * step run in parallel as in {@link #getMimeTypeAssociations}. The files
+     * of the same file type share the same <code>Association</code> object.
+     *
+     * @param urls a collection of URLs.
+     * @return a map from each given URL whose file type is found in the system
+     *         to its <code>Association</code> object.
+     * @see #getAssociationByContent(URL)
+     */
+    public Map getAssociationsByContent(Collection urls) {
+        checkElements(urls, "URL");
+
+        // Use the URL strings as keys, as URL.equals may resolve host names.
+        Map urlsByName = new HashMap();
+        for (Iterator iter = urls.iterator(); iter.hasNext();) {
+            URL url = (URL) iter.next();
+            urlsByName.put(url.toExternalForm(), url);
+        }
+        final Map urlMap = urlsByName;
+        Map mimeTypes = BulkLookup.run(urlMap.keySet(), new BulkLookup.Lookup() {
+            public Object lookup(Object name) {
+                return appAssocReader.getMimeTypeByURL((URL) urlMap.get(name));
+            }
+        }, appAssocReader.isThreadSafe());
+        Map mimeTypeAssocs = getMimeTypeAssociations(mimeTypes.values());
+
+        // Look up the file extensions of the files without association.
+        Map fileExts = new HashMap();
+        for (Iterator iter = urlMap.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            if (mimeTypeAssocs.get(mimeTypes.get(entry.getKey())) == null) {
+                String fileExt = AppUtility.getFileExtensionByURL((URL) entry.getValue());
+                if (fileExt != null) {
+                    fileExts.put(entry.getKey(), fileExt);
+                }
+            }
+        }
+        Map fileExtAssocs = getFileExtensionAssociations(fileExts.values());
+
+        Map result = new HashMap();
+        for (Iterator iter = urls.iterator(); iter.hasNext();) {
+            URL url = (URL) iter.next();
+            String name = url.toExternalForm();
+            Object assoc = mimeTypeAssocs.get(mimeTypes.get(name));
+            if (assoc == null) {
+                assoc = fileExtAssocs.get(fileExts.get(name));
+            }
+            if (assoc != null) {
+                result.put(url, assoc);
+            }
+        }
+        return result;
+    }
+
+    private static void checkElements(Collection elements, String name) {
+        if (elements == null) {
+            throw new IllegalArgumentException("The specified " + name 
+                                               + " collection is null");
+        }
+        if (elements.contains(null)) {
+            throw new IllegalArgumentException("The specified " + name 
+                                               + " collection contains null");
+        }
+    }
+
     /**
      * Registers the given association in the user specific level.
      * <p>
@@ -275,9 +490,84 @@ public class AssociationService {
         }            
 
         // Perform registration.                
-        appAssocWriter.registerAssociation(assoc, AppAssociationWriter.USER_LEVEL);
+        try {
+            appAssocWriter.registerAssociation(assoc, AppAssociationWriter.USER_LEVEL);
+        } finally {
+            AssociationCache.clearAll();
+        }
     }                
 
+    /**
+     * Registers the given associations in the user specific level, all of them
+     * or none.
+     * <p>
+     * Each association needs to be valid for <code>registerUserAssociation</code>.
+     * On Gnome/Unix platforms, the MIME files of all the associations are 
+     * written at once, and restored if any of them fails to be written. On 
+     * Microsoft Windows platforms, the associations already registered are 
+     * unregistered if one fails to be registered.
+     * 
+     * @param assocs a given collection of <code>Association</code> objects.
+     * @throws IllegalArgumentException if any of the given associations is not 
+     *         valid for this operation.
+     * @throws AssociationAlreadyRegisteredException if any of the given 
+     *         associations already exists in the system.
+     * @throws RegisterFailedException if the given associations fail to be 
+     *         registered in the system.
+     * @see #registerUserAssociation(Association)
+     */
+    public void registerUserAssociations(Collection assocs) 
+            throws AssociationAlreadyRegisteredException, RegisterFailedException {
+        registerAssociations(assocs, AppAssociationWriter.USER_LEVEL);
+    }
+
+    /**
+     * Registers the given associations in the system level, all of them or 
+     * none.
+     * <p>
+     * Each association needs to be valid for <code>registerSystemAssociation</code>.
+     * On Gnome/Unix platforms, the MIME files of all the associations are 
+     * written at once, and restored if any of them fails to be written. On 
+     * Microsoft Windows platforms, the associations already registered are 
+     * unregistered if one fails to be registered.
+     * 
+     * @param assocs a given collection of <code>Association</code> objects.
+     * @throws IllegalArgumentException if any of the given associations is not 
+     *         valid for this operation.
+     * @throws AssociationAlreadyRegisteredException if any of the given 
+     *         associations already exists in the system.
+     * @throws RegisterFailedException if the given associations fail to be 
+     *         registered in the system.
+     * @see #registerSystemAssociation(Association)
+     */
+    public void registerSystemAssociations(Collection assocs) 
+            throws AssociationAlreadyRegisteredException, RegisterFailedException {
+        registerAssociations(assocs, AppAssociationWriter.SYSTEM_LEVEL);
+    }
+
+    private void registerAssociations(Collection assocs, int level) 
+            throws AssociationAlreadyRegisteredException, RegisterFailedException {
+        checkElements(assocs, "association");
+
+        // Check all the associations before registering any of them.
+        Iterator iter = assocs.iterator();
+        while (iter.hasNext()) {
+            appAssocWriter.checkAssociationValidForRegistration((Association) iter.next());
+        }
+        iter = assocs.iterator();
+        while (iter.hasNext()) {
+            if (appAssocWriter.isAssociationExist((Association) iter.next(), level)) {
+                throw new AssociationAlreadyRegisteredException("Assocation already exists!");  
+            }
+        }
+
+        try {
+            appAssocWriter.registerAssociations(new ArrayList(assocs), level);
+        } finally {
+            AssociationCache.clearAll();
+        }
+    }
+
     /**
      * Unregisters the given association in the user specific level.
      * <p>
@@ -323,7 +613,11 @@ public class AssociationService {
         }            
 
         // Perform unregistration.
-        appAssocWriter.unregisterAssociation(assoc, AppAssociationWriter.USER_LEVEL);
+        try {
+            appAssocWriter.unregisterAssociation(assoc, AppAssociationWriter.USER_LEVEL);
+        } finally {
+            AssociationCache.clearAll();
+        }
     }
 
     /**
@@ -368,7 +662,11 @@ public class AssociationService {
         }            
 
         // Perform registration.
-        appAssocWriter.registerAssociation(assoc, AppAssociationWriter.SYSTEM_LEVEL);
+        try {
+            appAssocWriter.registerAssociation(assoc, AppAssociationWriter.SYSTEM_LEVEL);
+        } finally {
+            AssociationCache.clearAll();
+        }
     }
 
     /**
@@ -412,6 +710,43 @@ public class AssociationService {
             throw new AssociationNotRegisteredException("Assocation not existed!");  
         }            
 
-        appAssocWriter.unregisterAssociation(assoc, AppAssociationWriter.SYSTEM_LEVEL);
+        try {
+            appAssocWriter.unregisterAssociation(assoc, AppAssociationWriter.SYSTEM_LEVEL);
+        } finally {
+            AssociationCache.clearAll();
+        }
+    }
+
+    /**
+     * Discards the file type association information cached from the system.
+     * <p>
+     * The associations retrieved are cached, and so are the file extensions of
+     * the MIME type database on Gnome/UNIX platforms. They are read again once 
+     * the MIME type database files change, or the cache entries expire. This 
+     * method forces reading them again at the next call, such as after the 
+     * association information is changed by another application. 
+     */
+    public void refresh() {
+        appAssocReader.refresh();
+        assocCache.clear();
+    }
+
+    /**
+     * Returns the number of association lookups answered from the cache.
+     * 
+     * @return the number of cache hits.
+     */
+    public long getCacheHitCount() {
+        return assocCache.getHitCount();
+    }
+
+    /**
+     * Returns the number of association lookups not answered from the cache,
+     * which were read from the system.
+     * 
+     * @return the number of cache misses.
+     */
+    public long getCacheMissCount() {
+        return assocCache.getMissCount();
     }
 }
@@ -118,4 +118,22 @@ public interface AppAssociationReader {
      * @return true if the file extension exists in the system
      */
 	public boolean isFileExtExist(String fileExt);
+
+    /**
+     * Discards any association information cached from the system, so that the
+     * next lookups read the current information.
+     */
+    public void refresh();
+
+    /**
+     * Returns a stamp which changes when the association information of the
+     * system changes, or 0 if such changes can't be detected.
+     */
+    public long getDatabaseStamp();
+
+    /**
+     * Returns true if the methods of this reader may be called from several
+     * threads at once.
+     */
+    public boolean isThreadSafe();
 }
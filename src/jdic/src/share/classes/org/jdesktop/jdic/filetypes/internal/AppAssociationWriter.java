@@ -20,6 +20,7 @@
 
 package org.jdesktop.jdic.filetypes.internal;
 
+import java.util.List;
 import org.jdesktop.jdic.filetypes.Association;
 import org.jdesktop.jdic.filetypes.AssociationAlreadyRegisteredException;
 import org.jdesktop.jdic.filetypes.AssociationNotRegisteredException;
@@ -79,6 +80,17 @@ public interface AppAssociationWriter {
     public void registerAssociation(Association assoc, int level) 
             throws AssociationAlreadyRegisteredException, RegisterFailedException;
 
+    /**
+     * Registers the given associations within specified level, all of them or none. 
+     * 
+     * @param assocs a given list of Association objects.
+     * @param level a given registration level
+     * @throws RegisterFailedException if any of the given associations fails to be 
+     *         registered.
+     */
+    public void registerAssociations(List assocs, int level) 
+            throws RegisterFailedException;
+
     /**
      * Unregisters the given association in specified level.
      * 
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+
+/**
+ * A bounded cache of the association lookups, the least recently used entry
+ * being removed first. The entries expire after a time to live, and the whole
+ * cache is cleared when the database stamp of the association reader changes.
+ * A lookup which found nothing is cached too.
+ * <p>
+ * Each clear starts a new generation of the cache. A lookup gets the current
+ * generation before it starts, and its result is dropped if the cache was
+ * cleared meanwhile, so that a lookup overlapping a registration doesn't cache
+ * the association information from before it.
+ * <p>
+ * The size bound and time to live are set with the
+ * <code>org.jdesktop.jdic.filetypes.cacheSize</code> and
+ * <code>org.jdesktop.jdic.filetypes.cacheTimeToLive</code> (in milliseconds)
+ * system properties. A size of 0 disables the cache.
+ */
+public class AssociationCache {
+    /** System property giving the maximum number of cached entries. */
+    public final static String SIZE_PROPERTY = "org.jdesktop.jdic.filetypes.cacheSize";
+
+    /** System property giving the entry time to live, in milliseconds. */
+    public final static String TIME_TO_LIVE_PROPERTY = "org.jdesktop.jdic.filetypes.cacheTimeToLive";
+
+    /** Returned by <code>get</code> if the key isn't cached. */
+    public final static Object NOT_CACHED = new Object();
+
+    private final static int DEFAULT_SIZE = 512;
+    private final static long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000;
+
+    // The minimum interval between two checks of the database stamp.
+    private final static long CHECK_INTERVAL = 2000;
+
+    // The caches created, as keys, for clearAll.
+    private final static Map instances = new WeakHashMap();
+
+    private AppAssociationReader reader;
+    private int maxSize;
+    private long timeToLive;
+    private Map entries;
+
+    private long databaseStamp;
+    private long lastCheckTime;
+    private long generation = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    private static class Entry {
+        Object value;
+        long expiryTime;
+    }
+
+    /**
+     * Creates a cache of the lookups of the given reader, sized with the
+     * system properties.
+     */
+    public AssociationCache(AppAssociationReader reader) {
+        this(reader, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE).intValue(),
+             Long.getLong(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE).longValue());
+    }
+
+    /**
+     * Creates a cache of the lookups of the given reader.
+     *
+     * @param reader the reader whose database stamp is checked.
+     * @param maxSize the maximum number of entries, 0 to disable the cache.
+     * @param timeToLive the time to live of the entries, in milliseconds.
+     */
+    public AssociationCache(AppAssociationReader reader, int maxSize, long timeToLive) {
+        this.reader = reader;
+        this.maxSize = Math.max(maxSize, 0);
+        this.timeToLive = timeToLive;
+        entries = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() > AssociationCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        databaseStamp = reader.getDatabaseStamp();
+        lastCheckTime = System.currentTimeMillis();
+
+        synchronized (AssociationCache.class) {
+            instances.put(this, null);
+        }
+    }
+
+    /**
+     * Clears all the caches created, such as after the association
+     * information of the system is changed.
+     */
+    public static void clearAll() {
+        List caches;
+        synchronized (AssociationCache.class) {
+            caches = new ArrayList(instances.keySet());
+        }
+        for (Iterator iter = caches.iterator(); iter.hasNext();) {
+            ((AssociationCache) iter.next()).clear();
+        }
+    }
+
+    /**
+     * Returns the current generation of the cache, to be given to
+     * <code>put</code>. Call it before looking up the value to cache.
+     */
+    public synchronized long getGeneration() {
+        checkDatabase(System.currentTimeMillis());
+        return generation;
+    }
+
+    /**
+     * Returns the cached value of the given key, which may be null, or
+     * <code>NOT_CACHED</code>.
+     */
+    public synchronized Object get(Object key) {
+        if (maxSize == 0) {
+            return NOT_CACHED;
+        }
+
+        long now = System.currentTimeMillis();
+        checkDatabase(now);
+        Entry entry = (Entry) entries.get(key);
+        if (entry == null || entry.expiryTime <= now) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            missCount++;
+            return NOT_CACHED;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Caches the value of the given key, which may be null, unless the cache
+     * was cleared since the given generation.
+     *
+     * @param generation the generation returned by <code>getGeneration</code>
+     *        before the value was looked up.
+     */
+    public synchronized void put(Object key, Object value, long generation) {
+        if (maxSize == 0 || generation != this.generation) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.value = value;
+        entry.expiryTime = System.currentTimeMillis() + timeToLive;
+        entries.put(key, entry);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    /*
+     * Clears the cache if the association database changed since last check.
+     */
+    private void checkDatabase(long now) {
+        if (now - lastCheckTime < CHECK_INTERVAL) {
+            return;
+        }
+        lastCheckTime = now;
+
+        long stamp = reader.getDatabaseStamp();
+        if (stamp != databaseStamp) {
+            databaseStamp = stamp;
+            entries.clear();
+            generation++;
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Runs a lookup on each distinct key of a collection, in parallel on a
+ * bounded number of threads, the calling thread being one of them.
+ * <p>
+ * The number of threads is at most the number of processors, and at most the
+ * value of the <code>org.jdesktop.jdic.filetypes.lookupThreads</code> system
+ * property, 4 by default. Setting it to 1 runs every lookup on the calling
+ * thread.
+ */
+public class BulkLookup {
+    /** System property giving the maximum number of lookup threads. */
+    public final static String THREADS_PROPERTY = "org.jdesktop.jdic.filetypes.lookupThreads";
+
+    private final static int DEFAULT_MAX_THREADS = 4;
+
+    // Don't start a thread for less lookups than this.
+    private final static int MIN_LOOKUPS_PER_THREAD = 8;
+
+    /**
+     * A lookup of one key.
+     */
+    public interface Lookup {
+        /**
+         * Returns the result for the given key, or null if there is none.
+         */
+        Object lookup(Object key);
+    }
+
+    private List keys;
+    private Object[] results;
+    private Lookup lookup;
+    private int next = 0;
+    private RuntimeException failure = null;
+
+    private BulkLookup(List keys, Lookup lookup) {
+        this.keys = keys;
+        this.results = new Object[keys.size()];
+        this.lookup = lookup;
+    }
+
+    /**
+     * Looks up each distinct key of the given collection, and returns a map
+     * from each of them to its non null result.
+     *
+     * @param keys the keys, which may contain duplicates.
+     * @param lookup the lookup to run on each key.
+     * @return a map from key to result, without the keys whose result is null.
+     */
+    public static Map run(Collection keys, Lookup lookup) {
+        return run(keys, lookup, true);
+    }
+
+    /**
+     * Looks up each distinct key of the given collection, in parallel or on
+     * the calling thread only, and returns a map from each of them to its non
+     * null result.
+     *
+     * @param keys the keys, which may contain duplicates.
+     * @param lookup the lookup to run on each key.
+     * @param parallel false if the lookup must not run on several threads at
+     *        once.
+     * @return a map from key to result, without the keys whose result is null.
+     */
+    public static Map run(Collection keys, Lookup lookup, boolean parallel) {
+        // Remove the duplicates, keeping the order.
+        Map distinct = new HashMap();
+        List keyList = new ArrayList();
+        for (Iterator iter = keys.iterator(); iter.hasNext();) {
+            Object key = iter.next();
+            if (!distinct.containsKey(key)) {
+                distinct.put(key, null);
+                keyList.add(key);
+            }
+        }
+
+        BulkLookup bulk = new BulkLookup(keyList, lookup);
+        bulk.runAll(parallel ? getMaxThreads() : 1);
+
+        Map results = new HashMap();
+        for (int i = 0; i < bulk.results.length; i++) {
+            if (bulk.results[i] != null) {
+                results.put(keyList.get(i), bulk.results[i]);
+            }
+        }
+        return results;
+    }
+
+    private void runAll(int maxThreads) {
+        int threadCount = Math.min(maxThreads,
+                                   keys.size() / MIN_LOOKUPS_PER_THREAD);
+        Thread[] threads = new Thread[Math.max(threadCount - 1, 0)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread("Association lookup " + i) {
+                public void run() {
+                    runLookups();
+                }
+            };
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        runLookups();
+
+        // The results are read once every thread is done, so an interrupt
+        // can't cut the wait short; it is kept for the caller instead.
+        boolean interrupted = false;
+        for (int i = 0; i < threads.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                i--;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /*
+     * Runs the lookups of the keys not taken by another thread yet.
+     */
+    private void runLookups() {
+        while (true) {
+            int index;
+            synchronized (this) {
+                if (next >= keys.size() || failure != null) {
+                    return;
+                }
+                index = next++;
+            }
+            try {
+                Object result = lookup.lookup(keys.get(index));
+                synchronized (this) {
+                    results[index] = result;
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                return;
+            }
+        }
+    }
+
+    private static int getMaxThreads() {
+        int maxThreads = DEFAULT_MAX_THREADS;
+        String property = System.getProperty(THREADS_PROPERTY);
+        if (property != null) {
+            try {
+                maxThreads = Integer.parseInt(property.trim());
+            } catch (NumberFormatException e) {
+                // Use the default.
+            }
+        }
+        return Math.max(1, Math.min(maxThreads,
+                                    Runtime.getRuntime().availableProcessors()));
+    }
+}
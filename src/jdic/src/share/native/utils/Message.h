@@ -41,6 +41,12 @@
 #define JEVENT_GETCONTENT        15
 #define JEVENT_SETCONTENT        16
 #define JEVENT_EXECUTESCRIPT     17
+// a request tagged with a request id: "<request id>,<event>,<data>", only
+// sent with the binary message framing.
+#define JEVENT_REQUEST           18
+// a chunk of the content of the next JEVENT_SETCONTENT, collected by 
+// MsgServer, only sent with the binary message framing.
+#define JEVENT_SETCONTENT_CHUNK  19
 
 // C++ -> Java, must keep same with WebBrowserEvent.java
 #define CEVENT_BEFORE_NAVIGATE	    3001
@@ -78,4 +84,33 @@
 #define MSG_DELIMITER_MIDDLE  "</html><body></html>_middle"
 #define MSG_DELIMITER_END     "</html><body></html>_end"
 
+// Binary message framing, must keep same with MsgClient.java.
+// The Java side asks for it with the PROTOCOL_FLAG command line flag. Right
+// after accepting the connection, the native side acknowledges it with a
+// "-1,CEVENT_PROTOCOL,binary" delimiter mode message, and from then on both
+// sides send frames made of a header of three network order ints (instance,
+// event, payload length) followed by the payload.
+#define PROTOCOL_FLAG         "-protocol=binary"
+#define PROTOCOL_BINARY       "binary"
+#define CEVENT_PROTOCOL       3081
+#define FRAME_HEADER_SIZE     12
+// the largest payload length accepted in a frame header, a longer or 
+// negative one means a corrupt stream or a foreign client.
+#define MAX_FRAME_LENGTH      (64 * 1024 * 1024)
+// a raw message string, such as a trigger reply, handled as a delimiter 
+// mode message.
+#define FRAME_TYPE_RAW        -1
+// the result of a JEVENT_REQUEST request: "<request id>,<result>".
+#define CEVENT_REQUEST_RESULT 3082
+// a chunk of a long request result: "<request id>,<chunk>", followed by 
+// more chunks and then the CEVENT_REQUEST_RESULT with the last part.
+#define CEVENT_REQUEST_CHUNK  3083
+// the maximum number of bytes of a request result chunk.
+#define RESULT_CHUNK_SIZE     65536
+
+// With this command line flag, the native side connects to the loopback 
+// port given with -port=, where the Java side listens, instead of listening 
+// on it. Must keep same with MsgClient.java.
+#define CONNECT_FLAG          "-connect"
+
 #endif
@@ -33,6 +33,11 @@ pthread_mutex_t gServerMutex;
 #endif
 
 int MsgServer::mPort = 0;
+int MsgServer::mBinaryRequested = 0;
+int MsgServer::mConnectBack = 0;
+
+// the id of the JEVENT_REQUEST request being handled, 0 if none.
+static int gRequestId = 0;
 
 MsgServer::MsgServer()
 {
@@ -45,15 +50,24 @@ MsgServer::MsgServer()
 
     mFailed = 1;
     mCounter = 0;
+    mBinaryMode = 0;
 
     mHandler = NULL;
-    mSendBuffer = new char[BUFFER_SIZE];
+    mSendBufferSize = BUFFER_SIZE;
+    mSendBuffer = new char[mSendBufferSize];
+    mSendLen = 0;
     mRecvBuffer = new char[BUFFER_SIZE];
     // predefine the long receiver buffer. If it's not big enough, 
     // alloc more space.
     mLongRecvBufferSize = BUFFER_SIZE * 4;
     mLongRecvBuffer = new char[mLongRecvBufferSize];
     mSendBuffer[0] = mRecvBuffer[0] = mLongRecvBuffer[0] = 0;
+    // the frame buffer is only allocated in the binary mode.
+    mFrameBuffer = NULL;
+    mFrameLen = mFrameBufferSize = 0;
+    mContentBuffer = NULL;
+    mContentLen = mContentBufferSize = 0;
+    mContentInstance = -1;
 
     int i;
     mTriggers = new Trigger[MAX_TRIGGER];
@@ -86,6 +100,8 @@ MsgServer::~MsgServer()
     delete [] mSendBuffer;
     delete [] mRecvBuffer;
     delete [] mLongRecvBuffer;
+    delete [] mFrameBuffer;
+    delete [] mContentBuffer;
     delete [] mTriggers;
 
     WBTRACE("Closing socket ...\n");
@@ -113,6 +129,9 @@ MsgServer::~MsgServer()
 
 int MsgServer::CreateServerSocket()
 {
+    if (mConnectBack)
+        return ConnectBack();
+
     u_long nbio = 1;
     int bReuseaddr = 1;
 
@@ -169,10 +188,78 @@ failed:
     return -1;
 }
 
+// Connects to the port the Java side listens on. The connection is made 
+// right away, the Java side waits for it since it started this process.
+int MsgServer::ConnectBack()
+{
+    u_long nbio = 1;
+
+    mMsgSock = socket(AF_INET, SOCK_STREAM, 0);
+
+#ifdef WIN32
+    if (mMsgSock == INVALID_SOCKET) {
+#else
+    if (mMsgSock < 0) {
+#endif
+        WBTRACE("socket failed!");
+        mMsgSock = -1;
+        return -1;
+    }
+
+    struct sockaddr_in server_addr;
+    memset(&server_addr, 0, sizeof(server_addr));
+    server_addr.sin_family = AF_INET;
+    server_addr.sin_port = htons(mPort);
+    server_addr.sin_addr.s_addr = htonl (INADDR_LOOPBACK);
+
+    if (connect(mMsgSock, (struct sockaddr *)&server_addr, 
+        sizeof(server_addr)) < 0) {
+        LogMsg("connect failed!");
+#ifdef WIN32
+        closesocket(mMsgSock);
+#else
+        close(mMsgSock);
+#endif
+        mMsgSock = -1;
+        return -1;
+    }
+
+#ifdef WIN32
+    ioctlsocket(mMsgSock, FIONBIO, &nbio);
+#else
+    fcntl(mMsgSock, F_SETFL, O_NONBLOCK);
+#endif
+
+    WBTRACE("Connected to port %d ...\n", mPort);
+
+    mFailed = 0;
+    Connected();
+    return 0;
+}
+
+// Called once the connection with the Java side is established.
+void MsgServer::Connected()
+{
+    if (mBinaryRequested) {
+        // acknowledge the binary message framing in the delimiter 
+        // mode. The Java side waits for it before sending anything, 
+        // so both directions switch to binary frames right now.
+        char buf[BUFFER_SIZE_HALF];
+        sprintf(buf, "-1,%d,%s%s", CEVENT_PROTOCOL, PROTOCOL_BINARY, 
+            MSG_DELIMITER);
+        Send(buf);
+        mBinaryMode = 1;
+        WBTRACE("Binary message framing is used.\n");
+    }
+}
+
 int MsgServer::Send(const char *pData)
 {
-    if (strlen(pData) + strlen(mSendBuffer) < BUFFER_SIZE) {
-        strcat(mSendBuffer, pData);
+    int len = strlen(pData);
+    if (len + mSendLen < BUFFER_SIZE) {
+        memcpy(mSendBuffer + mSendLen, pData, len);
+        mSendLen += len;
+        mSendBuffer[mSendLen] = 0;
         return 0;
     }
     else {
@@ -181,6 +268,34 @@ int MsgServer::Send(const char *pData)
     }
 }
 
+int MsgServer::SendFrame(int instance, int event, const char *pData)
+{
+    int dataLen = pData ? strlen(pData) : 0;
+    int frameLen = FRAME_HEADER_SIZE + dataLen;
+
+    // a frame is never split, grow the send buffer if it's not big enough.
+    if (mSendLen + frameLen >= mSendBufferSize) {
+        char *tmpSendBuffer = mSendBuffer;
+        mSendBufferSize = mSendLen + frameLen + BUFFER_SIZE;
+        mSendBuffer = new char[mSendBufferSize];
+        memcpy(mSendBuffer, tmpSendBuffer, mSendLen);
+        delete [] tmpSendBuffer;
+    }
+
+    unsigned int header[3];
+    header[0] = htonl((unsigned int)instance);
+    header[1] = htonl((unsigned int)event);
+    header[2] = htonl((unsigned int)dataLen);
+    memcpy(mSendBuffer + mSendLen, header, FRAME_HEADER_SIZE);
+    if (dataLen > 0) {
+        memcpy(mSendBuffer + mSendLen + FRAME_HEADER_SIZE, pData, dataLen);
+    }
+    mSendLen += frameLen;
+    mSendBuffer[mSendLen] = 0;
+
+    return 0;
+}
+
 int MsgServer::AddTrigger(int instance, int msg, int *trigger)
 {
     for (int i = 0; i < MAX_TRIGGER; i++) {
@@ -214,20 +329,25 @@ int MsgServer::Listen()
     FD_ZERO(&writefds);
     FD_ZERO(&exceptfds);
 
+    // the value of the highest file descriptor plus one.
+    int maxfdp1 = 0;
+
+    // there is no server socket when connecting back to the Java side.
+    if (mServerSock >= 0) {
 #ifdef WIN32
-    // Type cast to avoid warning message:
-    //   warning C4018: '==' : signed/unsigned mismatch
-    FD_SET((UINT32)mServerSock, &readfds);
-    FD_SET((UINT32)mServerSock, &writefds);
-    FD_SET((UINT32)mServerSock, &exceptfds);
+        // Type cast to avoid warning message:
+        //   warning C4018: '==' : signed/unsigned mismatch
+        FD_SET((UINT32)mServerSock, &readfds);
+        FD_SET((UINT32)mServerSock, &writefds);
+        FD_SET((UINT32)mServerSock, &exceptfds);
 #else
-    FD_SET(mServerSock, &readfds);
-    FD_SET(mServerSock, &writefds);
-    FD_SET(mServerSock, &exceptfds);
+        FD_SET(mServerSock, &readfds);
+        FD_SET(mServerSock, &writefds);
+        FD_SET(mServerSock, &exceptfds);
 #endif
 
-    // the value of the highest file descriptor plus one.
-    int maxfdp1 = mServerSock + 1;
+        maxfdp1 = mServerSock + 1;
+    }
 
     if (mMsgSock >= 0) {
 #ifdef WIN32
@@ -242,7 +362,8 @@ int MsgServer::Listen()
         FD_SET(mMsgSock, &exceptfds); 
 #endif
 
-        maxfdp1 = mMsgSock + 1;
+        if (mMsgSock + 1 > maxfdp1)
+            maxfdp1 = mMsgSock + 1;
     }
 
     // wait for 1 second if no connect or recv/send socket requests.
@@ -255,7 +376,7 @@ int MsgServer::Listen()
         WBTRACE("Exception occurred!\n");
         ret = -1;
     } else if (n > 0) {
-        if (FD_ISSET(mServerSock, &readfds)) {
+        if (mServerSock >= 0 && FD_ISSET(mServerSock, &readfds)) {
             struct sockaddr_in peer_addr;
             int len = sizeof(peer_addr);
 
@@ -268,8 +389,10 @@ int MsgServer::Listen()
 #endif
                 WBTRACE("accept fail!\n");
                 ret = -1;
+            } else {
+                Connected();
             }
-        } else if (FD_ISSET(mServerSock, &exceptfds)) {
+        } else if (mServerSock >= 0 && FD_ISSET(mServerSock, &exceptfds)) {
             WBTRACE("Exception occurred!\n");
             ret = -1;
         } else if (FD_ISSET(mMsgSock, &readfds)) {
@@ -287,6 +410,9 @@ int MsgServer::Listen()
 
 int MsgServer::RecvData()
 {    
+    if (mBinaryMode)
+        return RecvFrames();
+
     char recvDataBuf[BUFFER_SIZE] = "\0";
     char unfinishedMsgBuf[BUFFER_SIZE] = "\0";
 
@@ -360,19 +486,7 @@ int MsgServer::RecvData()
             }
 
             if (token[0] == '@') {
-                // this is a special response message.
-                int instance, msg, data;
-                int i = sscanf(token, "@%d,%d,%d", &instance, &msg, &data);
-                if (i == 3) {
-                    for (int i = 0; i < MAX_TRIGGER; i++) {
-                        if (mTriggers[i].mInstance == instance 
-                            && mTriggers[i].mMsg == msg) {
-                            *(mTriggers[i].mTrigger) = data;
-                            mTriggers[i].mInstance = EMPTY_TRIGGER;
-                            break;
-                        }
-                    }
-                }
+                HandleTriggerReply(token);
             } else if (token[0] == '*') {
                 // this is quit message
                 if (mHandler) {
@@ -432,16 +546,166 @@ int MsgServer::RecvData()
     return len;
 }
 
+int MsgServer::RecvFrames()
+{
+    // make sure there is room to receive a full socket buffer.
+    if (mFrameBufferSize - mFrameLen < BUFFER_SIZE) {
+        char *tmpFrameBuffer = mFrameBuffer;
+        mFrameBufferSize = mFrameBufferSize * 2 + BUFFER_SIZE * 4;
+        mFrameBuffer = new char[mFrameBufferSize];
+        if (tmpFrameBuffer) {
+            memcpy(mFrameBuffer, tmpFrameBuffer, mFrameLen);
+            delete [] tmpFrameBuffer;
+        }
+    }
+
+    int len = recv(mMsgSock, mFrameBuffer + mFrameLen, 
+        mFrameBufferSize - mFrameLen, 0);
+    if (len == 0) {
+        // value 0 means the network connection is closed.
+        WBTRACE("client socket has been closed!\n");
+        return -1;
+    }
+    else if (len < 0) {
+        // value -1 indicates a failure
+        WBTRACE("receive fail!\n");
+        return len;
+    }
+
+    mFrameLen += len;
+    WBTRACE("Client socket recv %d bytes\n", len);
+
+    int offset = 0;
+    while (mFrameLen - offset >= FRAME_HEADER_SIZE) {
+        unsigned int header[3];
+        memcpy(header, mFrameBuffer + offset, FRAME_HEADER_SIZE);
+        int instance = (int)ntohl(header[0]);
+        int event = (int)ntohl(header[1]);
+        int dataLen = (int)ntohl(header[2]);
+        if (dataLen < 0 || dataLen > MAX_FRAME_LENGTH) {
+            // don't trust anything else from this connection.
+            WBTRACE("Invalid frame length %d, closing the connection!\n", 
+                dataLen);
+            return -1;
+        }
+        if (mFrameLen - offset < FRAME_HEADER_SIZE + dataLen) {
+            // an unfinished frame.
+            break;
+        }
+
+        char *dataPtr = mFrameBuffer + offset + FRAME_HEADER_SIZE;
+        if (event == JEVENT_SETCONTENT_CHUNK) {
+            AppendContent(instance, dataPtr, dataLen);
+            offset += FRAME_HEADER_SIZE + dataLen;
+            continue;
+        }
+
+        // rebuild the "instance,event,data" message string the message 
+        // handler expects, a raw message string is passed as it is. The 
+        // collected chunks are put before the content of a JEVENT_SETCONTENT.
+        int contentLen = 0;
+        if (event == JEVENT_SETCONTENT && instance == mContentInstance)
+            contentLen = mContentLen;
+        char *token = new char[contentLen + dataLen + BUFFER_SIZE_HALF];
+        int tokenLen = 0;
+        if (event != FRAME_TYPE_RAW) {
+            tokenLen = sprintf(token, "%d,%d,", instance, event);
+        }
+        if (contentLen > 0) {
+            memcpy(token + tokenLen, mContentBuffer, contentLen);
+            tokenLen += contentLen;
+        }
+        if (event == JEVENT_SETCONTENT) {
+            // the collected chunks are used.
+            mContentLen = 0;
+            mContentInstance = -1;
+        }
+        memcpy(token + tokenLen, dataPtr, dataLen);
+        token[tokenLen + dataLen] = 0;
+        offset += FRAME_HEADER_SIZE + dataLen;
+
+        if (token[0] == '@') {
+            HandleTriggerReply(token);
+        } else if (token[0] == '*') {
+            // this is quit message
+            if (mHandler) {
+                mHandler(&token[1]);
+            }
+            delete [] token;
+            return -1;
+        } else if (mHandler) {
+            mHandler(token);
+        }
+        delete [] token;
+    }
+
+    // keep the unfinished frame, if any.
+    if (offset > 0) {
+        memmove(mFrameBuffer, mFrameBuffer + offset, mFrameLen - offset);
+        mFrameLen -= offset;
+    }
+
+    return len;
+}
+
+// Collects a chunk of the content of the next JEVENT_SETCONTENT message.
+void MsgServer::AppendContent(int instance, const char *pData, int len)
+{
+    if (instance != mContentInstance) {
+        if (mContentLen > 0)
+            WBTRACE("Dropping the unfinished content of %d\n", 
+                mContentInstance);
+        mContentLen = 0;
+        mContentInstance = instance;
+    }
+
+    if (mContentBufferSize - mContentLen < len) {
+        char *tmpContentBuffer = mContentBuffer;
+        mContentBufferSize = (mContentLen + len) * 2;
+        mContentBuffer = new char[mContentBufferSize];
+        if (tmpContentBuffer) {
+            memcpy(mContentBuffer, tmpContentBuffer, mContentLen);
+            delete [] tmpContentBuffer;
+        }
+    }
+    memcpy(mContentBuffer + mContentLen, pData, len);
+    mContentLen += len;
+}
+
+void MsgServer::HandleTriggerReply(const char *token)
+{
+    // this is a special response message.
+    int instance, msg, data;
+    int i = sscanf(token, "@%d,%d,%d", &instance, &msg, &data);
+    if (i == 3) {
+        for (int i = 0; i < MAX_TRIGGER; i++) {
+            if (mTriggers[i].mInstance == instance 
+                && mTriggers[i].mMsg == msg) {
+                *(mTriggers[i].mTrigger) = data;
+                mTriggers[i].mInstance = EMPTY_TRIGGER;
+                break;
+            }
+        }
+    }
+}
+
 int MsgServer::SendData()
 {   
-    int len = strlen(mSendBuffer);
+    int len = mSendLen;
     if (len == 0)
         return 0;
 
     len = send(mMsgSock, mSendBuffer, len, 0);
-    WBTRACE("Client socket send %s\n", mSendBuffer);
+    if (mBinaryMode) {
+        WBTRACE("Client socket send %d bytes\n", len);
+    } else {
+        WBTRACE("Client socket send %s\n", mSendBuffer);
+    }
     if (len > 0) {
-        mSendBuffer[0] = 0;
+        // keep the unsent part, if any.
+        memmove(mSendBuffer, mSendBuffer + len, mSendLen - len);
+        mSendLen -= len;
+        mSendBuffer[mSendLen] = 0;
     }
     else if (len < 0) {
         WBTRACE("send fail!\n");
@@ -454,10 +718,68 @@ int MsgServer::SendData()
 
 void SendSocketMessage(int instance, int event, const char *pData)
 {   
+    // the result of a tagged request carries its request id.
+    if (gRequestId && (event == CEVENT_RETURN_URL 
+        || event == CEVENT_GETCONTENT || event == CEVENT_EXECUTESCRIPT)) {
+        int requestId = gRequestId;
+        gRequestId = 0;
+        const char *data = pData ? pData : "";
+        int dataLen = strlen(data);
+
+        // a long result is sent in chunks the Java side hands on as they 
+        // arrive. A chunk ends with an ASCII byte, which is never part of 
+        // a multibyte character, neither in UTF-8 nor in the DBCS charsets.
+        while (dataLen > RESULT_CHUNK_SIZE) {
+            int chunkLen = RESULT_CHUNK_SIZE;
+            while (chunkLen > 0 && (unsigned char)data[chunkLen - 1] >= 0x80)
+                chunkLen--;
+            if (chunkLen == 0)
+                break;
+
+            char *chunk = new char[chunkLen + 16];
+            int len = sprintf(chunk, "%d,", requestId);
+            memcpy(chunk + len, data, chunkLen);
+            chunk[len + chunkLen] = 0;
+            SendSocketMessage(instance, CEVENT_REQUEST_CHUNK, chunk);
+            delete [] chunk;
+            data += chunkLen;
+            dataLen -= chunkLen;
+        }
+
+        char *result = new char[dataLen + 16];
+        int len = sprintf(result, "%d,", requestId);
+        strcpy(result + len, data);
+        SendSocketMessage(instance, CEVENT_REQUEST_RESULT, result);
+        delete [] result;
+        return;
+    }
+
     // Note: As the message sending buffer (mSendBuffer) is BUFFER_SIZE 
     // long, it may contains remaining message contents, so just fill 
     // in half of the BUFFER_SIZE message content (BUFFER_SIZE_HALF).
     char buf[BUFFER_SIZE];
+
+    // a binary frame carries a message of any length.
+#ifdef WIN32
+    EnterCriticalSection(&CriticalSection);
+#else
+    pthread_mutex_lock(&gServerMutex);
+#endif
+
+    int binaryMode = gMessenger.IsBinaryMode();
+    if (binaryMode) {
+        gMessenger.SendFrame(instance, event, pData);
+    }
+
+#ifdef WIN32
+    LeaveCriticalSection(&CriticalSection);
+#else
+    pthread_mutex_unlock(&gServerMutex);
+#endif
+
+    if (binaryMode)
+        return;
+
     if (pData && strlen(pData) > 0) {
         if (strlen(pData) <= BUFFER_SIZE_HALF) {
             sprintf(buf, "%d,%d,%s%s", instance, event, pData, MSG_DELIMITER);
@@ -618,6 +940,35 @@ void SendSocketMessage(int instance, int event, const char *pData)
     }
 }
 
+// Starts handling the JEVENT_REQUEST request whose data is pData. Returns 
+// the wrapped "<instance>,<event>,<data>" message to be handled as usual, 
+// which the caller deletes, or NULL if pData is malformed.
+char *BeginRequest(int instance, const char *pData)
+{
+    int requestId = 0, event = 0, len = 0;
+    if (!pData || sscanf(pData, "%d,%d,%n", &requestId, &event, &len) < 2 
+        || len == 0)
+        return NULL;
+
+    const char *data = pData + len;
+    char *msg = new char[strlen(data) + 32];
+    sprintf(msg, "%d,%d,%s", instance, event, data);
+    gRequestId = requestId;
+    return msg;
+}
+
+// Ends handling the current JEVENT_REQUEST request, sending an empty 
+// result if the request got none.
+void EndRequest(int instance)
+{
+    if (gRequestId) {
+        char result[16];
+        sprintf(result, "%d,", gRequestId);
+        gRequestId = 0;
+        SendSocketMessage(instance, CEVENT_REQUEST_RESULT, result);
+    }
+}
+
 void AddTrigger(int instance, int msg, int *trigger)
 {
 #ifdef WIN32
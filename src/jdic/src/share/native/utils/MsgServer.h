@@ -57,6 +57,15 @@ private:
     // the port we are listening to
     static int mPort;
 
+    // whether the Java side asks for binary message framing.
+    static int mBinaryRequested;
+
+    // whether to connect to the Java side rather than waiting for it.
+    static int mConnectBack;
+
+    // set once the binary message framing is acknowledged to the Java side.
+    int mBinaryMode;
+
     int mServerSock, mMsgSock;
     fd_set readfds;
     fd_set writefds;
@@ -66,12 +75,24 @@ private:
     unsigned int mCounter;
 
     char *mSendBuffer;
+    int mSendLen;
+    int mSendBufferSize;
     // message buffer receiving the short (<= BUFFER_SIZE) messages.
     char *mRecvBuffer;    
     // message buffer storing the received message pieces for a 
     // long (> BUFFER_SIZE) message.
     char *mLongRecvBuffer; 
     int mLongRecvBufferSize; 
+    // buffer receiving the binary message frames.
+    char *mFrameBuffer;
+    int mFrameLen;
+    int mFrameBufferSize;
+    // the JEVENT_SETCONTENT_CHUNK chunks received for the next 
+    // JEVENT_SETCONTENT of mContentInstance.
+    char *mContentBuffer;
+    int mContentLen;
+    int mContentBufferSize;
+    int mContentInstance;
 
     // native browser needs a yes or no confirmation from the Java side
     // for the two trigger events: CEVENT_BEFORE_NAVIGATE and 
@@ -89,7 +110,12 @@ private:
     MsgHandler mHandler;
 
     int RecvData();
+    int RecvFrames();
     int SendData();
+    void HandleTriggerReply(const char *token);
+    void AppendContent(int instance, const char *pData, int len);
+    int ConnectBack();
+    void Connected();
 
 public:
     MsgServer();
@@ -100,17 +126,25 @@ public:
     int Listen();
     
     int Send(const char *pData);
+    int SendFrame(int instance, int event, const char *pData);
     int AddTrigger(int instance, int msg, int *trigger);
 
     int IsFailed() { return mFailed; }
+    int IsBinaryMode() { return mBinaryMode; }
     void SetHandler(MsgHandler handler) { mHandler = handler; }
 
     static void SetPort(int port) { mPort = port; }
+    static void SetBinaryRequested(int requested) 
+        { mBinaryRequested = requested; }
+    static void SetConnectBack(int connectBack) 
+        { mConnectBack = connectBack; }
 };
 
 // Global functions and variables.
 void SendSocketMessage(int instance, int event, const char *pData = NULL);
 void AddTrigger(int instance, int msg, int *trigger);
+char *BeginRequest(int instance, const char *pData);
+void EndRequest(int instance);
 
 #ifdef _WIN32_IEEMBED
 DWORD WINAPI PortListening(void *pParam);
@@ -22,10 +22,18 @@ package org.jdesktop.jdic.filetypes.internal;
 
 
 /**
- * Create an instance of GnomeAppAssociationReader
+ * Create an instance of GnomeAppAssociationReader, or of SharedMimeInfoReader
+ * if the <code>org.jdesktop.jdic.filetypes.reader</code> system property is
+ * set to <code>sharedmimeinfo</code>.
  */
 public class AppAssociationReaderFactory {
+    /** System property selecting the association reader. */
+    public final static String READER_PROPERTY = "org.jdesktop.jdic.filetypes.reader";
+
     public static AppAssociationReader newInstance() {
+        if ("sharedmimeinfo".equalsIgnoreCase(System.getProperty(READER_PROPERTY))) {
+            return new SharedMimeInfoReader();
+        }
         return new GnomeAppAssociationReader();
     }
 }
@@ -26,8 +26,19 @@ import java.util.List;
 
 /**
  * Concrete implementation of the AppAssociationReader class for Gnome.
+ * <p>
+ * The mime types of local files are found in Java, with the rules of the 
+ * shared MIME-info database GnomeVFS uses too, unless the 
+ * <code>org.jdesktop.jdic.filetypes.nativeSniffing</code> system property is 
+ * set to true. GnomeVFS is used for the other URLs, or if the database 
+ * isn't found.
  */
 public class GnomeAppAssociationReader implements AppAssociationReader {
+    /** System property forcing the use of GnomeVFS to find the mime type of a URL. */
+    public final static String NATIVE_SNIFFING_PROPERTY = "org.jdesktop.jdic.filetypes.nativeSniffing";
+
+    // Finds the mime types of local files, created when first needed.
+    private SharedMimeInfoReader sniffingReader = null;
 
     /**
      * Returns the description associated with the given mime type.
@@ -63,7 +74,23 @@ public class GnomeAppAssociationReader implements AppAssociationReader {
      * @return String
      */
     public String getMimeTypeByURL(URL url) {
+        if (url.getProtocol().equals("file") && !Boolean.getBoolean(NATIVE_SNIFFING_PROPERTY)) {
+            SharedMimeInfoReader reader = getSniffingReader();
+            if (reader.isDatabaseAvailable()) {
+                String mimeType = reader.getMimeTypeByURL(url);
+                if (mimeType != null) {
+                    return mimeType;
+                }
+            }
+        }
         return GnomeAssociationUtil.getMimeTypeByURL(url);
+    }
+
+    private synchronized SharedMimeInfoReader getSniffingReader() {
+        if (sniffingReader == null) {
+            sniffingReader = new SharedMimeInfoReader();
+        }
+        return sniffingReader;
     }        
 
     /**
@@ -178,4 +205,26 @@ public class GnomeAppAssociationReader implements AppAssociationReader {
        
         return GnomeAssociationUtil.isFileExtExist(fileExt);
     }
+
+    /**
+     * Discards the cached file extension index of the MIME database.
+     */
+    public void refresh() {
+        GnomeAssociationUtil.refresh();
+    }
+
+    /**
+     * Returns a stamp which changes when a file of the MIME database 
+     * directories is added, removed or modified.
+     */
+    public long getDatabaseStamp() {
+        return GnomeAssociationUtil.getDatabaseStamp();
+    }
+
+    /**
+     * Returns false, as the GnomeVFS calls aren't thread-safe.
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
 }
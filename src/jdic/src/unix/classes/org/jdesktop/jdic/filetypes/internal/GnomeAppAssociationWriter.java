@@ -26,8 +26,13 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.jdesktop.jdic.filetypes.Action;
 import org.jdesktop.jdic.filetypes.Association;
 import org.jdesktop.jdic.filetypes.RegisterFailedException;
@@ -72,10 +77,6 @@ public class GnomeAppAssociationWriter implements AppAssociationWriter {
     static String KEYS_SUFFIX = ".keys";
     static String APPLICATIONS_SUFFIX = ".applications";
 
-    // Generated default application ID and command from the given open action, which will be written into .keys and .applications files.
-    private String defaultAppID = null;
-    private String defaultAppCommand = null;
-    
     /**
      * Converts the specified file extension list to a file extension string.
      * <P>
@@ -240,197 +241,211 @@ public class GnomeAppAssociationWriter implements AppAssociationWriter {
     }
 
 
-    /**
-     * Creates one mime file(.mime, .keys or .applications) in MIME database if not exist.
-     * 
-     * @throws IOException if the given file fails to be created.
-     */
-    private void createFile(String mimeFilePath) throws IOException {
-        boolean createSucceed = false;
-        
-        File mimeFile = new File(mimeFilePath);
-        if (!mimeFile.exists()) {
-            createSucceed = mimeFile.createNewFile();
-            if (!createSucceed) {
-                throw new IOException("Create MIME file: " + mimeFilePath + " failed.");        
-            }
-        }
-    }
-
     /**
      * Here we only accept and write the "open" action and *ignore* other actions.
      * Since other actions are not applied/used on Gnome desktop at all.
-     * The parsed application ID and application command info will be write into .keys and .application files.  
+     * Returns the parsed application ID and application command, which will be 
+     * written into .keys and .applications files, or null if there is no open action.
      */
-    private void parseOpenAction(Association assoc) {
+    private String[] parseOpenAction(Association assoc) {
         List actionList = assoc.getActionList();
-        
         if (actionList == null) {
-            return;
-        } else {
-            String verb = null;
-            Iterator actionIter = actionList.iterator();
-
-            while (actionIter.hasNext() && defaultAppCommand == null) {
-                Action oneAction = (Action) actionIter.next();
-                verb = oneAction.getVerb();
-                if (verb.equalsIgnoreCase("open")) {
-                    defaultAppCommand = oneAction.getCommand().trim();
-                }
-            }
-            
-            if (defaultAppCommand != null) {
-                // Check the application command and application id, which will be written into .applications file.
-                int sepIndex = defaultAppCommand.lastIndexOf(File.separator);
-                if (sepIndex == -1 || sepIndex == defaultAppCommand.length() - 1 ) {
-                    defaultAppID = defaultAppCommand;
-                } else {
-                    defaultAppID = defaultAppCommand.substring(sepIndex + 1, defaultAppCommand.length());
-                }
+            return null;
+        }
+
+        String appCommand = null;
+        Iterator actionIter = actionList.iterator();
+        while (actionIter.hasNext() && appCommand == null) {
+            Action oneAction = (Action) actionIter.next();
+            if (oneAction.getVerb().equalsIgnoreCase("open")) {
+                appCommand = oneAction.getCommand().trim();
             }
         }
+        if (appCommand == null) {
+            return null;
+        }
+
+        // Check the application command and application id, which will be written into .applications file.
+        String appID;
+        int sepIndex = appCommand.lastIndexOf(File.separator);
+        if (sepIndex == -1 || sepIndex == appCommand.length() - 1 ) {
+            appID = appCommand;
+        } else {
+            appID = appCommand.substring(sepIndex + 1, appCommand.length());
+        }
+        return new String[] {appID, appCommand};
     }
     
     /**
-     * Writes association fields into specified .mime file, including mime type, 
+     * Appends the .mime file entry of the given association, including mime type, 
      * and extension list.
-     *       
-     * @throws IOException if the given association info fails to be write to the given 
-     *         mime file.
      */
-    private void writeDotMimeFile(Association assoc, String dotMimeFilePath) throws IOException {
-        // Create file first.
-        createFile(dotMimeFilePath);
-        
-        String mimeType = assoc.getMimeType();
+    private void renderDotMimeEntry(Association assoc, StringBuffer buf) {
         List fileExtList = assoc.getFileExtList();
+        String fileExtensionString = null;
+        if (fileExtList == null) {
+            fileExtensionString = "";
+        } else {
+            fileExtensionString = fileExtListToString(fileExtList);
+        }
 
-        BufferedWriter mBufferWriter = null;
-        try {
-            // Appends new mime info into .mime file.
-            mBufferWriter = new BufferedWriter(new FileWriter(dotMimeFilePath, true));
+        buf.append(assoc.getMimeType() + "\n");
+        buf.append("\t" + "ext: " + fileExtensionString + "\n");
+        buf.append("\n");
+    }
+
+    /**
+     * Appends the .keys file entry of the given association, including mime type, 
+     * and icon file, and action list.      
+     */
+    private void renderDotKeysEntry(Association assoc, StringBuffer buf) {
+        String description = assoc.getDescription();      
+        String iconFileName = assoc.getIconFileName();
 
-            mBufferWriter.write(mimeType + "\n");
-            String fileExtensionString = null;
+        buf.append(assoc.getMimeType() + "\n");
+        if (description != null) {
+            buf.append("\t" + GnomeAssociationUtil.GNOME_VFS_MIME_KEY_DESCRIPTION 
+                    + "=" + description + "\n");
+        }
 
-            if (fileExtList == null) {
-                fileExtensionString = "";
-            } else {
-                fileExtensionString = fileExtListToString(fileExtList);
-            }
-            mBufferWriter.write("\t" + "ext: " + fileExtensionString + "\n");
-            mBufferWriter.write("\n");            
-        } catch (IOException e) {
-            throw new IOException("Write mime info to " + dotMimeFilePath + " failed.");
-        } finally {
-            // No matter what happens, always close streams already opened.
-            if (mBufferWriter != null) {
-                try {
-                   mBufferWriter.close();
-                } catch (IOException e) {
-                }
-            }
+        if (iconFileName != null) {
+            buf.append("\t" + GnomeAssociationUtil.GNOME_VFS_MIME_KEY_ICON_FILENAME
+                    + "=" + iconFileName + "\n");
         }
+
+        // Parse the given action list to get the application id and command.
+        String[] openAction = parseOpenAction(assoc);
+        if (openAction != null) {                
+            buf.append("\t" + "default_action_type=application" + "\n");
+            buf.append("\t" + "default_application_id=" + openAction[0] + "\n");
+            buf.append("\t" + "short_list_application_user_additions="  + openAction[0] + "\n");
+        }
+        
+        buf.append("\n");            
     }
 
     /**
-     * Writes association fields into specified .keys file, including mime type, and icon file, and action list.      
+     * Appends the .applications file entry of the given association, if it has 
+     * an open action.
+     */
+    private void renderDotApplicationsEntry(Association assoc, StringBuffer buf) {
+        // Parse the given action list to get the application id and command.
+        String[] openAction = parseOpenAction(assoc);
+        if (openAction != null) {
+            buf.append(openAction[0] + "\n");
+            buf.append("\t" + "command=" + openAction[1] + "\n");
+            buf.append("\t" + "name=" + openAction[0] + "\n");
+            buf.append("\t" + "can_open_multiple_files=false" + "\n");
+            buf.append("\t" + "requires_terminal=false" + "\n");
+            buf.append("\t" + "mime_types=" + assoc.getMimeType() + "\n");
+            buf.append("\n");
+        }            
+    }
+
+    /**
+     * Returns the content of the given file, or null if it doesn't exist.
      *
-     * @throws IOException if the given association info fails to be write to the given 
-     *         mime file.
+     * @throws IOException if the existing file fails to be read.
      */
-    private void writeDotKeysFile(Association assoc, String dotKeysFilePath) 
-        throws IOException {
-        // Create file first.
-        createFile(dotKeysFilePath);
+    private String readFile(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
 
-        String mimeType = assoc.getMimeType();
-        String description = assoc.getDescription();      
-        String iconFileName = assoc.getIconFileName();
-        
-        BufferedWriter kBufferWriter = null;
+        StringBuffer buf = new StringBuffer();
+        Reader reader = new BufferedReader(new FileReader(file));
         try {
-            // Appends new mime info into .keys file.
-            kBufferWriter = new BufferedWriter(new FileWriter(dotKeysFilePath, true));
-
-            kBufferWriter.write(mimeType + "\n");
-            if (description != null) {
-                kBufferWriter.write("\t"
-                        + GnomeAssociationUtil.GNOME_VFS_MIME_KEY_DESCRIPTION 
-                        + "=" + description + "\n");
-            }
-
-            if (iconFileName != null) {
-                kBufferWriter.write("\t"
-                        + GnomeAssociationUtil.GNOME_VFS_MIME_KEY_ICON_FILENAME
-                        + "=" + iconFileName + "\n");
+            char[] chars = new char[4096];
+            int len;
+            while ((len = reader.read(chars)) > 0) {
+                buf.append(chars, 0, len);
             }
+        } finally {
+            reader.close();
+        }
+        return buf.toString();
+    }
 
-            // Parse the given action list to get the application id and command.
-            parseOpenAction(assoc);
-            if (defaultAppID != null) {                
-                    kBufferWriter.write("\t" + "default_action_type=application" + "\n");
-                    kBufferWriter.write("\t" + "default_application_id=" + defaultAppID + "\n");
-                    kBufferWriter.write("\t" + "short_list_application_user_additions="  + defaultAppID + "\n");
-            }
-            
-            kBufferWriter.write("\n");            
+    /**
+     * Writes the given content into a temporary file in the directory of the 
+     * given file, and returns the temporary file.
+     *
+     * @throws IOException if the temporary file fails to be written.
+     */
+    private File writeTempFile(File file, String content) throws IOException {
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tempFile));
+            writer.write(content);
+            writer.close();
+            writer = null;
         } catch (IOException e) {
-            throw new IOException("Write mime info to " + dotKeysFilePath + " failed.");
+            tempFile.delete();
+            throw new IOException("Write mime info to " + tempFile + " failed.");
         } finally {
             // No matter what happens, always close streams already opened.
-            if (kBufferWriter != null) {
+            if (writer != null) {
                 try {
-                   kBufferWriter.close();
+                    writer.close();
                 } catch (IOException e) {
                 }
             }
         }
+        return tempFile;
     }
 
     /**
-     * Writes association fields into specified .applications file,
-     *  
-     * @throws IOException if the given association info fails to be write to the given 
-     *         mime file.
+     * Replaces the given files with their new content, all of them or none. 
+     * <P>
+     * Each new content is written into a temporary file first, and the 
+     * temporary files are renamed to the given files once all of them are 
+     * written. If any step fails, the given files are restored to their old 
+     * content, or deleted if they didn't exist.
+     *
+     * @param files the files to write.
+     * @param oldContents the old content of each file, null if it didn't exist.
+     * @param newContents the new content of each file.
+     * @throws IOException if the files fail to be written.
      */
-    private void writeDotApplicationsFile(Association assoc, String dotApplicationsFilePath) 
+    private void replaceFiles(File[] files, String[] oldContents, String[] newContents) 
         throws IOException {
-        // Create file first.
-        createFile(dotApplicationsFilePath);
-
-        BufferedWriter mBufferWriter = null;
+        File[] tempFiles = new File[files.length];
+        int renamed = 0;
         try {
-            // Parse the given action list to get the application id and command.
-            parseOpenAction(assoc);
-            if (defaultAppID != null && defaultAppCommand != null) {
-                // Appends new mime info into .applications file.
-                mBufferWriter = new BufferedWriter(new FileWriter(dotApplicationsFilePath, true));
-
-                mBufferWriter.write(defaultAppID + "\n");
-                mBufferWriter.write("\t" + "command=" + defaultAppCommand + "\n");
-                mBufferWriter.write("\t" + "name=" + defaultAppID + "\n");
-                mBufferWriter.write("\t" + "can_open_multiple_files=false" + "\n");
-                mBufferWriter.write("\t" + "requires_terminal=false" + "\n");
-
-                String mimeType = assoc.getMimeType();
-                mBufferWriter.write("\t" + "mime_types=" + mimeType + "\n");
-            
-                mBufferWriter.write("\n");
-            }            
+            for (int i = 0; i < files.length; i++) {
+                tempFiles[i] = writeTempFile(files[i], newContents[i]);
+            }
+            for (; renamed < files.length; renamed++) {
+                if (!tempFiles[renamed].renameTo(files[renamed])) {
+                    throw new IOException("Create MIME file: " + files[renamed] + " failed.");
+                }
+                tempFiles[renamed] = null;
+            }
         } catch (IOException e) {
-            throw new IOException("Write mime info to " + dotApplicationsFilePath + " failed.");
-        } finally {
-            // No matter what happens, always close streams already opened.
-            if (mBufferWriter != null) {
-                try {
-                   mBufferWriter.close();
-                } catch (IOException e) {
+            // Remove the temporary files left, and restore the renamed files.
+            for (int i = 0; i < tempFiles.length; i++) {
+                if (tempFiles[i] != null) {
+                    tempFiles[i].delete();
+                }
+            }
+            for (int i = 0; i < renamed; i++) {
+                if (oldContents[i] == null) {
+                    files[i].delete();
+                } else {
+                    try {
+                        File tempFile = writeTempFile(files[i], oldContents[i]);
+                        if (!tempFile.renameTo(files[i])) {
+                            tempFile.delete();
+                        }
+                    } catch (IOException restoreException) {
+                        // Keep restoring the other files.
+                    }
                 }
             }
+            throw e;
         }
     }
-    
     /**
      * Checks whether the specified .mime file contains the specified mime type.
      */
@@ -535,48 +550,82 @@ public class GnomeAppAssociationWriter implements AppAssociationWriter {
      */
     public void registerAssociation(Association assoc, int level) 
         throws RegisterFailedException {
-        String dotMimeFilePath = null;
-        String dotKeysFilePath = null;
-        String dotApplicationsFilePath = null;
-        
+        List assocs = new ArrayList(1);
+        assocs.add(assoc);
+        registerAssociations(assocs, level);
+    }
+
+    /**
+     * Registers the given associations in the specified level, all of them or
+     * none.
+     * <P>
+     * The entries of all the associations are appended to the mime files 
+     * identified by their name fields in memory first. Then each mime file is 
+     * written once, into a temporary file renamed to the mime file. If any 
+     * mime file fails to be written, the mime files already written are 
+     * restored.
+     * 
+     * @param assocs the given list of associations.
+     * @param level the given registration level.
+     * @throws RegisterFailedException if the registration failed.
+     */
+    public void registerAssociations(List assocs, int level) 
+        throws RegisterFailedException {
         try {
             if (level == SYSTEM_LEVEL) {
                 checkSystemMIMEDatabase();
-                
-                dotMimeFilePath = getSystemDotMimeFilePath(assoc);
-                dotKeysFilePath = getSystemDotKeysFilePath(assoc);
-                dotApplicationsFilePath = getSystemDotApplicationsFilePath(assoc);
-             } else {
+            } else {
                 checkUserMIMEDatabase();
-                
-                dotMimeFilePath = getUserDotMimeFilePath(assoc);
-                dotKeysFilePath = getUserDotKeysFilePath(assoc);
-                dotApplicationsFilePath = getUserDotApplicationsFilePath(assoc);
-             }
-             
-            // Create and write .mime file.
-            writeDotMimeFile(assoc, dotMimeFilePath);
-
-            // Create and write .keys file.
-            writeDotKeysFile(assoc, dotKeysFilePath);
-            
-            // Create and write .applications file.
-            writeDotApplicationsFile(assoc, dotApplicationsFilePath);
-        } catch (IOException e) {
-            // If there are errors, try to delete all the created mime files.
-            if (dotMimeFilePath != null ) {
-                (new File(dotMimeFilePath)).delete();
             }
-            if (dotKeysFilePath != null) {
-                (new File(dotKeysFilePath)).delete();
+
+            // mime file path -> new content, in the order of the first entry.
+            Map contents = new LinkedHashMap();
+            Iterator iter = assocs.iterator();
+            while (iter.hasNext()) {
+                Association assoc = (Association) iter.next();
+                if (level == SYSTEM_LEVEL) {
+                    renderDotMimeEntry(assoc, getContent(contents, getSystemDotMimeFilePath(assoc)));
+                    renderDotKeysEntry(assoc, getContent(contents, getSystemDotKeysFilePath(assoc)));
+                    renderDotApplicationsEntry(assoc, 
+                            getContent(contents, getSystemDotApplicationsFilePath(assoc)));
+                } else {
+                    renderDotMimeEntry(assoc, getContent(contents, getUserDotMimeFilePath(assoc)));
+                    renderDotKeysEntry(assoc, getContent(contents, getUserDotKeysFilePath(assoc)));
+                    renderDotApplicationsEntry(assoc, 
+                            getContent(contents, getUserDotApplicationsFilePath(assoc)));
+                }
             }
-            if (dotApplicationsFilePath != null) {
-                (new File(dotApplicationsFilePath)).delete();
+
+            // The new entries are appended to the existing content.
+            int count = contents.size();
+            File[] files = new File[count];
+            String[] oldContents = new String[count];
+            String[] newContents = new String[count];
+            iter = contents.entrySet().iterator();
+            for (int i = 0; i < count; i++) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                files[i] = new File((String) entry.getKey());
+                oldContents[i] = readFile(files[i]);
+                newContents[i] = (oldContents[i] == null) ? entry.getValue().toString()
+                        : oldContents[i] + entry.getValue();
             }
-            
+
+            replaceFiles(files, oldContents, newContents);
+        } catch (IOException e) {
             throw new RegisterFailedException(e.getMessage());
+        } finally {
+            GnomeAssociationUtil.refresh();
         }
     }
+
+    private static StringBuffer getContent(Map contents, String filePath) {
+        StringBuffer buf = (StringBuffer) contents.get(filePath);
+        if (buf == null) {
+            buf = new StringBuffer();
+            contents.put(filePath, buf);
+        }
+        return buf;
+    }
   
     /**
      * Unregisters the given association in the specified level.
@@ -612,6 +661,8 @@ public class GnomeAppAssociationWriter implements AppAssociationWriter {
             (new File(dotMimeFilePath)).delete();
             (new File(dotKeysFilePath)).delete();
             (new File(dotApplicationsFilePath)).delete();                        
+
+            GnomeAssociationUtil.refresh();
         } catch (IOException e) {
             throw new RegisterFailedException(e.getMessage());
         }
@@ -20,14 +20,22 @@
 
 package org.jdesktop.jdic.filetypes.internal;
 
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.jdesktop.jdic.filetypes.Action;
 
 
 /**
  * Utility class for accessing the system association info for Gnome.
+ * <p>
+ * The file extensions of all the registered mime types are read once into an
+ * in-memory index, so that looking up a file extension doesn't scan the whole
+ * MIME database. The index is rebuilt after <code>refresh</code> is called,
+ * or once any of the MIME database directories changes.
  */
 public class GnomeAssociationUtil {
     /* Description and icon_filename keys used on GNOME desktop */
@@ -36,42 +44,109 @@ public class GnomeAssociationUtil {
     public final static String  GNOME_VFS_MIME_KEY_ICON_FILENAME
             = GnomeVfsWrapper.GNOME_VFS_MIME_DEFAULT_KEY_ICON_FILENAME;
 
+    // The MIME database directories, checked for changes: the old GNOME
+    // mime-info directories and the shared-mime-info ones.
+    private final static String[] MIME_DATABASE_DIRS = {
+        GnomeAppAssociationWriter.GNOME_SYSTEM_MIME_INFO_DIR,
+        GnomeAppAssociationWriter.GNOME_USER_MIME_INFO_DIR,
+        "/usr/share/mime/",
+        System.getProperty("user.home") + "/.local/share/mime/"
+    };
+
+    // Don't check the MIME database directories more often than this, in millisecond.
+    private final static long CHECK_INTERVAL = 2000;
+
+    // file extension -> mime type, the first registered mime type wins.
+    private static Map extToMimeType = null;
+
+    // mime type -> String[] of its file extensions, for all registered mime types.
+    private static Map mimeTypeToExts = null;
+
+    // Modification stamp of the MIME database when the index was built.
+    private static long databaseStamp = 0;
+
+    private static long lastCheckTime = 0;
+
     /**
      * Suppress default constructor for noninstantiability.
      */
     private GnomeAssociationUtil() {}
-  
+
     /**
-     * Returns the mime type associated with the given file extension.
-     * If the file extension doesn't exist in the MIME database, no mime type is returned.
-     *
+     * Discards the file extension index, which is rebuilt from the MIME database
+     * by the next lookup. 
      */
-    public static String getMimeTypeByFileExt(String fileExt) {
-        String resultMimeType = null;
-        String[] allMimeTypes = GnomeVfsWrapper.gnome_vfs_get_registered_mime_types();
+    public static synchronized void refresh() {
+        extToMimeType = null;
+        mimeTypeToExts = null;
+    }
 
-        if (allMimeTypes == null) {
-            return null;
-        } 
+    /**
+     * Builds the file extension index if it's not built yet, or if the MIME 
+     * database changed since it was built.
+     */
+    private static synchronized void checkIndex() {
+        long now = System.currentTimeMillis();
+        if (extToMimeType != null && now - lastCheckTime < CHECK_INTERVAL) {
+            return;
+        }
+        lastCheckTime = now;
 
-        for (int i = 0; i < allMimeTypes.length; i++) {
-            String curMimeType = allMimeTypes[i];
-            String[] fileExtensions = GnomeVfsWrapper.gnome_vfs_mime_get_extensions_list(curMimeType);
+        long stamp = getDatabaseStamp();
+        if (extToMimeType != null && stamp == databaseStamp) {
+            return;
+        }
 
-            if (fileExtensions != null) {
-                for (int j = 0; j < fileExtensions.length; j++) {
-                    if (fileExtensions[j].equals(fileExt)) {
-                        resultMimeType = allMimeTypes[i];
-                        break;
+        Map newExtToMimeType = new HashMap();
+        Map newMimeTypeToExts = new HashMap();
+        String[] allMimeTypes = GnomeVfsWrapper.gnome_vfs_get_registered_mime_types();
+        if (allMimeTypes != null) {
+            for (int i = 0; i < allMimeTypes.length; i++) {
+                String[] fileExtensions = GnomeVfsWrapper.gnome_vfs_mime_get_extensions_list(allMimeTypes[i]);
+                newMimeTypeToExts.put(allMimeTypes[i], fileExtensions);
+                if (fileExtensions != null) {
+                    for (int j = 0; j < fileExtensions.length; j++) {
+                        if (!newExtToMimeType.containsKey(fileExtensions[j])) {
+                            newExtToMimeType.put(fileExtensions[j], allMimeTypes[i]);
+                        }
                     }
                 }
             }
-            if (resultMimeType != null) { 
-                break;
-            }
         }
 
-        return resultMimeType;
+        extToMimeType = newExtToMimeType;
+        mimeTypeToExts = newMimeTypeToExts;
+        databaseStamp = stamp;
+    }
+
+    /**
+     * Returns a stamp which changes when a file of the MIME database directories 
+     * is added, removed or modified.
+     */
+    static long getDatabaseStamp() {
+        long stamp = 0;
+        for (int i = 0; i < MIME_DATABASE_DIRS.length; i++) {
+            File dir = new File(MIME_DATABASE_DIRS[i]);
+            stamp = stamp * 31 + dir.lastModified();
+
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (int j = 0; j < files.length; j++) {
+                    stamp = stamp * 31 + files[j].lastModified();
+                }
+            }
+        }
+        return stamp;
+    }
+  
+    /**
+     * Returns the mime type associated with the given file extension.
+     * If the file extension doesn't exist in the MIME database, no mime type is returned.
+     *
+     */
+    public static synchronized String getMimeTypeByFileExt(String fileExt) {
+        checkIndex();
+        return (String) extToMimeType.get(fileExt);
     }
   
     /**
@@ -80,7 +155,19 @@ public class GnomeAssociationUtil {
      * @param mimeType Given mime type
      */
     public static List getFileExtListByMimeType(String mimeType) {
-        String[] fileExtensions = GnomeVfsWrapper.gnome_vfs_mime_get_extensions_list(mimeType);
+        String[] fileExtensions = null;
+        boolean isRegistered;
+        synchronized (GnomeAssociationUtil.class) {
+            checkIndex();
+            isRegistered = mimeTypeToExts.containsKey(mimeType);
+            if (isRegistered) {
+                fileExtensions = (String[]) mimeTypeToExts.get(mimeType);
+            }
+        }
+        if (!isRegistered) {
+            // Not a registered mime type, such as an alias, ask GnomeVFS directly.
+            fileExtensions = GnomeVfsWrapper.gnome_vfs_mime_get_extensions_list(mimeType);
+        }
 
         if (fileExtensions == null) {
             return null;
@@ -175,24 +262,11 @@ public class GnomeAssociationUtil {
     /**
      * Returns true if the given mime type exists in the GnomeVFS MIME database.
      */
-    public static boolean isMimeTypeExist(String mimeType) {
+    public static synchronized boolean isMimeTypeExist(String mimeType) {
         // Check that the mime type is known and not deleted.
-        boolean isMimeTypeExist = false;
-        String[] allMimeTypes = GnomeVfsWrapper.gnome_vfs_get_registered_mime_types();
-
-        if (allMimeTypes == null) {
-            return false;
-        }
-
-        for (int i = 0; i < allMimeTypes.length; i++) {
-            if (mimeType.equals(allMimeTypes[i])) {
-                isMimeTypeExist = true;
-                break;
-            }
-        }
-
-        return isMimeTypeExist;
-}               
+        checkIndex();
+        return mimeTypeToExts.containsKey(mimeType);
+    }
 
     /**
      * Returns true if the given file extension exists in the GnomeVFS MIME database.
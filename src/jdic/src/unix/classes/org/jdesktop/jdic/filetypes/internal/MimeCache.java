@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reader of the <code>mime.cache</code> file generated by update-mime-database,
+ * as described by the freedesktop.org shared-mime-info specification.
+ * <p>
+ * The file is memory-mapped and searched in place: the literal and alias lists
+ * are searched by binary search, the file name suffixes by walking the reverse
+ * suffix tree, and nothing is copied to the Java heap except the returned
+ * mime type names. All the numbers in the file are big-endian, and the strings
+ * are UTF-8.
+ */
+public class MimeCache {
+    // Offsets of the list offsets in the header.
+    private final static int ALIAS_LIST = 4;
+    private final static int LITERAL_LIST = 12;
+    private final static int REVERSE_SUFFIX_TREE = 16;
+    private final static int GLOB_LIST = 20;
+    private final static int MAGIC_LIST = 24;
+    private final static int ICONS_LIST = 32;
+    private final static int GENERIC_ICONS_LIST = 36;
+
+    // Size of the header of version 1.1, the oldest supported one.
+    private final static int HEADER_SIZE = 40;
+
+    // The glob is case sensitive if this flag is set in its weight field.
+    private final static int CASE_SENSITIVE = 0x100;
+
+    private final static int WEIGHT_MASK = 0xff;
+
+    private File file;
+    private ByteBuffer buffer;
+    private long lastModified;
+
+    /**
+     * Maps the given cache file.
+     *
+     * @throws IOException if the file can't be read or is not a supported cache.
+     */
+    public MimeCache(File file) throws IOException {
+        this.file = file;
+        lastModified = file.lastModified();
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getShort(0) != 1) {
+            throw new IOException("Unsupported mime cache file: " + file);
+        }
+    }
+
+    /**
+     * Returns true if the cache file was changed since it was mapped.
+     */
+    public boolean isStale() {
+        return file.lastModified() != lastModified;
+    }
+
+    /**
+     * Returns the mime type the given alias stands for, or null if it's not an
+     * alias.
+     */
+    public String resolveAlias(String alias) {
+        int list = buffer.getInt(ALIAS_LIST);
+        int entry = binarySearch(list + 4, buffer.getInt(list), 8, alias);
+        return (entry < 0) ? null : getString(buffer.getInt(entry + 4));
+    }
+
+    /**
+     * Returns the icon name set for the given mime type, or null.
+     */
+    public String getIcon(String mimeType) {
+        return lookupIcon(ICONS_LIST, mimeType);
+    }
+
+    /**
+     * Returns the generic icon name set for the given mime type, or null.
+     */
+    public String getGenericIcon(String mimeType) {
+        return lookupIcon(GENERIC_ICONS_LIST, mimeType);
+    }
+
+    private String lookupIcon(int header, String mimeType) {
+        int list = buffer.getInt(header);
+        if (list == 0) {
+            return null;
+        }
+        int entry = binarySearch(list + 4, buffer.getInt(list), 8, mimeType);
+        return (entry < 0) ? null : getString(buffer.getInt(entry + 4));
+    }
+
+    /**
+     * Adds the mime types matching the given file name to the given matches.
+     * The whole file name is matched against the literals first, then its
+     * suffixes against the reverse suffix tree, and the complex globs last.
+     *
+     * @param fileName the file name, without directory.
+     * @param matches the matches found so far.
+     */
+    public void lookupFileName(String fileName, SharedMimeDatabase.Matches matches) {
+        // The globs are stored as given for the case sensitive ones, and in
+        // lower case for the others. So the name as given is looked up first,
+        // matching either, then the lower case name for the latter.
+        String lowerName = fileName.toLowerCase();
+
+        int list = buffer.getInt(LITERAL_LIST);
+        int count = buffer.getInt(list);
+        if (lookupLiteral(list, count, fileName, true, matches)
+            || lookupLiteral(list, count, lowerName, false, matches)) {
+            return;
+        }
+
+        if (lookupSuffix(fileName, lowerName, matches)) {
+            return;
+        }
+
+        list = buffer.getInt(GLOB_LIST);
+        count = buffer.getInt(list);
+        for (int i = 0; i < count; i++) {
+            int entry = list + 4 + i * 12;
+            int flags = buffer.getInt(entry + 8);
+            String name = ((flags & CASE_SENSITIVE) != 0) ? fileName : lowerName;
+            if (MimeGlobs.matchGlob(getString(buffer.getInt(entry)), name)) {
+                matches.add(getString(buffer.getInt(entry + 4)), flags & WEIGHT_MASK);
+            }
+        }
+    }
+
+    /**
+     * Adds the mime types of the given file extension, without leading '.', to
+     * the given matches. Only the suffix globs are checked.
+     */
+    public void lookupExtension(String fileExt, SharedMimeDatabase.Matches matches) {
+        lookupSuffix("." + fileExt, "." + fileExt.toLowerCase(), matches);
+    }
+
+    private boolean lookupSuffix(String fileName, String lowerName,
+                                 SharedMimeDatabase.Matches matches) {
+        int list = buffer.getInt(REVERSE_SUFFIX_TREE);
+        int before = matches.size();
+        lookupSuffix(buffer.getInt(list), buffer.getInt(list + 4), fileName,
+                     fileName.length() - 1, true, matches);
+        if (matches.size() == before) {
+            lookupSuffix(buffer.getInt(list), buffer.getInt(list + 4), lowerName,
+                         lowerName.length() - 1, false, matches);
+        }
+        return matches.size() > before;
+    }
+
+    private boolean lookupLiteral(int list, int count, String name, boolean caseSensitive,
+                                  SharedMimeDatabase.Matches matches) {
+        int entry = binarySearch(list + 4, count, 12, name);
+        if (entry < 0) {
+            return false;
+        }
+        int flags = buffer.getInt(entry + 8);
+        if (!caseSensitive && (flags & CASE_SENSITIVE) != 0) {
+            return false;
+        }
+        matches.add(getString(buffer.getInt(entry + 4)), flags & WEIGHT_MASK);
+        return true;
+    }
+
+    /*
+     * Walks the reverse suffix tree from the given nodes with the characters of
+     * the file name, from the last one backwards. A leaf, with character 0,
+     * holds a mime type of the suffix matched so far.
+     */
+    private void lookupSuffix(int nodeCount, int firstNode, String fileName,
+                              int index, boolean caseSensitive,
+                              SharedMimeDatabase.Matches matches) {
+        if (index < 0) {
+            return;
+        }
+        char c = fileName.charAt(index);
+
+        // The nodes are sorted by character, the leaves first.
+        int low = 0;
+        int high = nodeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int node = firstNode + mid * 12;
+            int nodeChar = buffer.getInt(node);
+            if (nodeChar < c) {
+                low = mid + 1;
+            } else if (nodeChar > c) {
+                high = mid - 1;
+            } else {
+                matchSuffixNode(node, fileName, index, caseSensitive, matches);
+                return;
+            }
+        }
+    }
+
+    private void matchSuffixNode(int node, String fileName, int index, boolean caseSensitive,
+                                 SharedMimeDatabase.Matches matches) {
+        int childCount = buffer.getInt(node + 4);
+        int firstChild = buffer.getInt(node + 8);
+
+        // Longer suffixes win, so look further first.
+        int before = matches.size();
+        lookupSuffix(childCount, firstChild, fileName, index - 1, caseSensitive, matches);
+        if (matches.size() > before) {
+            return;
+        }
+
+        // Then the leaves of this node, which end a suffix.
+        for (int i = 0; i < childCount; i++) {
+            int leaf = firstChild + i * 12;
+            if (buffer.getInt(leaf) != 0) {
+                break;
+            }
+            int flags = buffer.getInt(leaf + 8);
+            if (!caseSensitive && (flags & CASE_SENSITIVE) != 0) {
+                continue;
+            }
+            matches.add(getString(buffer.getInt(leaf + 4)), flags & WEIGHT_MASK);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a file needed to check all the magic rules.
+     */
+    public int getMaxExtent() {
+        return buffer.getInt(buffer.getInt(MAGIC_LIST) + 4);
+    }
+
+    /**
+     * Adds the mime type of the highest priority magic rule matching the given
+     * data to the given matches, with the priority as weight.
+     *
+     * @param data the beginning of the file.
+     * @param length the number of bytes in <code>data</code>.
+     * @param matches the matches found so far.
+     */
+    public void lookupMagic(byte[] data, int length, SharedMimeDatabase.Matches matches) {
+        int list = buffer.getInt(MAGIC_LIST);
+        int count = buffer.getInt(list);
+        int first = buffer.getInt(list + 8);
+
+        // The matches are sorted by decreasing priority.
+        for (int i = 0; i < count; i++) {
+            int match = first + i * 16;
+            if (matchletsMatch(buffer.getInt(match + 8), buffer.getInt(match + 12),
+                               data, length)) {
+                matches.add(getString(buffer.getInt(match + 4)), buffer.getInt(match));
+                return;
+            }
+        }
+    }
+
+    private boolean matchletsMatch(int count, int first, byte[] data, int length) {
+        for (int i = 0; i < count; i++) {
+            int matchlet = first + i * 32;
+            if (matchletMatches(matchlet, data, length)) {
+                int childCount = buffer.getInt(matchlet + 24);
+                if (childCount == 0
+                    || matchletsMatch(childCount, buffer.getInt(matchlet + 28), data, length)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchletMatches(int matchlet, byte[] data, int length) {
+        int rangeStart = buffer.getInt(matchlet);
+        int rangeLength = buffer.getInt(matchlet + 4);
+        int valueLength = buffer.getInt(matchlet + 12);
+        int value = buffer.getInt(matchlet + 16);
+        int mask = buffer.getInt(matchlet + 20);
+
+        for (int offset = rangeStart; offset < rangeStart + rangeLength; offset++) {
+            if (offset + valueLength > length) {
+                return false;
+            }
+            if (valueMatches(data, offset, value, mask, valueLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean valueMatches(byte[] data, int offset, int value, int mask,
+                                 int valueLength) {
+        for (int j = 0; j < valueLength; j++) {
+            byte expected = buffer.get(value + j);
+            byte actual = data[offset + j];
+            if (mask != 0) {
+                byte m = buffer.get(mask + j);
+                expected &= m;
+                actual &= m;
+            }
+            if (expected != actual) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Binary searches a list of entries starting with a string offset, sorted
+     * by that string, and returns the offset of the matching entry or -1.
+     */
+    private int binarySearch(int first, int count, int entrySize, String key) {
+        byte[] keyBytes = encode(key);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = first + mid * entrySize;
+            int cmp = compareString(buffer.getInt(entry), keyBytes);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Compares the nul-terminated string at the given offset with the UTF-8
+     * bytes of the key, as strcmp does, without decoding it.
+     */
+    private int compareString(int offset, byte[] key) {
+        for (int i = 0; ; i++) {
+            int b = buffer.get(offset + i) & 0xff;
+            int c = (i < key.length) ? (key[i] & 0xff) : 0;
+            if (b != c || b == 0) {
+                return b - c;
+            }
+        }
+    }
+
+    /*
+     * Returns the nul-terminated UTF-8 string at the given offset.
+     */
+    private String getString(int offset) {
+        int end = offset;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - offset];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    private static byte[] encode(String key) {
+        try {
+            return key.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+}
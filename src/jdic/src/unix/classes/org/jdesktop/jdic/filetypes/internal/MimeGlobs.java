@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Reader of the <code>globs2</code> file of a shared-mime-info directory, or of
+ * the older <code>globs</code> file if there is no <code>globs2</code> file.
+ * <p>
+ * The globs are kept in hash maps: the literal file names, and the file
+ * extensions of the simple "*.ext" globs, which are most of them. Only the
+ * remaining globs are matched one by one. The file extensions of each mime
+ * type are kept too, which the <code>mime.cache</code> file doesn't provide.
+ */
+public class MimeGlobs {
+    // The default weight of the globs file entries.
+    private final static int DEFAULT_WEIGHT = 50;
+
+    private final static String CASE_SENSITIVE = "cs";
+
+    // file extension (lower case unless case sensitive) -> List of Glob.
+    private Map extensions = new HashMap();
+
+    // literal file name -> List of Glob.
+    private Map literals = new HashMap();
+
+    // the remaining globs.
+    private List globs = new ArrayList();
+
+    // mime type -> List of its file extensions.
+    private Map mimeTypeExtensions = new HashMap();
+
+    private static class Glob {
+        String mimeType;
+        String pattern;
+        int weight;
+        boolean caseSensitive;
+    }
+
+    /**
+     * Reads the globs of the given shared-mime-info directory.
+     *
+     * @throws IOException if neither globs2 nor globs can be read.
+     */
+    public MimeGlobs(File mimeDir) throws IOException {
+        File file = new File(mimeDir, "globs2");
+        boolean hasWeights = file.exists();
+        if (!hasWeights) {
+            file = new File(mimeDir, "globs");
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                Glob glob = parseLine(line, hasWeights);
+                if (glob != null) {
+                    addGlob(glob);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /*
+     * Parses a "weight:mimetype:glob[:flags]" line of globs2, or a
+     * "mimetype:glob" line of globs.
+     */
+    private static Glob parseLine(String line, boolean hasWeights) {
+        Glob glob = new Glob();
+        glob.weight = DEFAULT_WEIGHT;
+
+        int pos = 0;
+        if (hasWeights) {
+            pos = line.indexOf(':');
+            if (pos < 0) {
+                return null;
+            }
+            try {
+                glob.weight = Integer.parseInt(line.substring(0, pos));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            pos++;
+        }
+
+        int end = line.indexOf(':', pos);
+        if (end < 0) {
+            return null;
+        }
+        glob.mimeType = line.substring(pos, end);
+
+        // The glob may be followed by flags and other fields in globs2.
+        pos = end + 1;
+        end = hasWeights ? line.indexOf(':', pos) : -1;
+        if (end < 0) {
+            glob.pattern = line.substring(pos);
+        } else {
+            glob.pattern = line.substring(pos, end);
+            String flags = line.substring(end + 1);
+            glob.caseSensitive = (flags.equals(CASE_SENSITIVE)
+                                  || flags.startsWith(CASE_SENSITIVE + ",")
+                                  || flags.startsWith(CASE_SENSITIVE + ":"));
+        }
+        return glob;
+    }
+
+    private void addGlob(Glob glob) {
+        String pattern = glob.pattern;
+        if (!glob.caseSensitive) {
+            pattern = pattern.toLowerCase();
+        }
+
+        if (pattern.startsWith("*.") && !hasWildcards(pattern.substring(2))) {
+            String ext = pattern.substring(2);
+            add(extensions, ext, glob);
+
+            List exts = (List) mimeTypeExtensions.get(glob.mimeType);
+            if (exts == null) {
+                exts = new ArrayList();
+                mimeTypeExtensions.put(glob.mimeType, exts);
+            }
+            if (!exts.contains(glob.pattern.substring(2))) {
+                exts.add(glob.pattern.substring(2));
+            }
+        } else if (!hasWildcards(pattern)) {
+            add(literals, pattern, glob);
+        } else {
+            glob.pattern = pattern;
+            globs.add(glob);
+        }
+    }
+
+    private static void add(Map map, String key, Glob glob) {
+        List list = (List) map.get(key);
+        if (list == null) {
+            list = new ArrayList(1);
+            map.put(key, list);
+        }
+        list.add(glob);
+    }
+
+    private static boolean hasWildcards(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0
+               || pattern.indexOf('[') >= 0;
+    }
+
+    /**
+     * Returns the file extensions, without leading '.', of the given mime type,
+     * or null if it has none.
+     */
+    public List getExtensions(String mimeType) {
+        return (List) mimeTypeExtensions.get(mimeType);
+    }
+
+    /**
+     * Adds the mime types matching the given file name to the given matches.
+     * The literals are checked first, then the file extensions from the longest
+     * one, and the remaining globs last. A case sensitive glob wins over the
+     * others.
+     *
+     * @param fileName the file name, without directory.
+     * @param matches the matches found so far.
+     */
+    public void lookupFileName(String fileName, SharedMimeDatabase.Matches matches) {
+        String lowerName = fileName.toLowerCase();
+        if (addMatches((List) literals.get(fileName), true, matches)
+            || addMatches((List) literals.get(lowerName), false, matches)) {
+            return;
+        }
+
+        int pos = fileName.indexOf('.');
+        while (pos >= 0) {
+            if (lookupExtension(fileName.substring(pos + 1), lowerName.substring(pos + 1),
+                                matches)) {
+                return;
+            }
+            pos = fileName.indexOf('.', pos + 1);
+        }
+
+        for (int i = 0; i < globs.size(); i++) {
+            Glob glob = (Glob) globs.get(i);
+            if (matchGlob(glob.pattern, glob.caseSensitive ? fileName : lowerName)) {
+                matches.add(glob.mimeType, glob.weight);
+            }
+        }
+    }
+
+    /**
+     * Adds the mime types of the given file extension, without leading '.', to
+     * the given matches. Only the "*.ext" globs are checked.
+     */
+    public void lookupExtension(String fileExt, SharedMimeDatabase.Matches matches) {
+        lookupExtension(fileExt, fileExt.toLowerCase(), matches);
+    }
+
+    private boolean lookupExtension(String fileExt, String lowerExt,
+                                    SharedMimeDatabase.Matches matches) {
+        return addMatches((List) extensions.get(fileExt), true, matches)
+               || addMatches((List) extensions.get(lowerExt), false, matches);
+    }
+
+    /*
+     * Adds the globs of the given list, which are case sensitive or not.
+     */
+    private static boolean addMatches(List list, boolean caseSensitive,
+                                      SharedMimeDatabase.Matches matches) {
+        boolean found = false;
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                Glob glob = (Glob) list.get(i);
+                if (glob.caseSensitive == caseSensitive) {
+                    matches.add(glob.mimeType, glob.weight);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns true if the given name matches the given glob pattern, which may
+     * contain the '*', '?' and '[...]' wildcards as for fnmatch(3).
+     */
+    public static boolean matchGlob(String pattern, String name) {
+        return matchGlob(pattern, 0, name, 0);
+    }
+
+    private static boolean matchGlob(String pattern, int p, String name, int n) {
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            if (c == '*') {
+                // Skip the consecutive stars, then try each possible tail.
+                while (p < pattern.length() && pattern.charAt(p) == '*') {
+                    p++;
+                }
+                if (p == pattern.length()) {
+                    return true;
+                }
+                for (int i = n; i < name.length(); i++) {
+                    if (matchGlob(pattern, p, name, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            if (n >= name.length()) {
+                return false;
+            }
+            if (c == '?') {
+                p++;
+            } else if (c == '[') {
+                int end = pattern.indexOf(']', p + 2);
+                if (end < 0) {
+                    // Not a bracket expression, match it literally.
+                    if (name.charAt(n) != c) {
+                        return false;
+                    }
+                    p++;
+                } else {
+                    if (!matchBracket(pattern, p + 1, end, name.charAt(n))) {
+                        return false;
+                    }
+                    p = end + 1;
+                }
+            } else {
+                if (name.charAt(n) != c) {
+                    return false;
+                }
+                p++;
+            }
+            n++;
+        }
+        return n == name.length();
+    }
+
+    private static boolean matchBracket(String pattern, int start, int end, char c) {
+        boolean negate = false;
+        if (pattern.charAt(start) == '!' || pattern.charAt(start) == '^') {
+            negate = true;
+            start++;
+        }
+        boolean found = false;
+        for (int i = start; i < end; i++) {
+            char low = pattern.charAt(i);
+            char high = low;
+            if (i + 2 < end && pattern.charAt(i + 1) == '-') {
+                high = pattern.charAt(i + 2);
+                i += 2;
+            }
+            if (c >= low && c <= high) {
+                found = true;
+            }
+        }
+        return found != negate;
+    }
+}
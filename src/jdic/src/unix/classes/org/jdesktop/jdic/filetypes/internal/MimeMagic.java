@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reader of the binary <code>magic</code> file of a shared-mime-info directory,
+ * used when there is no <code>mime.cache</code> file. Its format is:
+ * <pre>
+ * MIME-Magic\0\n
+ * [priority:mime/type]\n
+ * [indent]&gt;start-offset=value-length value[&amp;mask][~word-size][+range-length]\n
+ * ...
+ * </pre>
+ * where the value length is a big-endian 16-bit number, and a rule with a
+ * larger indent than the previous one must match too for the previous one to
+ * match.
+ */
+public class MimeMagic {
+    private final static String HEADER = "MIME-Magic\0\n";
+
+    // The magic rules, sorted by decreasing priority.
+    private List sections = new ArrayList();
+
+    private int maxExtent = 0;
+
+    private static class Section {
+        int priority;
+        String mimeType;
+        List matchlets = new ArrayList();
+    }
+
+    private static class Matchlet {
+        int start;
+        int rangeLength = 1;
+        byte[] value;
+        byte[] mask;
+        List children = new ArrayList();
+    }
+
+    /**
+     * Reads the magic file of the given shared-mime-info directory.
+     *
+     * @throws IOException if the file can't be read or is not a magic file.
+     */
+    public MimeMagic(File mimeDir) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(new File(mimeDir, "magic")));
+        try {
+            for (int i = 0; i < HEADER.length(); i++) {
+                if (in.read() != HEADER.charAt(i)) {
+                    throw new IOException("Invalid magic file in " + mimeDir);
+                }
+            }
+
+            Section section = null;
+            // the last matchlet read at each indent.
+            List parents = new ArrayList();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '[') {
+                    section = readSectionHeader(in);
+                    parents.clear();
+                } else if (c == '\n') {
+                    continue;
+                } else if (section == null) {
+                    skipLine(in);
+                } else {
+                    int indent = 0;
+                    if (c >= '0' && c <= '9') {
+                        indent = readNumber(in, c - '0');
+                        c = in.read();
+                    }
+                    if (c != '>' || indent > parents.size()) {
+                        // An unknown or invalid line, ignore it.
+                        if (c != '\n') {
+                            skipLine(in);
+                        }
+                        continue;
+                    }
+                    Matchlet matchlet = readMatchlet(in);
+                    if (matchlet == null) {
+                        continue;
+                    }
+                    if (indent == 0) {
+                        section.matchlets.add(matchlet);
+                    } else {
+                        ((Matchlet) parents.get(indent - 1)).children.add(matchlet);
+                    }
+                    while (parents.size() > indent) {
+                        parents.remove(parents.size() - 1);
+                    }
+                    parents.add(matchlet);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private Section readSectionHeader(InputStream in) throws IOException {
+        StringBuffer buf = new StringBuffer();
+        int c;
+        while ((c = in.read()) >= 0 && c != ']') {
+            buf.append((char) c);
+        }
+        skipLine(in);
+
+        String header = buf.toString();
+        int pos = header.indexOf(':');
+        if (pos < 0) {
+            return null;
+        }
+        Section section = new Section();
+        try {
+            section.priority = Integer.parseInt(header.substring(0, pos));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        section.mimeType = header.substring(pos + 1);
+
+        // Keep the sections sorted by decreasing priority.
+        int i = sections.size();
+        while (i > 0 && ((Section) sections.get(i - 1)).priority < section.priority) {
+            i--;
+        }
+        sections.add(i, section);
+        return section;
+    }
+
+    /*
+     * Reads "start-offset=value-length value[&mask][~word-size][+range-length]\n",
+     * after the '>'.
+     */
+    private Matchlet readMatchlet(InputStream in) throws IOException {
+        Matchlet matchlet = new Matchlet();
+        matchlet.start = readNumber(in, 0);
+        if (in.read() != '=') {
+            skipLine(in);
+            return null;
+        }
+        int length = (in.read() << 8) | in.read();
+        matchlet.value = readBytes(in, length);
+
+        int c = in.read();
+        if (c == '&') {
+            matchlet.mask = readBytes(in, length);
+            c = in.read();
+        }
+        if (c == '~') {
+            // The word size is only relevant for byte swapping, which isn't
+            // done, as for the mime.cache file.
+            readNumber(in, 0);
+            c = in.read();
+        }
+        if (c == '+') {
+            matchlet.rangeLength = readNumber(in, 0);
+            c = in.read();
+        }
+        if (c != '\n') {
+            skipLine(in);
+        }
+
+        int extent = matchlet.start + matchlet.rangeLength - 1 + length;
+        if (extent > maxExtent) {
+            maxExtent = extent;
+        }
+        return matchlet;
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int pos = 0;
+        while (pos < length) {
+            int len = in.read(bytes, pos, length - pos);
+            if (len < 0) {
+                throw new IOException("Unexpected end of magic file");
+            }
+            pos += len;
+        }
+        return bytes;
+    }
+
+    /*
+     * Reads the digits of a decimal number, whose value so far is given, and
+     * leaves the character following them in the stream.
+     */
+    private static int readNumber(InputStream in, int value) throws IOException {
+        while (true) {
+            in.mark(1);
+            int c = in.read();
+            if (c < '0' || c > '9') {
+                in.reset();
+                return value;
+            }
+            value = value * 10 + (c - '0');
+        }
+    }
+
+    private static void skipLine(InputStream in) throws IOException {
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a file needed to check all the magic rules.
+     */
+    public int getMaxExtent() {
+        return maxExtent;
+    }
+
+    /**
+     * Adds the mime type of the highest priority magic rule matching the given
+     * data to the given matches, with the priority as weight.
+     *
+     * @param data the beginning of the file.
+     * @param length the number of bytes in <code>data</code>.
+     * @param matches the matches found so far.
+     */
+    public void lookupMagic(byte[] data, int length, SharedMimeDatabase.Matches matches) {
+        for (int i = 0; i < sections.size(); i++) {
+            Section section = (Section) sections.get(i);
+            if (matchletsMatch(section.matchlets, data, length)) {
+                matches.add(section.mimeType, section.priority);
+                return;
+            }
+        }
+    }
+
+    private static boolean matchletsMatch(List matchlets, byte[] data, int length) {
+        for (int i = 0; i < matchlets.size(); i++) {
+            Matchlet matchlet = (Matchlet) matchlets.get(i);
+            if (matchletMatches(matchlet, data, length)
+                && (matchlet.children.isEmpty()
+                    || matchletsMatch(matchlet.children, data, length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchletMatches(Matchlet matchlet, byte[] data, int length) {
+        byte[] value = matchlet.value;
+        for (int offset = matchlet.start; offset < matchlet.start + matchlet.rangeLength; offset++) {
+            if (offset + value.length > length) {
+                return false;
+            }
+            int j = 0;
+            while (j < value.length) {
+                byte m = (matchlet.mask == null) ? (byte) 0xff : matchlet.mask[j];
+                if ((value[j] & m) != (data[offset + j] & m)) {
+                    break;
+                }
+                j++;
+            }
+            if (j == value.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Finds the mime type of a file from its name and, if needed, from the magic
+ * numbers of its content, with the rules of a shared MIME-info database.
+ * <p>
+ * Only the beginning of the file needed by the magic rules is read, through a
+ * <code>FileChannel</code> for the local files, into a buffer reused by each
+ * thread.
+ */
+public class MimeSniffer {
+    private final static String DIRECTORY_MIME_TYPE = "inode/directory";
+    private final static String TEXT_MIME_TYPE = "text/plain";
+    private final static String BINARY_MIME_TYPE = "application/octet-stream";
+
+    // The minimum number of bytes read, to tell text from binary content.
+    private final static int MIN_READ_LENGTH = 256;
+
+    private SharedMimeDatabase database;
+
+    // The content buffer of each thread.
+    private ThreadLocal buffers = new ThreadLocal();
+
+    /**
+     * Creates a sniffer with the rules of the given database.
+     */
+    public MimeSniffer(SharedMimeDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Returns the mime type of the file the given URL points to, or null if
+     * its name doesn't match and it can't be read.
+     * <p>
+     * The file name is checked first. If it doesn't give a single mime type,
+     * the content is checked, and its mime type is used unless it contradicts
+     * the file name. Content without any magic match is reported as
+     * "text/plain" or "application/octet-stream".
+     */
+    public String getMimeType(URL url) {
+        File file = null;
+        String fileName;
+        if (url.getProtocol().equals("file")) {
+            file = toFile(url);
+            if (file.isDirectory()) {
+                return DIRECTORY_MIME_TYPE;
+            }
+            fileName = file.getName();
+        } else {
+            String path = url.getPath();
+            fileName = path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        List globTypes = null;
+        if (fileName.length() > 0) {
+            globTypes = database.lookupFileName(fileName).getMimeTypes();
+            if (globTypes.size() == 1) {
+                return (String) globTypes.get(0);
+            }
+        }
+
+        byte[] data = getBuffer();
+        int length = (file != null) ? readFile(file, data) : readURL(url, data);
+        if (length > 0) {
+            String magicType = database.lookupMagic(data, length);
+            if (magicType != null
+                && (globTypes == null || globTypes.isEmpty()
+                    || globTypes.contains(magicType))) {
+                return magicType;
+            }
+        }
+
+        if (globTypes != null && !globTypes.isEmpty()) {
+            return (String) globTypes.get(0);
+        }
+        if (length < 0) {
+            return null;
+        }
+        return isText(data, length) ? TEXT_MIME_TYPE : BINARY_MIME_TYPE;
+    }
+
+    /**
+     * Returns the mime types of the files the given URLs point to, found in
+     * parallel on a bounded number of threads.
+     *
+     * @param urls a collection of URLs.
+     * @return a map from each URL whose mime type is found to its mime type.
+     */
+    public Map getMimeTypes(Collection urls) {
+        return BulkLookup.run(urls, new BulkLookup.Lookup() {
+            public Object lookup(Object url) {
+                return getMimeType((URL) url);
+            }
+        });
+    }
+
+    /*
+     * Returns the file of the given file URL, with its %-escaped characters
+     * decoded. The URLs which aren't valid URIs, such as the ones File.toURL
+     * returns for the paths with spaces, are used as is.
+     */
+    private static File toFile(URL url) {
+        try {
+            return new File(new URI(url.toExternalForm()));
+        } catch (URISyntaxException e) {
+            return new File(url.getFile());
+        } catch (IllegalArgumentException e) {
+            // A URL with an authority, query or fragment.
+            return new File(url.getFile());
+        }
+    }
+
+    private byte[] getBuffer() {
+        int size = Math.max(database.getMaxExtent(), MIN_READ_LENGTH);
+        byte[] data = (byte[]) buffers.get();
+        if (data == null || data.length != size) {
+            data = new byte[size];
+            buffers.set(data);
+        }
+        return data;
+    }
+
+    /*
+     * Reads the beginning of the file into the given buffer, and returns the
+     * number of bytes read, or -1 if it can't be read.
+     */
+    private static int readFile(File file, byte[] data) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            }
+            return buffer.position();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /*
+     * Reads the beginning of the URL content into the given buffer, and
+     * returns the number of bytes read, or -1 if it can't be read.
+     */
+    private static int readURL(URL url, byte[] data) {
+        InputStream in = null;
+        try {
+            in = url.openStream();
+            int length = 0;
+            int len;
+            while (length < data.length
+                   && (len = in.read(data, length, data.length - length)) > 0) {
+                length += len;
+            }
+            return length;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns true if the data has no control characters but whitespace.
+     */
+    private static boolean isText(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            int c = data[i] & 0xff;
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+
+/**
+ * The freedesktop.org shared MIME-info database, read from the "mime"
+ * subdirectories of the XDG data directories without any native code.
+ * <p>
+ * Each directory is read from its <code>mime.cache</code> file if it exists,
+ * otherwise from its <code>globs2</code> and <code>magic</code> files. The
+ * directories are searched in order, the user one first, and a match of a
+ * higher weight or priority wins; for the same weight, the first directory
+ * wins.
+ * <p>
+ * The data directories are the ones of the <code>XDG_DATA_HOME</code> and
+ * <code>XDG_DATA_DIRS</code> environment variables, or their defaults
+ * <code>~/.local/share</code>, <code>/usr/local/share</code> and
+ * <code>/usr/share</code>. They could be set with the
+ * <code>org.jdesktop.jdic.filetypes.mimeDataDirs</code> system property,
+ * as a path list.
+ */
+public class SharedMimeDatabase {
+    /** System property overriding the XDG data directories. */
+    public final static String DATA_DIRS_PROPERTY = "org.jdesktop.jdic.filetypes.mimeDataDirs";
+
+    private MimeDirectory[] directories;
+
+    /**
+     * The best matches found by a lookup: the mime types of the highest weight
+     * (or magic priority) added, in the order they were added.
+     */
+    public static class Matches {
+        private int weight = -1;
+        private List mimeTypes = new ArrayList(2);
+        private int count = 0;
+
+        /**
+         * Adds a mime type matching with the given weight.
+         */
+        public void add(String mimeType, int weight) {
+            count++;
+            if (weight > this.weight) {
+                this.weight = weight;
+                mimeTypes.clear();
+            }
+            if (weight == this.weight && !mimeTypes.contains(mimeType)) {
+                mimeTypes.add(mimeType);
+            }
+        }
+
+        /**
+         * Returns how many times <code>add</code> was called.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Returns the mime types of the highest weight.
+         */
+        public List getMimeTypes() {
+            return mimeTypes;
+        }
+
+        /**
+         * Returns the first mime type of the highest weight, or null.
+         */
+        public String getFirst() {
+            return mimeTypes.isEmpty() ? null : (String) mimeTypes.get(0);
+        }
+    }
+
+    /*
+     * One "mime" directory. The text files are only read when needed.
+     */
+    private static class MimeDirectory {
+        File dir;
+        MimeCache cache;
+        long stamp;
+
+        MimeGlobs globs;
+        boolean globsRead;
+        MimeMagic magic;
+        boolean magicRead;
+        Map aliases;
+        Set types;
+
+        MimeDirectory(File dir) {
+            this.dir = dir;
+            stamp = getStamp(dir);
+            File cacheFile = new File(dir, "mime.cache");
+            if (cacheFile.exists()) {
+                try {
+                    cache = new MimeCache(cacheFile);
+                } catch (IOException e) {
+                    // Use the text files.
+                }
+            }
+        }
+
+        synchronized MimeGlobs getGlobs() {
+            if (!globsRead) {
+                globsRead = true;
+                try {
+                    globs = new MimeGlobs(dir);
+                } catch (IOException e) {
+                }
+            }
+            return globs;
+        }
+
+        synchronized MimeMagic getMagic() {
+            if (!magicRead) {
+                magicRead = true;
+                try {
+                    magic = new MimeMagic(dir);
+                } catch (IOException e) {
+                }
+            }
+            return magic;
+        }
+
+        synchronized String resolveAlias(String mimeType) {
+            if (cache != null) {
+                return cache.resolveAlias(mimeType);
+            }
+            if (aliases == null) {
+                aliases = new HashMap();
+                List lines = readLines(new File(dir, "aliases"));
+                for (int i = 0; i < lines.size(); i++) {
+                    String line = (String) lines.get(i);
+                    int pos = line.indexOf(' ');
+                    if (pos > 0) {
+                        aliases.put(line.substring(0, pos), line.substring(pos + 1));
+                    }
+                }
+            }
+            return (String) aliases.get(mimeType);
+        }
+
+        synchronized boolean hasType(String mimeType) {
+            if (types == null) {
+                types = new HashSet(readLines(new File(dir, "types")));
+            }
+            return types.contains(mimeType);
+        }
+    }
+
+    /**
+     * Creates a database of the "mime" subdirectories of the given data
+     * directories, in decreasing precedence.
+     */
+    public SharedMimeDatabase(File[] dataDirs) {
+        List list = new ArrayList();
+        for (int i = 0; i < dataDirs.length; i++) {
+            File dir = new File(dataDirs[i], "mime");
+            if (dir.isDirectory()) {
+                list.add(new MimeDirectory(dir));
+            }
+        }
+        directories = (MimeDirectory[]) list.toArray(new MimeDirectory[list.size()]);
+    }
+
+    /**
+     * Returns the XDG data directories, in decreasing precedence.
+     */
+    public static File[] getDefaultDataDirs() {
+        List dirs = new ArrayList();
+        String property = System.getProperty(DATA_DIRS_PROPERTY);
+        if (property != null) {
+            addPaths(dirs, property);
+        } else {
+            String dataHome = getenv("XDG_DATA_HOME");
+            if (dataHome == null || dataHome.length() == 0) {
+                dataHome = System.getProperty("user.home") + "/.local/share";
+            }
+            dirs.add(dataHome);
+
+            String dataDirs = getenv("XDG_DATA_DIRS");
+            if (dataDirs == null || dataDirs.length() == 0) {
+                dataDirs = "/usr/local/share:/usr/share";
+            }
+            addPaths(dirs, dataDirs);
+        }
+
+        File[] files = new File[dirs.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File((String) dirs.get(i));
+        }
+        return files;
+    }
+
+    private static void addPaths(List dirs, String paths) {
+        StringTokenizer tokens = new StringTokenizer(paths, File.pathSeparator);
+        while (tokens.hasMoreTokens()) {
+            dirs.add(tokens.nextToken());
+        }
+    }
+
+    /*
+     * System.getenv throws an Error before J2SE 5.0, return null then.
+     */
+    private static String getenv(String name) {
+        try {
+            return System.getenv(name);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if no "mime" directory was found.
+     */
+    public boolean isEmpty() {
+        return directories.length == 0;
+    }
+
+    /**
+     * Returns true if any of the directories changed since the database was
+     * created.
+     */
+    public boolean isStale() {
+        for (int i = 0; i < directories.length; i++) {
+            if (getStamp(directories[i].dir) != directories[i].stamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a stamp of the current state of the directories, which changes
+     * when update-mime-database rewrites any of them.
+     */
+    public long getStamp() {
+        long stamp = 0;
+        for (int i = 0; i < directories.length; i++) {
+            stamp = stamp * 31 + getStamp(directories[i].dir);
+        }
+        return stamp;
+    }
+
+    /*
+     * The files rewritten by update-mime-database.
+     */
+    private static long getStamp(File dir) {
+        return new File(dir, "mime.cache").lastModified() * 31
+               + new File(dir, "globs2").lastModified() * 17
+               + new File(dir, "magic").lastModified();
+    }
+
+    /**
+     * Returns the mime types matching the given file name.
+     *
+     * @param fileName the file name, without directory.
+     */
+    public Matches lookupFileName(String fileName) {
+        Matches matches = new Matches();
+        for (int i = 0; i < directories.length; i++) {
+            MimeDirectory dir = directories[i];
+            if (dir.cache != null) {
+                dir.cache.lookupFileName(fileName, matches);
+            } else if (dir.getGlobs() != null) {
+                dir.getGlobs().lookupFileName(fileName, matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the mime type of the file extension, without leading '.', or
+     * null.
+     */
+    public String getMimeTypeByFileExt(String fileExt) {
+        Matches matches = new Matches();
+        for (int i = 0; i < directories.length; i++) {
+            MimeDirectory dir = directories[i];
+            if (dir.cache != null) {
+                dir.cache.lookupExtension(fileExt, matches);
+            } else if (dir.getGlobs() != null) {
+                dir.getGlobs().lookupExtension(fileExt, matches);
+            }
+        }
+        return matches.getFirst();
+    }
+
+    /**
+     * Returns the number of bytes of a file needed to check all the magic rules.
+     */
+    public int getMaxExtent() {
+        int maxExtent = 0;
+        for (int i = 0; i < directories.length; i++) {
+            MimeDirectory dir = directories[i];
+            int extent = 0;
+            if (dir.cache != null) {
+                extent = dir.cache.getMaxExtent();
+            } else if (dir.getMagic() != null) {
+                extent = dir.getMagic().getMaxExtent();
+            }
+            maxExtent = Math.max(maxExtent, extent);
+        }
+        return maxExtent;
+    }
+
+    /**
+     * Returns the mime type of the highest priority magic rule matching the
+     * given data, or null.
+     *
+     * @param data the beginning of a file.
+     * @param length the number of bytes in <code>data</code>.
+     */
+    public String lookupMagic(byte[] data, int length) {
+        Matches matches = new Matches();
+        for (int i = 0; i < directories.length; i++) {
+            MimeDirectory dir = directories[i];
+            if (dir.cache != null) {
+                dir.cache.lookupMagic(data, length, matches);
+            } else if (dir.getMagic() != null) {
+                dir.getMagic().lookupMagic(data, length, matches);
+            }
+        }
+        return matches.getFirst();
+    }
+
+    /**
+     * Returns the file extensions, without leading '.', of the given mime type,
+     * or null if it has none.
+     */
+    public List getFileExtensions(String mimeType) {
+        List result = null;
+        String canonical = resolveAlias(mimeType);
+        for (int i = 0; i < directories.length; i++) {
+            MimeGlobs globs = directories[i].getGlobs();
+            List exts = (globs == null) ? null : globs.getExtensions(canonical);
+            if (exts != null) {
+                if (result == null) {
+                    result = new ArrayList();
+                }
+                for (int j = 0; j < exts.size(); j++) {
+                    if (!result.contains(exts.get(j))) {
+                        result.add(exts.get(j));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the mime type the given one is an alias of, or the given one.
+     */
+    public String resolveAlias(String mimeType) {
+        for (int i = 0; i < directories.length; i++) {
+            String canonical = directories[i].resolveAlias(mimeType);
+            if (canonical != null) {
+                return canonical;
+            }
+        }
+        return mimeType;
+    }
+
+    /**
+     * Returns true if the given mime type, or the one it's an alias of, is
+     * defined.
+     */
+    public boolean isMimeTypeExist(String mimeType) {
+        String canonical = resolveAlias(mimeType);
+        for (int i = 0; i < directories.length; i++) {
+            if (directories[i].hasType(canonical)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the icon name of the given mime type: the one set in the database,
+     * or the mime type with its '/' replaced by '-'.
+     */
+    public String getIconName(String mimeType) {
+        String canonical = resolveAlias(mimeType);
+        for (int i = 0; i < directories.length; i++) {
+            MimeCache cache = directories[i].cache;
+            String icon = (cache == null) ? null : cache.getIcon(canonical);
+            if (icon != null) {
+                return icon;
+            }
+        }
+        return canonical.replace('/', '-');
+    }
+
+    /**
+     * Returns the English comment of the given mime type, from its
+     * <code>&lt;mime-type&gt;.xml</code> file, or null.
+     */
+    public String getDescription(String mimeType) {
+        String canonical = resolveAlias(mimeType);
+        for (int i = 0; i < directories.length; i++) {
+            File file = new File(directories[i].dir, canonical + ".xml");
+            if (file.exists()) {
+                String comment = readComment(file);
+                if (comment != null) {
+                    return comment;
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Returns the content of the first <comment> element without xml:lang.
+     */
+    private static String readComment(File file) {
+        StringBuffer content = new StringBuffer();
+        List lines = readLines(file);
+        for (int i = 0; i < lines.size(); i++) {
+            content.append(lines.get(i)).append('\n');
+        }
+
+        int start = content.indexOf("<comment>");
+        if (start < 0) {
+            return null;
+        }
+        start += "<comment>".length();
+        int end = content.indexOf("</comment>", start);
+        if (end < 0) {
+            return null;
+        }
+        return decodeEntities(content.substring(start, end));
+    }
+
+    private static String decodeEntities(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        String[] entities = {"&lt;", "<", "&gt;", ">", "&quot;", "\"", "&apos;", "'", "&amp;", "&"};
+        for (int i = 0; i < entities.length; i += 2) {
+            int pos = 0;
+            while ((pos = text.indexOf(entities[i], pos)) >= 0) {
+                text = text.substring(0, pos) + entities[i + 1]
+                       + text.substring(pos + entities[i].length());
+                pos += entities[i + 1].length();
+            }
+        }
+        return text;
+    }
+
+    /*
+     * Reads the non-empty, non-comment lines of a UTF-8 text file, or none if
+     * it can't be read.
+     */
+    private static List readLines(File file) {
+        List lines = new ArrayList();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0 && line.charAt(0) != '#') {
+                        lines.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+        }
+        return lines;
+    }
+}
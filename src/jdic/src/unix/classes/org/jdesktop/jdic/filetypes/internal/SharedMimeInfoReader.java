@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+
+/**
+ * Concrete implementation of the AppAssociationReader class reading the
+ * freedesktop.org shared MIME-info database directly, without GnomeVFS.
+ * <p>
+ * The mime type of a URL is found from its file name first, and from its
+ * content only if the file name doesn't give a single mime type. The
+ * database is reloaded when <code>update-mime-database</code> rewrites it.
+ * The actions are not part of the shared MIME-info database, so none are
+ * returned.
+ */
+public class SharedMimeInfoReader implements AppAssociationReader {
+    // The minimum interval between two checks of the database files.
+    private final static long CHECK_INTERVAL = 2000;
+
+    private File[] dataDirs;
+    private SharedMimeDatabase database;
+    private long lastCheckTime;
+    private MimeSniffer sniffer;
+    private SharedMimeDatabase snifferDatabase;
+
+    /**
+     * Creates a reader of the database in the XDG data directories.
+     */
+    public SharedMimeInfoReader() {
+        this(SharedMimeDatabase.getDefaultDataDirs());
+    }
+
+    /**
+     * Creates a reader of the database in the "mime" subdirectories of the
+     * given data directories, in decreasing precedence.
+     */
+    public SharedMimeInfoReader(File[] dataDirs) {
+        this.dataDirs = dataDirs;
+        refresh();
+    }
+
+    /*
+     * Returns the database, reloaded first if its files changed.
+     */
+    private synchronized SharedMimeDatabase getDatabase() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckTime > CHECK_INTERVAL) {
+            lastCheckTime = now;
+            if (database.isStale()) {
+                database = new SharedMimeDatabase(dataDirs);
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Returns the description associated with the given mime type.
+     *
+     * @param mimeType Given mime type
+     * @return String
+     */
+    public String getDescriptionByMimeType(String mimeType) {
+        return getDatabase().getDescription(mimeType);
+    }
+
+    /**
+     * Returns the description associated with the given file extension.
+     *
+     * @param fileExt Given file extension
+     * @return String
+     */
+    public String getDescriptionByFileExt(String fileExt) {
+        String mimeType = getMimeTypeByFileExt(fileExt);
+        return (mimeType == null) ? null : getDescriptionByMimeType(mimeType);
+    }
+
+    /**
+     * Returns the mime type associated with the given URL, by checking its
+     * file name and, if needed, its content.
+     *
+     * @param url The specified URL
+     * @return String
+     */
+    public String getMimeTypeByURL(URL url) {
+        return getSniffer().getMimeType(url);
+    }
+
+    /**
+     * Returns the sniffer of the current database, which finds the mime types
+     * of URLs.
+     */
+    public synchronized MimeSniffer getSniffer() {
+        SharedMimeDatabase current = getDatabase();
+        if (sniffer == null || snifferDatabase != current) {
+            sniffer = new MimeSniffer(current);
+            snifferDatabase = current;
+        }
+        return sniffer;
+    }
+
+    /**
+     * Returns true if any shared MIME-info directory was found.
+     */
+    public boolean isDatabaseAvailable() {
+        return !getDatabase().isEmpty();
+    }
+
+    /**
+     * Returns the file extension list associated with the given mime type.
+     *
+     * @param mimeType Given mime type
+     * @return List of the file extensions, without leading '.'
+     */
+    public List getFileExtListByMimeType(String mimeType) {
+        return getDatabase().getFileExtensions(mimeType);
+    }
+
+    /**
+     * Returns the mime type associated with the given file extension.
+     *
+     * @param fileExt Given file extension
+     * @return String
+     */
+    public String getMimeTypeByFileExt(String fileExt) {
+        // Removes the leading '.' character from the file extension if exists.
+        fileExt = AppUtility.removeDotFromFileExtension(fileExt);
+        return getDatabase().getMimeTypeByFileExt(fileExt);
+    }
+
+    /**
+     * Returns the icon name associated with the given mime type, to be looked
+     * up in the icon theme.
+     *
+     * @param mimeType Given mime type.
+     * @return String
+     */
+    public String getIconFileNameByMimeType(String mimeType) {
+        return getDatabase().getIconName(mimeType);
+    }
+
+    /**
+     * Returns the icon name associated with the given file extension.
+     *
+     * @param fileExt Given file extension.
+     * @return String
+     */
+    public String getIconFileNameByFileExt(String fileExt) {
+        String mimeType = getMimeTypeByFileExt(fileExt);
+        return (mimeType == null) ? null : getIconFileNameByMimeType(mimeType);
+    }
+
+    /**
+     * Returns null, as the shared MIME-info database has no actions.
+     *
+     * @param mimeType the given mime type.
+     * @return null
+     */
+    public List getActionListByMimeType(String mimeType) {
+        return null;
+    }
+
+    /**
+     * Returns null, as the shared MIME-info database has no actions.
+     *
+     * @param fileExt the given file extension.
+     * @return null
+     */
+    public List getActionListByFileExt(String fileExt) {
+        return null;
+    }
+
+    /**
+     * Returns true if the mime type exists in the MIME database.
+     *
+     * @param mimeType given mimeType
+     * @return true if the mime type exists in the MIME database
+     */
+    public boolean isMimeTypeExist(String mimeType) {
+        return getDatabase().isMimeTypeExist(mimeType);
+    }
+
+    /**
+     * Returns true if the file extension exists in the MIME database.
+     *
+     * @param fileExt given file extension
+     * @return true if the file extension exists in the MIME database
+     */
+    public boolean isFileExtExist(String fileExt) {
+        return getMimeTypeByFileExt(fileExt) != null;
+    }
+
+    /**
+     * Reloads the MIME database.
+     */
+    public synchronized void refresh() {
+        database = new SharedMimeDatabase(dataDirs);
+        lastCheckTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns a stamp which changes when update-mime-database rewrites the
+     * MIME database.
+     */
+    public long getDatabaseStamp() {
+        return getDatabase().getStamp();
+    }
+
+    /**
+     * Returns true, as the MIME database is only read once loaded.
+     */
+    public boolean isThreadSafe() {
+        return true;
+    }
+}
@@ -666,6 +666,19 @@ HandleSocketMessage(gpointer data, gpointer user_data)
                 SendSocketMessage(instance, CEVENT_EXECUTESCRIPT, retStr);
         } 
         break;
+    case JEVENT_REQUEST:
+        {
+            // handle the wrapped message, its result is tagged with the 
+            // request id.
+            char *requestMsg = BeginRequest(instance, mMsgString);
+            NS_ASSERTION(requestMsg, "Wrong message format\n");
+            if (requestMsg) {
+                HandleSocketMessage(requestMsg, NULL);
+                EndRequest(instance);
+                delete [] requestMsg;
+            }
+        }
+        break;
     }
 }
 
@@ -678,6 +691,12 @@ mozembed_main(int argc, char **argv)
         if (strstr(argv[1], "-port=")) {
             int port = atoi(&(argv[1][6]));
             gMessenger.SetPort(port);
+            for (int i = 2; i < argc; i++) {
+                if (strcmp(argv[i], PROTOCOL_FLAG) == 0)
+                    gMessenger.SetBinaryRequested(1);
+                else if (strcmp(argv[i], CONNECT_FLAG) == 0)
+                    gMessenger.SetConnectBack(1);
+            }
             gMessenger.CreateServerSocket();
         }
         else if (strcmp(argv[1], "-test") == 0) {
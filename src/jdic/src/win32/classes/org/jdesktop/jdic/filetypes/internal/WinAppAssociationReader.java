@@ -162,4 +162,25 @@ public class WinAppAssociationReader implements AppAssociationReader {
     public boolean isFileExtExist(String fileExt) {
         return WinRegistryUtil.isFileExtExist(fileExt);
     }
+
+    /**
+     * Does nothing, as the association information is always read from the 
+     * Registry.
+     */
+    public void refresh() {
+    }
+
+    /**
+     * Returns 0, as the changes of the Registry aren't detected.
+     */
+    public long getDatabaseStamp() {
+        return 0;
+    }
+
+    /**
+     * Returns true, as the Registry functions are thread-safe.
+     */
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
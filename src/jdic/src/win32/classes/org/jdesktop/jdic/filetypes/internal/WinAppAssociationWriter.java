@@ -460,6 +460,34 @@ public class WinAppAssociationWriter implements AppAssociationWriter {
         } 
     }
 
+    /**
+     * Registers the given associations in the specified level, all of them or
+     * none. If an association fails to be registered, the ones registered 
+     * before are unregistered.
+     *
+     * @param assocs given list of associations (not null)
+     * @param regLevel given registry level
+     * @throws RegisterFailedException if the operation fails.
+     */
+    public void registerAssociations(List assocs, int regLevel) 
+        throws RegisterFailedException {
+        int registered = 0;
+        try {
+            for (; registered < assocs.size(); registered++) {
+                registerAssociation((Association) assocs.get(registered), regLevel);
+            }
+        } catch (RegisterFailedException e) {
+            for (int i = registered - 1; i >= 0; i--) {
+                try {
+                    unregisterAssociation((Association) assocs.get(i), regLevel);
+                } catch (RegisterFailedException unregisterException) {
+                    // Keep unregistering the other associations.
+                }
+            }
+            throw e;
+        }
+    }
+
     /**
      * Unregisters the given association in the specified level.
      *
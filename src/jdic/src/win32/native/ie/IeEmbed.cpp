@@ -463,6 +463,18 @@ void CommandProc(char* pInputChar)
         setContent(pBrowserWnd, mMsgString);
         break;
 
+    case JEVENT_REQUEST:
+        {
+            // handle the wrapped message, its result is tagged with the 
+            // request id. CommandProc deletes the wrapped message.
+            char *requestMsg = BeginRequest(instanceNum, mMsgString);
+            if (requestMsg) {
+                CommandProc(requestMsg);
+                EndRequest(instanceNum);
+            }
+            break;
+        }
+
     case JEVENT_GETURL:
         USES_CONVERSION;
         BSTR bsUrl;
@@ -525,6 +537,12 @@ extern "C" int WINAPI _tWinMain(HINSTANCE hInstance,
     if (strstr(lpCmdLine, "-port=")) {
         int port = atoi(&lpCmdLine[6]);
         gMessenger.SetPort(port);
+        if (strstr(lpCmdLine, PROTOCOL_FLAG)) {
+            gMessenger.SetBinaryRequested(1);
+        }
+        if (strstr(lpCmdLine, CONNECT_FLAG)) {
+            gMessenger.SetConnectBack(1);
+        }
         gMessenger.CreateServerSocket();
     }
     if (gMessenger.IsFailed()) {
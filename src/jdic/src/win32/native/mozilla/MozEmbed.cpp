@@ -136,6 +136,12 @@ public:
         else if (Substring(flag, 0, 4).Equals("port")) {
             gMessenger.SetPort(atoi(PromiseFlatCString(Substring(flag, 5, flag.Length() - 5)).get()));
         }
+        else if (flag.Equals(PROTOCOL_FLAG + 1)) {
+            gMessenger.SetBinaryRequested(TRUE);
+        }
+        else if (flag.Equals(CONNECT_FLAG + 1)) {
+            gMessenger.SetConnectBack(TRUE);
+        }
         // add new flag handlers here (please add a DoFoo() method below!)
     }
 
@@ -732,6 +738,19 @@ void MozEmbedApp::MessageReceived(const char * msg)
             SendSocketMessage(instanceNum, CEVENT_EXECUTESCRIPT, retStr);
         }
         break;
+    case JEVENT_REQUEST:
+        {
+        // handle the wrapped message, its result is tagged with the 
+        // request id.
+        char *requestMsg = BeginRequest(instanceNum, mMsgString);
+        ASSERT(requestMsg);
+        if (requestMsg) {
+            MessageReceived(requestMsg);
+            EndRequest(instanceNum);
+            delete [] requestMsg;
+        }
+        }
+        break;
     }
 }
 
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * A stand-in for the native browser, speaking the socket protocol of
+ * <code>MsgServer</code> over a loopback connection, so that the Java side
+ * of the message channel can be measured without a native browser or a
+ * display.
+ * <p>
+ * Like the native browser started with <code>MsgClient.CONNECT_FLAG</code>,
+ * it connects back to the port of a <code>MsgClient</code>. With binary
+ * framing, it acknowledges the <code>MsgClient.PROTOCOL_FLAG</code> right
+ * after connecting. Each message received is answered by one message:
+ * <ul>
+ * <li><code>TYPE_ECHO</code>: a short acknowledgement.</li>
+ * <li><code>TYPE_FETCH</code>: a message carrying as many characters as
+ * given by the decimal data of the request, sent at once.</li>
+ * <li><code>TYPE_FETCH_PIECES</code>: the same message, split into head,
+ * middle and end pieces of <code>PIECE_SIZE</code> characters like the
+ * native browser does in the delimiter mode.</li>
+ * </ul>
+ */
+public class LoopbackBrowserServer extends Thread {
+	/** Request types understood by the server. */
+	public static final int TYPE_ECHO = 9001;
+
+	public static final int TYPE_FETCH = 9002;
+
+	public static final int TYPE_FETCH_PIECES = 9003;
+
+	/** The type of the answers. */
+	public static final int TYPE_REPLY = 9100;
+
+	/** Size of the long message pieces, BUFFER_SIZE_HALF in MsgServer.h. */
+	public static final int PIECE_SIZE = 1024;
+
+	// must keep same with MsgClient and Message.h.
+	private static final String MSG_DELIMITER = "</html><body></html>";
+
+	private static final String PROTOCOL_ACK = "-1,3081,binary";
+
+	private static final String CHARSET = "UTF-8";
+
+	private static final byte[] DELIMITER_BYTES = ascii(MSG_DELIMITER);
+
+	private int port;
+
+	private boolean binary;
+
+	private Socket socket;
+
+	private DataOutputStream out;
+
+	// the last payload sent, kept while the same size is fetched.
+	private String payload = "";
+
+	// bytes received in the delimiter mode, not yet parsed.
+	private byte[] recvBuffer = new byte[8192];
+
+	private int recvLength = 0;
+
+	private int scanFrom = 0;
+
+	private IOException failure = null;
+
+	/**
+	 * Creates a server connecting to the given port of the local host.
+	 *
+	 * @param binary whether to acknowledge binary framing.
+	 */
+	public LoopbackBrowserServer(int port, boolean binary) {
+		super("LoopbackBrowserServer");
+		this.port = port;
+		this.binary = binary;
+		setDaemon(true);
+	}
+
+	/**
+	 * Returns a payload of the given number of characters.
+	 */
+	public static String createPayload(int size) {
+		StringBuffer buf = new StringBuffer(size);
+		for (int i = 0; i < size; i++) {
+			buf.append((char) ('a' + i % 26));
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the exception which stopped the server, or <code>null</code>.
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Closes the connection, which stops the server.
+	 */
+	public void close() {
+		try {
+			if (socket != null) {
+				socket.close();
+			}
+		} catch (IOException e) {
+		}
+	}
+
+	public void run() {
+		try {
+			socket = new Socket("127.0.0.1", port);
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(socket
+					.getOutputStream(), 65536));
+			InputStream in = socket.getInputStream();
+
+			if (binary) {
+				out.write((PROTOCOL_ACK + MSG_DELIMITER).getBytes(CHARSET));
+				out.flush();
+				serveFrames(new DataInputStream(in));
+			} else {
+				serveMessages(in);
+			}
+		} catch (IOException e) {
+			if (socket == null || !socket.isClosed()) {
+				failure = e;
+			}
+		}
+	}
+
+	private void serveFrames(DataInputStream in) throws IOException {
+		byte[] data = new byte[8192];
+		while (true) {
+			int instance = in.readInt();
+			int type = in.readInt();
+			int length = in.readInt();
+			if (length > data.length) {
+				data = new byte[Math.max(length, data.length * 2)];
+			}
+			in.readFully(data, 0, length);
+			reply(instance, type, new String(data, 0, length, CHARSET));
+		}
+	}
+
+	private void serveMessages(InputStream in) throws IOException {
+		while (true) {
+			if (recvLength == recvBuffer.length) {
+				byte[] newBuffer = new byte[recvBuffer.length * 2];
+				System.arraycopy(recvBuffer, 0, newBuffer, 0, recvLength);
+				recvBuffer = newBuffer;
+			}
+			int len = in.read(recvBuffer, recvLength, recvBuffer.length
+					- recvLength);
+			if (len < 0) {
+				return;
+			}
+			recvLength += len;
+
+			int start = 0;
+			int pos;
+			while ((pos = indexOfDelimiter(start)) >= 0) {
+				String msg = new String(recvBuffer, start, pos - start, CHARSET);
+				start = pos + DELIMITER_BYTES.length;
+				scanFrom = start;
+
+				int pos1 = msg.indexOf(',');
+				int pos2 = msg.indexOf(',', pos1 + 1);
+				reply(Integer.parseInt(msg.substring(0, pos1)), Integer
+						.parseInt(msg.substring(pos1 + 1, pos2)), msg
+						.substring(pos2 + 1));
+			}
+
+			// keep the unparsed bytes.
+			System.arraycopy(recvBuffer, start, recvBuffer, 0, recvLength
+					- start);
+			recvLength -= start;
+			scanFrom = Math.max(0, recvLength - DELIMITER_BYTES.length + 1);
+		}
+	}
+
+	private int indexOfDelimiter(int start) {
+		int last = recvLength - DELIMITER_BYTES.length;
+		for (int i = Math.max(start, scanFrom); i <= last; i++) {
+			int j = 0;
+			while (j < DELIMITER_BYTES.length
+					&& recvBuffer[i + j] == DELIMITER_BYTES[j]) {
+				j++;
+			}
+			if (j == DELIMITER_BYTES.length) {
+				return i;
+			}
+		}
+		scanFrom = Math.max(start, last + 1);
+		return -1;
+	}
+
+	private void reply(int instance, int type, String data) throws IOException {
+		if (type == TYPE_ECHO) {
+			send(instance, TYPE_REPLY, "ok", "");
+		} else if (type == TYPE_FETCH || type == TYPE_FETCH_PIECES) {
+			int size = Integer.parseInt(data.trim());
+			if (payload.length() != size) {
+				payload = createPayload(size);
+			}
+			if (type == TYPE_FETCH_PIECES && !binary) {
+				sendPieces(instance, TYPE_REPLY, payload);
+			} else {
+				send(instance, TYPE_REPLY, payload, "");
+			}
+		}
+		out.flush();
+	}
+
+	/*
+	 * Sends a message the way MsgServer::SendSocketMessage splits it in the
+	 * delimiter mode.
+	 */
+	private void sendPieces(int instance, int type, String data)
+			throws IOException {
+		if (data.length() <= PIECE_SIZE) {
+			send(instance, type, data, "");
+			return;
+		}
+		send(instance, type, data.substring(0, PIECE_SIZE), "_head");
+		int pos = PIECE_SIZE;
+		while (data.length() - pos > PIECE_SIZE) {
+			send(instance, type, data.substring(pos, pos + PIECE_SIZE),
+					"_middle");
+			pos += PIECE_SIZE;
+		}
+		send(instance, type, data.substring(pos), "_end");
+	}
+
+	private void send(int instance, int type, String data, String suffix)
+			throws IOException {
+		byte[] bytes = data.getBytes(CHARSET);
+		if (binary) {
+			out.writeInt(instance);
+			out.writeInt(type);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} else {
+			out.write((instance + "," + type + ",").getBytes(CHARSET));
+			out.write(bytes);
+			out.write(DELIMITER_BYTES);
+			out.write(ascii(suffix));
+		}
+	}
+
+	private static byte[] ascii(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) s.charAt(i);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.browser.internal;
+
+import java.lang.reflect.Method;
+
+import org.jdesktop.jdic.browser.BrowserEngineManager;
+import org.jdesktop.jdic.browser.IBrowserEngine;
+import org.jdesktop.jdic.browser.IWebBrowser;
+
+/**
+ * Measures the Java side of the native browser message channel against a
+ * {@link LoopbackBrowserServer}, for payloads of 100 bytes to 10 MB:
+ * <ul>
+ * <li>"send": <code>MsgClient.sendMessage</code> of the payload, answered by
+ * a short message.</li>
+ * <li>"receive": <code>MsgClient.getMessage</code> of the payload sent at
+ * once.</li>
+ * <li>"reassemble": <code>MsgClient.getMessage</code> of the payload sent in
+ * pieces, in the delimiter mode only.</li>
+ * <li>"parse": <code>NativeEventThread.parseMessageString</code> of the
+ * payload message, without any I/O.</li>
+ * </ul>
+ * The channel scenarios run with both the delimiter and the binary framing.
+ * Each scenario runs for a warm-up period and then for a measured period,
+ * and its operations per second, throughput and allocation rate of the
+ * measuring thread are printed. The allocation rate is only available when
+ * the running VM provides <code>com.sun.management.ThreadMXBean</code>.
+ * <p>
+ * The periods are set in milliseconds with the <code>bench.warmup</code>
+ * and <code>bench.time</code> system properties, and the payload sizes with
+ * a comma separated <code>bench.sizes</code> list. Run with the
+ * <code>runbenchmark</code> target of the build script.
+ */
+public class MsgClientBenchmark {
+	private static final int[] DEFAULT_SIZES = { 100, 10000, 1000000,
+			10000000 };
+
+	private static final String PROTOCOL_PROPERTY = "org.jdesktop.jdic.browser.protocol";
+
+	private static final String LOOPBACK_ENGINE = "Loopback";
+
+	private long warmupTime = Long.getLong("bench.warmup", 1000).longValue();
+
+	private long measureTime = Long.getLong("bench.time", 3000).longValue();
+
+	// the allocated bytes counter of the current thread, if available.
+	private Object threadBean = null;
+
+	private Method allocatedBytesMethod = null;
+
+	private Object threadId = null;
+
+	/**
+	 * A scenario operation.
+	 */
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = DEFAULT_SIZES;
+		String sizeList = System.getProperty("bench.sizes");
+		if (sizeList != null) {
+			String[] values = sizeList.split(",");
+			sizes = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				sizes[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+
+		new MsgClientBenchmark().runAll(sizes);
+	}
+
+	private void runAll(int[] sizes) throws Exception {
+		BrowserEngineManager manager = BrowserEngineManager.instance();
+		manager.registerBrowserEngine(LOOPBACK_ENGINE, new LoopbackEngine());
+		manager.setActiveEngine(LOOPBACK_ENGINE);
+		initAllocationCounter();
+
+		System.out.println("scenario              protocol   size      "
+				+ "ops/s      MB/s    alloc B/op   alloc MB/s");
+		for (int i = 0; i < sizes.length; i++) {
+			runParse(sizes[i]);
+			runChannel("send", false, sizes[i]);
+			runChannel("send", true, sizes[i]);
+			runChannel("receive", false, sizes[i]);
+			runChannel("receive", true, sizes[i]);
+			runChannel("reassemble", false, sizes[i]);
+		}
+	}
+
+	private void runParse(int size) throws Exception {
+		final String msg = "1," + LoopbackBrowserServer.TYPE_REPLY + ","
+				+ LoopbackBrowserServer.createPayload(size);
+		measure("parse", "-", size, new Operation() {
+			public void run() {
+				NativeEventThread.parseMessageString(msg);
+			}
+		});
+	}
+
+	private void runChannel(String scenario, boolean binary, final int size)
+			throws Exception {
+		System.setProperty(PROTOCOL_PROPERTY, binary ? "binary" : "delimiter");
+		final MsgClient client = new MsgClient();
+		LoopbackBrowserServer server = new LoopbackBrowserServer(client
+				.getPort(), binary);
+		server.start();
+		client.connect(null);
+
+		try {
+			Operation operation;
+			if (scenario.equals("send")) {
+				final String payload = LoopbackBrowserServer
+						.createPayload(size);
+				operation = new Operation() {
+					public void run() throws Exception {
+						client.sendMessage(1, LoopbackBrowserServer.TYPE_ECHO,
+								payload);
+						waitForMessage(client);
+					}
+				};
+			} else {
+				final int type = scenario.equals("receive") ? LoopbackBrowserServer.TYPE_FETCH
+						: LoopbackBrowserServer.TYPE_FETCH_PIECES;
+				final String request = String.valueOf(size);
+				operation = new Operation() {
+					public void run() throws Exception {
+						client.sendMessage(1, type, request);
+						String msg = waitForMessage(client);
+						if (msg.length() < size) {
+							throw new IllegalStateException("Short message: "
+									+ msg.length());
+						}
+					}
+				};
+			}
+			measure(scenario, client.isBinaryMode() ? "binary" : "delimiter",
+					size, operation);
+		} finally {
+			server.close();
+			if (server.getFailure() != null) {
+				throw server.getFailure();
+			}
+		}
+	}
+
+	private static String waitForMessage(MsgClient client) throws Exception {
+		String msg;
+		while ((msg = client.getMessage()) == null) {
+			client.portListening();
+		}
+		return msg;
+	}
+
+	private void measure(String scenario, String protocol, int size,
+			Operation operation) throws Exception {
+		run(operation, warmupTime);
+
+		long allocatedBefore = getAllocatedBytes();
+		long start = System.currentTimeMillis();
+		long ops = run(operation, measureTime);
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		long allocated = getAllocatedBytes() - allocatedBefore;
+
+		double opsPerSecond = ops * 1000.0 / elapsed;
+		double megabytes = 1024.0 * 1024.0;
+		StringBuffer line = new StringBuffer();
+		line.append(pad(scenario, 22)).append(pad(protocol, 11)).append(
+				pad(String.valueOf(size), 10)).append(
+				pad(format(opsPerSecond), 11)).append(
+				pad(format(opsPerSecond * size / megabytes), 8));
+		if (allocatedBefore < 0) {
+			line.append("  n/a");
+		} else {
+			line.append(pad(String.valueOf(allocated / ops), 13)).append(
+					format(allocated * 1000.0 / elapsed / megabytes));
+		}
+		System.out.println(line);
+	}
+
+	/*
+	 * Runs the operation for at least the given time and at least 3 times,
+	 * and returns how many times it ran.
+	 */
+	private static long run(Operation operation, long time) throws Exception {
+		long deadline = System.currentTimeMillis() + time;
+		long ops = 0;
+		do {
+			operation.run();
+			ops++;
+		} while (ops < 3 || System.currentTimeMillis() < deadline);
+		return ops;
+	}
+
+	/*
+	 * Looks up ThreadMXBean.getThreadAllocatedBytes through reflection, as
+	 * it is not part of every VM.
+	 */
+	private void initAllocationCounter() {
+		try {
+			Class factory = Class
+					.forName("java.lang.management.ManagementFactory");
+			threadBean = factory.getMethod("getThreadMXBean", null).invoke(
+					null, null);
+			allocatedBytesMethod = Class.forName(
+					"com.sun.management.ThreadMXBean").getMethod(
+					"getThreadAllocatedBytes", new Class[] { long.class });
+			threadId = Thread.class.getMethod("getId", null).invoke(
+					Thread.currentThread(), null);
+		} catch (Throwable t) {
+			allocatedBytesMethod = null;
+		}
+	}
+
+	private long getAllocatedBytes() {
+		if (allocatedBytesMethod == null) {
+			return -1;
+		}
+		try {
+			return ((Long) allocatedBytesMethod.invoke(threadBean,
+					new Object[] { threadId })).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private static String format(double value) {
+		return String.valueOf(Math.round(value * 10) / 10.0);
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buf = new StringBuffer(s);
+		while (buf.length() < width) {
+			buf.append(' ');
+		}
+		return buf.append(' ').toString();
+	}
+
+	/**
+	 * An engine without native browser, only providing the charset of the
+	 * message channel.
+	 */
+	private static class LoopbackEngine implements IBrowserEngine {
+		public String getBrowserName() {
+			return LOOPBACK_ENGINE;
+		}
+
+		public boolean isEngineAvailable() {
+			return true;
+		}
+
+		public boolean isDefaultBrowser(String browserPath) {
+			return false;
+		}
+
+		public String getEmbeddedBinaryName() {
+			return null;
+		}
+
+		public void setEnginePath(String fullPath) {
+		}
+
+		public void initialize() {
+		}
+
+		public String getCharsetName() {
+			return "UTF-8";
+		}
+
+		public String getFileProtocolURLPrefix() {
+			return "file://";
+		}
+
+		public boolean isInitialized() {
+			return true;
+		}
+
+		public IWebBrowser getWebBrowser() {
+			return null;
+		}
+	}
+}
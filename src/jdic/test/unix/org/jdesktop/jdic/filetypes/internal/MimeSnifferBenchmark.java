@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2004 Sun Microsystems, Inc. All rights reserved. Use is
+ * subject to license terms.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the Lesser GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.jdesktop.jdic.filetypes.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the mime type detection of a corpus of files:
+ * <ul>
+ * <li>"sniff": <code>MimeSniffer.getMimeType</code> of each file, one by
+ * one.</li>
+ * <li>"sniff-batch": <code>MimeSniffer.getMimeTypes</code> of all the
+ * files.</li>
+ * <li>"gnomevfs": <code>gnome_vfs_get_mime_type</code> of each file, only
+ * when the jdic native library can be loaded.</li>
+ * </ul>
+ * The corpus is the files of the directory given with the
+ * <code>bench.corpus</code> system property, or otherwise
+ * <code>bench.files</code> generated sample files (2000 by default) of common
+ * formats, without file extension so that their content is checked. The
+ * mime types found are printed with their counts, followed by the files per
+ * second of each scenario, run for <code>bench.time</code> milliseconds after
+ * a <code>bench.warmup</code> period. Run with the
+ * <code>runsniffbenchmark</code> target of the build script.
+ */
+public class MimeSnifferBenchmark {
+	private static final byte[][] SAMPLES = {
+			{ (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13,
+					'I', 'H', 'D', 'R' },
+			{ 'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0 },
+			{ (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0, 0, 16, 'J',
+					'F', 'I', 'F', 0 },
+			{ '%', 'P', 'D', 'F', '-', '1', '.', '4', '\n' },
+			{ 'P', 'K', 3, 4, 20, 0, 0, 0, 8, 0 },
+			{ 0x7f, 'E', 'L', 'F', 2, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 0,
+					0x3e, 0 },
+			{ 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 3 },
+			"<?xml version=\"1.0\"?>\n<root/>\n".getBytes(),
+			"<!DOCTYPE html>\n<html><head></head></html>\n".getBytes(),
+			"#!/bin/sh\necho hello\n".getBytes(),
+			"Plain text without any magic.\n".getBytes() };
+
+	private long warmupTime = Long.getLong("bench.warmup", 1000).longValue();
+
+	private long measureTime = Long.getLong("bench.time", 3000).longValue();
+
+	/**
+	 * A scenario run over the whole corpus.
+	 */
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		File corpusDir;
+		boolean generated = false;
+		String corpus = System.getProperty("bench.corpus");
+		if (corpus != null) {
+			corpusDir = new File(corpus);
+		} else {
+			corpusDir = File.createTempFile("mimecorpus", "");
+			corpusDir.delete();
+			corpusDir.mkdir();
+			generateCorpus(corpusDir, Integer.getInteger("bench.files", 2000)
+					.intValue());
+			generated = true;
+		}
+
+		try {
+			new MimeSnifferBenchmark().runAll(corpusDir);
+		} finally {
+			if (generated) {
+				File[] files = corpusDir.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					files[i].delete();
+				}
+				corpusDir.delete();
+			}
+		}
+	}
+
+	private static void generateCorpus(File dir, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			FileOutputStream out = new FileOutputStream(new File(dir, "sample"
+					+ i));
+			out.write(SAMPLES[i % SAMPLES.length]);
+			// Some text padding, as real files are longer than their magic.
+			byte[] padding = new byte[1024];
+			Arrays.fill(padding, (byte) ' ');
+			out.write(padding);
+			out.close();
+		}
+	}
+
+	private void runAll(File corpusDir) throws Exception {
+		final List urls = new ArrayList();
+		File[] files = corpusDir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].isFile()) {
+				urls.add(files[i].toURL());
+			}
+		}
+
+		final MimeSniffer sniffer = new SharedMimeInfoReader().getSniffer();
+		printMimeTypes(sniffer.getMimeTypes(urls));
+
+		System.out.println("scenario      files      files/s");
+		measure("sniff", urls.size(), new Operation() {
+			public void run() {
+				for (int i = 0; i < urls.size(); i++) {
+					sniffer.getMimeType((URL) urls.get(i));
+				}
+			}
+		});
+		measure("sniff-batch", urls.size(), new Operation() {
+			public void run() {
+				sniffer.getMimeTypes(urls);
+			}
+		});
+
+		try {
+			GnomeAssociationUtil.getMimeTypeByURL((URL) urls.get(0));
+		} catch (Throwable t) {
+			System.out.println("gnomevfs      n/a (" + t + ")");
+			return;
+		}
+		measure("gnomevfs", urls.size(), new Operation() {
+			public void run() {
+				for (int i = 0; i < urls.size(); i++) {
+					GnomeAssociationUtil.getMimeTypeByURL((URL) urls.get(i));
+				}
+			}
+		});
+	}
+
+	private static void printMimeTypes(Map mimeTypes) {
+		Map counts = new HashMap();
+		for (Iterator iter = mimeTypes.values().iterator(); iter.hasNext();) {
+			Object mimeType = iter.next();
+			Integer count = (Integer) counts.get(mimeType);
+			counts.put(mimeType, new Integer((count == null) ? 1 : count
+					.intValue() + 1));
+		}
+		for (Iterator iter = counts.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			System.out.println(pad(String.valueOf(entry.getValue()), 8)
+					+ entry.getKey());
+		}
+		System.out.println();
+	}
+
+	private void measure(String scenario, int fileCount, Operation operation)
+			throws Exception {
+		run(operation, warmupTime);
+
+		long start = System.currentTimeMillis();
+		long ops = run(operation, measureTime);
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+		double filesPerSecond = ops * fileCount * 1000.0 / elapsed;
+		System.out.println(pad(scenario, 13) + pad(String.valueOf(fileCount), 10)
+				+ Math.round(filesPerSecond));
+	}
+
+	/*
+	 * Runs the operation for at least the given time and at least once, and
+	 * returns how many times it ran.
+	 */
+	private static long run(Operation operation, long time) throws Exception {
+		long deadline = System.currentTimeMillis() + time;
+		long ops = 0;
+		do {
+			operation.run();
+			ops++;
+		} while (System.currentTimeMillis() < deadline);
+		return ops;
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buf = new StringBuffer(s);
+		while (buf.length() < width) {
+			buf.append(' ');
+		}
+		return buf.append(' ').toString();
+	}
+}
@@ -0,0 +1,270 @@
+package ut.filetypes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.jdic.filetypes.internal.SharedMimeInfoReader;
+
+/**
+ * Tests SharedMimeInfoReader against a small mime.cache file generated in a
+ * temporary directory, without the text files, so the cache is read.
+ */
+public class MimeCacheTest extends TestCase {
+
+	private static final int CASE_SENSITIVE = 0x100;
+
+	private File dataDir;
+
+	private SharedMimeInfoReader reader;
+
+	protected void setUp() throws Exception {
+		dataDir = File.createTempFile("mimetest", "");
+		dataDir.delete();
+		File mimeDir = new File(dataDir, "mime");
+		mimeDir.mkdirs();
+
+		CacheWriter cache = new CacheWriter();
+		cache.header(0, 1, 2);
+
+		// Aliases, sorted by the UTF-8 bytes of the alias.
+		int aliases = cache.list(0, 4, 2);
+		cache.putStrings(aliases + 4, "image/x-png", "image/png");
+		cache.putStrings(aliases + 12, "image/x-p\u00f1g", "image/png");
+
+		// No parents, namespaces or icons.
+		cache.list(0, 8, 0);
+		cache.list(0, 28, 0);
+		cache.list(0, 32, 0);
+		cache.list(0, 36, 0);
+
+		// Literals, sorted by name.
+		int literals = cache.list(0, 12, 1);
+		cache.putStrings(literals + 4, "makefile", "text/x-makefile");
+		cache.putInt(literals + 12, 50);
+
+		// Complex globs.
+		int globs = cache.list(0, 20, 1);
+		cache.putStrings(globs + 4, "readme*", "text/x-readme");
+		cache.putInt(globs + 12, 50);
+
+		// The reverse suffix tree of *.C, *.c, *.png, *.gz and *.tar.gz.
+		int tree = cache.alloc(8);
+		cache.putInt(16, tree);
+		int[] roots = cache.nodes(tree, new char[] { 'C', 'c', 'g', 'z' });
+		cache.leaf(cache.nodes(roots[0] + 4, new char[] { '.' })[0],
+				"text/x-c++src", CASE_SENSITIVE | 50);
+		cache.leaf(cache.nodes(roots[1] + 4, new char[] { '.' })[0],
+				"text/x-csrc", 50);
+		cache.leaf(cache.chain(roots[2], "np."), "image/png", 50);
+		int gz = cache.chain(roots[3], "g.");
+		int[] gzChildren = cache.nodes(gz + 4, new char[] { 0, 'r' });
+		cache.putLeaf(gzChildren[0], "application/gzip", 50);
+		cache.leaf(cache.chain(gzChildren[1], "at."),
+				"application/x-compressed-tar", 50);
+
+		// One magic rule: \x89PNG at offset 0.
+		int magic = cache.alloc(12);
+		cache.putInt(24, magic);
+		cache.putInt(magic, 1);
+		cache.putInt(magic + 4, 4);
+		int match = cache.alloc(16);
+		cache.putInt(magic + 8, match);
+		cache.putInt(match, 50);
+		cache.putInt(match + 4, cache.string("image/png"));
+		cache.putInt(match + 8, 1);
+		int matchlet = cache.alloc(32);
+		cache.putInt(match + 12, matchlet);
+		cache.putInt(matchlet, 0);
+		cache.putInt(matchlet + 4, 1);
+		cache.putInt(matchlet + 8, 1);
+		cache.putInt(matchlet + 12, 4);
+		cache.putInt(matchlet + 16, cache.bytes(new byte[] { (byte) 0x89,
+				'P', 'N', 'G' }));
+
+		cache.write(new File(mimeDir, "mime.cache"));
+
+		reader = new SharedMimeInfoReader(new File[] { dataDir });
+	}
+
+	protected void tearDown() throws Exception {
+		delete(dataDir);
+	}
+
+	public void testSuffixTree() {
+		assertEquals("image/png", reader.getMimeTypeByFileExt("png"));
+		assertEquals("image/png", reader.getMimeTypeByFileExt(".PNG"));
+		assertEquals("text/x-csrc", reader.getMimeTypeByFileExt("c"));
+		assertEquals("text/x-c++src", reader.getMimeTypeByFileExt("C"));
+		assertEquals("application/gzip", reader.getMimeTypeByFileExt("gz"));
+		assertEquals("application/x-compressed-tar", reader
+				.getMimeTypeByFileExt("tar.gz"));
+		assertNull(reader.getMimeTypeByFileExt("ng"));
+		assertNull(reader.getMimeTypeByFileExt("unknown"));
+	}
+
+	public void testLiteralsAndGlobs() throws IOException {
+		File file = new File(dataDir, "Makefile");
+		write(file, "all:\n");
+		assertEquals("text/x-makefile", reader.getMimeTypeByURL(file.toURL()));
+
+		file = new File(dataDir, "README.txt");
+		write(file, "");
+		assertEquals("text/x-readme", reader.getMimeTypeByURL(file.toURL()));
+
+		file = new File(dataDir, "archive.tar.gz");
+		write(file, "");
+		assertEquals("application/x-compressed-tar", reader
+				.getMimeTypeByURL(file.toURL()));
+	}
+
+	public void testMagic() throws IOException {
+		// No matching name, so the content is checked.
+		File file = new File(dataDir, "picture");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0 });
+		out.close();
+		assertEquals("image/png", reader.getMimeTypeByURL(file.toURL()));
+
+		file = new File(dataDir, "notes");
+		write(file, "some text\n");
+		assertEquals("text/plain", reader.getMimeTypeByURL(file.toURL()));
+	}
+
+	public void testAliases() {
+		assertEquals("image-png", reader.getIconFileNameByMimeType("image/x-png"));
+		assertEquals("image-png", reader
+				.getIconFileNameByMimeType("image/x-p\u00f1g"));
+		assertEquals("image-x-p\u00f2g", reader
+				.getIconFileNameByMimeType("image/x-p\u00f2g"));
+	}
+
+	/*
+	 * Lays out a mime.cache file, big-endian, as update-mime-database does.
+	 */
+	private static class CacheWriter {
+
+		private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+		private int end = 0;
+
+		void header(int offset, int major, int minor) {
+			alloc(40);
+			buffer.putShort(offset, (short) major);
+			buffer.putShort(offset + 2, (short) minor);
+		}
+
+		int alloc(int size) {
+			int offset = end;
+			end += (size + 3) & ~3;
+			return offset;
+		}
+
+		void putInt(int offset, int value) {
+			buffer.putInt(offset, value);
+		}
+
+		int string(String value) {
+			try {
+				byte[] bytes = value.getBytes("UTF-8");
+				int offset = alloc(bytes.length + 1);
+				for (int i = 0; i < bytes.length; i++) {
+					buffer.put(offset + i, bytes[i]);
+				}
+				return offset;
+			} catch (IOException e) {
+				throw new IllegalStateException(e.toString());
+			}
+		}
+
+		int bytes(byte[] value) {
+			int offset = alloc(value.length);
+			for (int i = 0; i < value.length; i++) {
+				buffer.put(offset + i, value[i]);
+			}
+			return offset;
+		}
+
+		/*
+		 * Allocates a list of count entries of at most 12 bytes, preceded by
+		 * the count, and sets its offset in the header.
+		 */
+		int list(int header, int headerOffset, int count) {
+			int list = alloc(4 + count * 12);
+			buffer.putInt(header + headerOffset, list);
+			buffer.putInt(list, count);
+			return list;
+		}
+
+		void putStrings(int offset, String first, String second) {
+			buffer.putInt(offset, string(first));
+			buffer.putInt(offset + 4, string(second));
+		}
+
+		/*
+		 * Allocates the nodes of the given characters, sorted, and sets their
+		 * count and offset at the given place: the tree header or the second
+		 * field of the parent node.
+		 */
+		int[] nodes(int parent, char[] chars) {
+			int first = alloc(chars.length * 12);
+			buffer.putInt(parent, chars.length);
+			buffer.putInt(parent + 4, first);
+			int[] nodes = new int[chars.length];
+			for (int i = 0; i < chars.length; i++) {
+				nodes[i] = first + i * 12;
+				buffer.putInt(nodes[i], chars[i]);
+			}
+			return nodes;
+		}
+
+		/*
+		 * Adds a chain of single child nodes under the given node, and returns
+		 * the last one.
+		 */
+		int chain(int node, String chars) {
+			for (int i = 0; i < chars.length(); i++) {
+				node = nodes(node + 4, new char[] { chars.charAt(i) })[0];
+			}
+			return node;
+		}
+
+		/*
+		 * Adds a single leaf under the given node.
+		 */
+		void leaf(int node, String mimeType, int flags) {
+			putLeaf(nodes(node + 4, new char[] { 0 })[0], mimeType, flags);
+		}
+
+		void putLeaf(int leaf, String mimeType, int flags) {
+			buffer.putInt(leaf, 0);
+			buffer.putInt(leaf + 4, string(mimeType));
+			buffer.putInt(leaf + 8, flags);
+		}
+
+		void write(File file) throws IOException {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(buffer.array(), 0, end);
+			out.close();
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				delete(children[i]);
+			}
+		}
+		file.delete();
+	}
+}
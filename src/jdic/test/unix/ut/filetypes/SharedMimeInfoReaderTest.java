@@ -0,0 +1,150 @@
+package ut.filetypes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.jdic.filetypes.internal.SharedMimeInfoReader;
+
+/**
+ * Tests SharedMimeInfoReader against a small MIME database written to a
+ * temporary directory, without mime.cache, so the text files are read.
+ */
+public class SharedMimeInfoReaderTest extends TestCase {
+
+	private File dataDir;
+
+	private SharedMimeInfoReader reader;
+
+	protected void setUp() throws Exception {
+		dataDir = File.createTempFile("mimetest", "");
+		dataDir.delete();
+		File mimeDir = new File(dataDir, "mime");
+		new File(mimeDir, "image").mkdirs();
+
+		write(new File(mimeDir, "globs2"), "# comment\n"
+				+ "50:image/png:*.png\n"
+				+ "50:text/x-csrc:*.c:cs\n"
+				+ "50:text/x-c++src:*.C:cs\n"
+				+ "50:application/x-compressed-tar:*.tar.gz\n"
+				+ "50:application/gzip:*.gz\n"
+				+ "50:text/x-makefile:makefile\n"
+				+ "50:text/x-readme:README*\n");
+		write(new File(mimeDir, "types"), "image/png\ntext/x-csrc\n"
+				+ "text/x-c++src\napplication/gzip\n"
+				+ "application/x-compressed-tar\n");
+		write(new File(mimeDir, "aliases"), "image/x-png image/png\n");
+		write(new File(mimeDir, "image/png.xml"),
+				"<?xml version=\"1.0\"?>\n"
+						+ "<mime-type xmlns=\"http://www.freedesktop.org/standards/shared-mime-info\" type=\"image/png\">\n"
+						+ "  <comment>PNG image &amp; more</comment>\n"
+						+ "  <comment xml:lang=\"fr\">image PNG</comment>\n"
+						+ "</mime-type>\n");
+
+		// [50:image/png] >0=\0\4\211PNG
+		FileOutputStream out = new FileOutputStream(new File(mimeDir, "magic"));
+		out.write("MIME-Magic\0\n[50:image/png]\n>0=".getBytes("ISO-8859-1"));
+		out.write(new byte[] { 0, 4, (byte) 0x89, 'P', 'N', 'G', '\n' });
+		out.close();
+
+		reader = new SharedMimeInfoReader(new File[] { dataDir });
+	}
+
+	protected void tearDown() throws Exception {
+		delete(dataDir);
+	}
+
+	public void testMimeTypeByFileExt() {
+		assertEquals("image/png", reader.getMimeTypeByFileExt("png"));
+		assertEquals("image/png", reader.getMimeTypeByFileExt(".PNG"));
+		assertEquals("text/x-csrc", reader.getMimeTypeByFileExt("c"));
+		assertEquals("text/x-c++src", reader.getMimeTypeByFileExt("C"));
+		assertEquals("application/x-compressed-tar", reader
+				.getMimeTypeByFileExt("tar.gz"));
+		assertNull(reader.getMimeTypeByFileExt("unknown"));
+		assertTrue(reader.isFileExtExist("gz"));
+		assertFalse(reader.isFileExtExist("unknown"));
+	}
+
+	public void testFileExtListByMimeType() {
+		List exts = reader.getFileExtListByMimeType("image/png");
+		assertEquals(1, exts.size());
+		assertEquals("png", exts.get(0));
+		assertEquals(exts, reader.getFileExtListByMimeType("image/x-png"));
+		assertNull(reader.getFileExtListByMimeType("text/x-makefile"));
+	}
+
+	public void testMimeTypeByURL() throws IOException {
+		File file = new File(dataDir, "archive.tar.gz");
+		write(file, "");
+		assertEquals("application/x-compressed-tar", reader
+				.getMimeTypeByURL(file.toURL()));
+
+		file = new File(dataDir, "Makefile");
+		write(file, "all:\n");
+		assertEquals("text/x-makefile", reader.getMimeTypeByURL(file.toURL()));
+
+		file = new File(dataDir, "README.txt");
+		write(file, "");
+		assertEquals("text/x-readme", reader.getMimeTypeByURL(file.toURL()));
+
+		// No matching name, so the content is checked.
+		file = new File(dataDir, "picture");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0 });
+		out.close();
+		assertEquals("image/png", reader.getMimeTypeByURL(file.toURL()));
+
+		// The escaped characters of the URL are decoded.
+		file = new File(dataDir, "my picture");
+		out = new FileOutputStream(file);
+		out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0 });
+		out.close();
+		assertEquals("image/png", reader.getMimeTypeByURL(file.toURI().toURL()));
+		assertEquals("image/png", reader.getMimeTypeByURL(file.toURL()));
+
+		file = new File(dataDir, "notes");
+		write(file, "some text\n");
+		assertEquals("text/plain", reader.getMimeTypeByURL(file.toURL()));
+
+		assertEquals("inode/directory", reader
+				.getMimeTypeByURL(dataDir.toURL()));
+	}
+
+	public void testMimeTypeInfo() {
+		assertTrue(reader.isMimeTypeExist("image/png"));
+		assertTrue(reader.isMimeTypeExist("image/x-png"));
+		assertFalse(reader.isMimeTypeExist("image/unknown"));
+		assertEquals("PNG image & more", reader
+				.getDescriptionByMimeType("image/png"));
+		assertEquals("image-png", reader.getIconFileNameByMimeType("image/png"));
+		assertNull(reader.getActionListByMimeType("image/png"));
+	}
+
+	public void testRefresh() throws IOException {
+		assertNull(reader.getMimeTypeByFileExt("jpg"));
+		write(new File(dataDir, "mime/globs2"), "50:image/jpeg:*.jpg\n");
+		reader.refresh();
+		assertEquals("image/jpeg", reader.getMimeTypeByFileExt("jpg"));
+		assertNull(reader.getMimeTypeByFileExt("png"));
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				delete(children[i]);
+			}
+		}
+		file.delete();
+	}
+}